@@ -0,0 +1,338 @@
+package setgame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the hot paths of a Board and of rendering it for the web.
+ *
+ * <p>Every benchmark runs for each number of attributes and for boards with 0, 1 and 3 columns
+ * beyond the default width, as far as the deck allows. Run with "-prof gc" to report allocation
+ * rates alongside the timings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    private static final String PLAYER = "bench";
+    private static final String DECLARER = "declarer";
+    private static final long SEED = 6031;
+    private static final int PAIRS = 1024;
+
+    /**
+     * Deals a new game with one player and some extra columns.
+     */
+    private static Board deal(int attributes, int extraColumns, SplittableRandom random) {
+        final Board board = new Board(Board.generateRandomCards(attributes, random), attributes, Board.NO_TIMEOUTS,
+                () -> Board.generateRandomCards(attributes, random));
+        board.addPlayer(PLAYER);
+        for (int i=0; i<extraColumns && board.numCardsRemaining() > 0; i++) {
+            board.addCards();
+        }
+        return board;
+    }
+
+    /**
+     * Finds three squares of a board which are not a Set.
+     * @return the squares, or null if every three cards on the board are a Set
+     */
+    private static List<Square> miss(Board board) {
+        final Square first = new Square(0, 0);
+        final Square second = new Square(1, 0);
+        final Card third = board.missingCard(board.getCard(first), board.getCard(second));
+        for (int row=0; row<board.getNumRows(); row++) {
+            for (int col=0; col<board.getNumCols(); col++) {
+                final Square square = new Square(row, col);
+                if (!square.equals(first) && !square.equals(second) && !board.getCard(square).equals(third)) {
+                    return List.of(first, second, square);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Restores a copy of a board on which the player declares and holds three squares which are
+     * not yet checked, as when the third is picked.
+     */
+    private static Board holding(Board board, List<Square> squares) {
+        final BoardCheckpoint checkpoint = board.checkpoint();
+        final BoardSnapshot snapshot = checkpoint.snapshot();
+        final List<List<Card>> rows = new ArrayList<>();
+        for (int row=0; row<snapshot.getNumRows(); row++) {
+            rows.add(board.getRow(row));
+        }
+        final List<Card> set = new ArrayList<>();
+        for (Square square: snapshot.getSet()) {
+            set.add(snapshot.getCard(square));
+        }
+        final BoardSnapshot held = new BoardSnapshot(snapshot.version(), rows, squares, PLAYER,
+                snapshot.getTimeout(), snapshot.getTopScores(snapshot.getScores().size()), snapshot.getVotes(),
+                snapshot.numCardsRemaining(), set);
+        return new Board(new BoardCheckpoint(checkpoint.attributes(), held, checkpoint.deck(),
+                checkpoint.declareQueue()), Board.NO_TIMEOUTS, () -> Board.generateRandomCards(board.getAttributes()),
+                Board.NO_JOURNAL);
+    }
+
+    /**
+     * A board which the benchmarks only read.
+     */
+    @State(Scope.Thread)
+    public static class Table {
+
+        @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+        int attributes;
+
+        @Param({"0", "1", "3"})
+        int extraColumns;
+
+        Board board;
+        WebServer server;
+        Card[] pairs;
+        int next;
+        int[] triples;
+        int nextTriple;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            final SplittableRandom random = new SplittableRandom(SEED);
+            board = deal(attributes, extraColumns, random);
+            server = new WebServer(board, 0);
+
+            final List<Card> cards = new ArrayList<>();
+            for (int row=0; row<board.getNumRows(); row++) {
+                cards.addAll(board.getRow(row));
+            }
+            // pairs[2i] and pairs[2i+1] are distinct cards on the board
+            pairs = new Card[2*PAIRS];
+            for (int i=0; i<PAIRS; i++) {
+                final int first = random.nextInt(cards.size());
+                final int second = (first + 1 + random.nextInt(cards.size() - 1)) % cards.size();
+                pairs[2*i] = cards.get(first);
+                pairs[2*i + 1] = cards.get(second);
+            }
+            // triples[3i..3i+2] are the codes of three cards, a Set for even i, and at random for odd i
+            triples = new int[3*PAIRS];
+            for (int i=0; i<PAIRS; i++) {
+                final int first = pairs[2*i].code();
+                final int second = pairs[2*i + 1].code();
+                triples[3*i] = first;
+                triples[3*i + 1] = second;
+                triples[3*i + 2] = i % 2 == 0 ? SetMath.third(first, second)
+                        : cards.get(random.nextInt(cards.size())).code();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            server.stop();
+        }
+    }
+
+    /**
+     * A board which changes before each invocation, so each renders a snapshot not rendered before.
+     * The player DECLARER declares once, then picks and unpicks one square, which changes nothing
+     * but the square held and so keeps the board the same size throughout.
+     */
+    @State(Scope.Thread)
+    public static class Changing {
+
+        @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+        int attributes;
+
+        @Param({"0", "1", "3"})
+        int extraColumns;
+
+        Board board;
+        WebServer server;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            board = deal(attributes, extraColumns, new SplittableRandom(SEED));
+            board.addPlayer(DECLARER);
+            board.declareSet(DECLARER);
+            server = new WebServer(board, 0);
+        }
+
+        @Setup(Level.Invocation)
+        public void change() throws InterruptedException {
+            board.pickCard(new Square(0, 0), DECLARER);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            server.stop();
+        }
+    }
+
+    /**
+     * Two boards, dealt once, on which the player holds three squares not yet checked: a Set on
+     * the first, and three cards which are not a Set on the second, if the board has any.
+     */
+    @State(Scope.Thread)
+    public static class Held {
+
+        @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+        int attributes;
+
+        @Param({"0", "1", "3"})
+        int extraColumns;
+
+        Board[] boards;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            final SplittableRandom random = new SplittableRandom(SEED);
+            Board board;
+            List<Square> set;
+            do {
+                board = deal(attributes, extraColumns, random);
+                set = board.findSet();
+            } while (set.isEmpty());
+            final List<Square> miss = miss(board);
+            boards = new Board[] { holding(board, set), holding(board, miss != null ? miss : set) };
+        }
+    }
+
+    /**
+     * A board dealt afresh before each invocation, for the benchmarks which change it.
+     * The allocation rates of these benchmarks include dealing the board.
+     */
+    @State(Scope.Thread)
+    public static class Round {
+
+        @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+        int attributes;
+
+        @Param({"0", "1", "3"})
+        int extraColumns;
+
+        SplittableRandom random;
+        Board board;
+        List<Square> set;
+        List<Square> miss;
+
+        @Setup(Level.Trial)
+        public void seed() {
+            random = new SplittableRandom(SEED);
+        }
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            do {
+                board = deal(attributes, extraColumns, random);
+                set = board.findSet();
+            } while (set.isEmpty());
+
+            miss = miss(board);
+        }
+    }
+
+    @Benchmark
+    public boolean existsSet(Table table) {
+        return table.board.existsSet();
+    }
+
+    @Benchmark
+    public Card missingCard(Table table) {
+        final int i = table.next;
+        table.next = (i + 2) & (2*PAIRS - 1);
+        return table.board.missingCard(table.pairs[i], table.pairs[i + 1]);
+    }
+
+    /**
+     * Responds with the BOARD of a board which does not change, so every response after the first
+     * reuses the rendering cached in its snapshot.
+     */
+    @Benchmark
+    public String boardResponse(Table table) {
+        return table.server.boardResponse(PLAYER);
+    }
+
+    /**
+     * Responds with the BOARD of a board changed since the last response, so each response renders
+     * a new snapshot, as the first response after every change does.
+     */
+    @Benchmark
+    public String boardResponseChanged(Changing changing) {
+        return changing.server.boardResponse(PLAYER);
+    }
+
+    @Benchmark
+    public List<Card> generateRandomCards(Table table) {
+        return Board.generateRandomCards(table.attributes);
+    }
+
+    /**
+     * Checks whether the three squares held are a Set, as the board does once three are picked,
+     * taking its lock and reading the cards from the board; half of the checks are of a Set.
+     */
+    @Benchmark
+    public boolean checkSet(Held held) {
+        final int i = held.next;
+        held.next = i ^ 1;
+        return held.boards[i].checkSet();
+    }
+
+    /**
+     * Checks whether three card codes are a Set with SetMath alone, without the board; half of
+     * the triples checked are Sets.
+     */
+    @Benchmark
+    public boolean isSet(Table table) {
+        final int i = table.nextTriple;
+        table.nextTriple = (i + 1) & (PAIRS - 1);
+        return SetMath.isSet(table.triples[3*i], table.triples[3*i + 1], table.triples[3*i + 2]);
+    }
+
+    /**
+     * Plays a whole round which misses: declares and picks three cards which are not a Set, so
+     * the board checks them, takes points and ends the declare. With a single attribute every
+     * three cards are a Set, and nothing is picked.
+     */
+    @Benchmark
+    public Board declareMiss(Round round) throws InterruptedException {
+        if (round.miss != null) {
+            pick(round.board, round.miss);
+        }
+        return round.board;
+    }
+
+    /**
+     * Declares and picks a Set, which replaces its cards on a board of the default width
+     * and condenses a wider board.
+     */
+    @Benchmark
+    public Board replaceCards(Round round) throws InterruptedException {
+        pick(round.board, round.set);
+        return round.board;
+    }
+
+    private static void pick(Board board, List<Square> squares) throws InterruptedException {
+        board.declareSet(PLAYER);
+        for (Square square: squares) {
+            board.pickCard(square, PLAYER);
+        }
+    }
+}
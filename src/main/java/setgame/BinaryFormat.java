@@ -0,0 +1,127 @@
+package setgame;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary encoding of the BOARD and SCORES responses of the API, for clients which ask for
+ * it with the MEDIA_TYPE in their Accept header or with SUFFIX at the end of the route.
+ *
+ * <p>Fixed-width fields are big-endian. A board is encoded as
+ * <pre>
+ *   u8 'B', u16 rows, u16 columns, u8 attributes, u8 declare, i64 timeout, CARD...
+ * </pre>
+ * where declare is 0 if no one is declaring, 1 if another player is, and 2 if the player who sent
+ * the request is, and timeout is the Unix time at which the declare times out, or 0. The cards
+ * follow reading across each row, starting with the top row; each is the code of the card (see
+ * SetMath) with its top bit set if the square is held, in one byte if the cards have at most 4
+ * attributes and in two otherwise.
+ *
+ * <p>Scores are encoded as
+ * <pre>
+ *   u8 'S', varint players, (varint length, UTF-8 player ID, zigzag varint score, u8 vote)...
+ * </pre>
+ * where vote is 1 if the player votes to add cards and 0 otherwise, and varints are unsigned
+ * LEB128, as in Protocol Buffers.
+ */
+public class BinaryFormat {
+
+    /** Media type of binary responses. */
+    public static final String MEDIA_TYPE = "application/x-setgame";
+
+    /** Suffix of a route which asks for a binary response, e.g. /look/player.bin. */
+    public static final String SUFFIX = ".bin";
+
+    private static final byte BOARD = 'B';
+    private static final byte SCORES = 'S';
+    private static final int HEADER_LENGTH = 15;
+    private static final byte DECLARE_NONE = 0;
+    private static final byte DECLARE_UP = 1;
+    private static final byte DECLARE_MY = 2;
+    private static final int SMALL_ATTRIBUTES = 4; // codes of cards with at most 4 attributes are less than 2^7
+
+    // index of the declare byte, which is the only byte of a board that differs between players
+    static final int DECLARE_INDEX = 6;
+
+    private BinaryFormat() {
+        // not instantiable
+    }
+
+    /**
+     * Encodes a snapshot of the board as seen by every player except the declarer.
+     * @param snapshot a snapshot of the board
+     * @return the encoded board, whose byte at DECLARE_INDEX is replaced by declare() for the declarer
+     */
+    static byte[] board(BoardSnapshot snapshot) {
+        final int rows = snapshot.getNumRows();
+        final int cols = snapshot.getNumCols();
+        final int attributes = snapshot.getCard(0, 0).attributes();
+        final int cardLength = attributes <= SMALL_ATTRIBUTES ? 1 : 2;
+        final boolean[] held = new boolean[rows*cols];
+        for (Square square: snapshot.getSquaresHeld()) {
+            held[square.getRow()*cols + square.getCol()] = true;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + rows*cols*cardLength);
+        final boolean declaring = !snapshot.getDeclarer().equals("");
+        buffer.put(BOARD).putShort((short) rows).putShort((short) cols).put((byte) attributes)
+                .put(declaring ? DECLARE_UP : DECLARE_NONE).putLong(declaring ? snapshot.getTimeout() : 0);
+        assert buffer.position() == HEADER_LENGTH;
+        for (int i=0; i<rows*cols; i++) {
+            final int code = snapshot.getCard(i / cols, i % cols).code();
+            if (cardLength == 1) {
+                buffer.put((byte) (held[i] ? code | 0x80 : code));
+            } else {
+                buffer.putShort((short) (held[i] ? code | 0x8000 : code));
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @param snapshot a snapshot of the board
+     * @param playerID the unique ID of the player
+     * @return the declare byte of the board as seen by the player
+     */
+    static byte declare(BoardSnapshot snapshot, String playerID) {
+        final String declarer = snapshot.getDeclarer();
+        if (declarer.equals("")) {
+            return DECLARE_NONE;
+        }
+        return declarer.equals(playerID) ? DECLARE_MY : DECLARE_UP;
+    }
+
+    /**
+     * Encodes the scores and votes of players.
+     * @param scores the players and their scores, in the order to encode them
+     * @param votes the players who voted to add cards
+     * @return the encoded scores
+     */
+    static byte[] scores(Collection<Map.Entry<String, Integer>> scores, Set<String> votes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(2 + scores.size()*16);
+        out.write(SCORES);
+        writeVarint(out, scores.size());
+        for (Map.Entry<String, Integer> score: scores) {
+            final byte[] player = score.getKey().getBytes(UTF_8);
+            writeVarint(out, player.length);
+            out.write(player, 0, player.length);
+            final int value = score.getValue();
+            writeVarint(out, (value << 1) ^ (value >> 31)); // zigzag, so small negative scores stay short
+            out.write(votes.contains(score.getKey()) ? 1 : 0);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -4,21 +4,19 @@
 package setgame;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 /**
  * ADT representing a Set game board.
@@ -29,7 +27,7 @@ public class Board {
     /**
      * Returns a board with a shuffled list of all cards in the deck..
      * 
-     * @param attributes the number of attributes a card should have (currently supports 3, 4)
+     * @param attributes the number of attributes a card should have, between 1 and SetMath.MAX_ATTRIBUTES
      * @return a Board with a shuffled list of all possible combinations of attributes, each combination representing a card
      */
     public static Board generateRandom(int attributes) {
@@ -39,46 +37,31 @@ public class Board {
     
     /**
      * Returns a shuffled list of all cards in the deck.
-     * @param attributes the number of attributes a card should have
+     * @param attributes the number of attributes a card should have, between 1 and SetMath.MAX_ATTRIBUTES
      * @return a shuffled list of all possible combinations of attirbutes
+     * @throws IllegalArgumentException if that number of attributes is not supported
      */
     public static List<Card> generateRandomCards(int attributes) {
-        List<Card> cards = new ArrayList<>();
-        
-        // attempt at avoiding magic numbers
-//        int numCards = 3;
-//        int[] indices = {numCards, numCards, numCards, numCards};
-//        
-//        for(int i=attributes; i<indices.length; i++) {
-//            indices[i] = 1;
-//        }
-        
-        for (Card.Color color: Card.Color.values()) {
-            if (attributes == 1) {
-                cards.add(new Card(color, Card.Number.ONE, Card.Shading.SOLID, Card.Shape.SQUIGGLE));
-            } else {
-                for (Card.Number number: Card.Number.values()) {
-                    if (attributes == 2) {
-                        cards.add(new Card(color, number, Card.Shading.SOLID, Card.Shape.SQUIGGLE));
-                    } else {
-                        for (Card.Shading shading: Card.Shading.values()) {
-                            if (attributes == 3) {
-                                cards.add(new Card(color, number, shading, Card.Shape.SQUIGGLE));
-                            } else {
-                                for (Card.Shape shape: Card.Shape.values()) {
-                                    cards.add(new Card(color, number, shading, shape));
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        
+        List<Card> cards = new ArrayList<>(Card.deck(attributes));
         Collections.shuffle(cards);
         return cards;
     }
     
+    /**
+     * Returns a list of all cards in the deck, shuffled using the given source of randomness.
+     * @param attributes the number of attributes a card should have, between 1 and SetMath.MAX_ATTRIBUTES
+     * @param random the source of randomness for the shuffle
+     * @return a shuffled list of all possible combinations of attributes
+     * @throws IllegalArgumentException if that number of attributes is not supported
+     */
+    public static List<Card> generateRandomCards(int attributes, SplittableRandom random) {
+        List<Card> cards = new ArrayList<>(Card.deck(attributes));
+        for (int i=cards.size()-1; i>0; i--) {
+            Collections.swap(cards, i, random.nextInt(i+1));
+        }
+        return cards;
+    }
+    
     
     /** A listener for the Board. */
     public interface BoardListener {
@@ -87,12 +70,79 @@ public class Board {
         public void boardChanged(); 
     }
     
+    /** Schedules the declare and inactivity timeouts of a Board. */
+    public interface TimeoutScheduler {
+        /**
+         * Runs a task once after a delay, unless it is cancelled first.
+         * @param task the task to run
+         * @param delayMillis the delay in milliseconds
+         * @return a handle which cancels the task
+         */
+        public Timeout schedule(Runnable task, long delayMillis);
+    }
+    
+    /** A task scheduled by a TimeoutScheduler. */
+    public interface Timeout {
+        /** Cancels the task, if it has not already started running. */
+        public void cancel();
+    }
+    
+    /** A TimeoutScheduler which never runs its tasks, for boards played or replayed without timeouts. */
+    public static final TimeoutScheduler NO_TIMEOUTS = (task, delayMillis) -> () -> { };
+    
+    /**
+     * Records the changes made to a Board through resetGame, addPlayer, removePlayer, declareSet,
+     * pickCard, vote, timedOut and addCards, and the decks the Board deals itself, in the order they
+     * are made, so the Board can be rebuilt by making them again; and every CHECKPOINT_INTERVAL
+     * changes, or when asked by checkpointJournal(), a checkpoint of the Board between changes, from
+     * which the later changes can be made.
+     */
+    public interface Journal {
+        /**
+         * Records a change. Called while the Board is locked, so must not block.
+         * @param type the kind of change
+         * @param playerID the player who made the change, or ""
+         * @param square the square picked, or null if the change is not a PICK
+         * @param cards the cards dealt, or an empty list
+         */
+        public void record(EventLog.Type type, String playerID, Square square, List<Card> cards);
+        
+        /**
+         * Records a checkpoint of the Board. Called while the Board is locked, so must not block;
+         * in particular, encoding the checkpoint should be left until later.
+         * @param checkpoint the state of the Board after the changes recorded so far
+         */
+        public void checkpoint(BoardCheckpoint checkpoint);
+    }
+    
+    /** A Journal which records nothing. */
+    public static final Journal NO_JOURNAL = new Journal() {
+        @Override public void record(EventLog.Type type, String playerID, Square square, List<Card> cards) { }
+        @Override public void checkpoint(BoardCheckpoint checkpoint) { }
+    };
+    
+    /** Number of changes a Board records in its Journal between checkpoints. */
+    public static final int CHECKPOINT_INTERVAL = 1024;
+    
     private static final int DEFAULT_ROWS = 3;
     private static final int SET_SIZE = 3;
     private static final long TIME_LIMIT_IN_MILLIS = 5000L;
+    /** Number of recent snapshots kept for snapshot(version); a power of 2. */
+    public static final int HISTORY = 64;
+    
+    private static final Metrics.Histogram LOCK_WAIT = Metrics.shared().histogram("setgame_board_lock_wait_seconds",
+            "Time changes to a board waited for its lock");
+    private static final Metrics.Histogram LOCK_HOLD = Metrics.shared().histogram("setgame_board_lock_hold_seconds",
+            "Time changes to a board held its lock");
+    private static final Metrics.Histogram FAN_OUT = Metrics.shared().histogram("setgame_board_listeners_seconds",
+            "Time to call the listeners of a board after a change");
+    private static final Metrics.Counter DECLARE_TIMEOUTS = Metrics.shared().counter("setgame_timeouts_fired_total",
+            "Timeouts which ran, by kind", "kind", "declare");
+    private static final Metrics.Counter INACTIVITY_TIMEOUTS = Metrics.shared().counter("setgame_timeouts_fired_total",
+            "Timeouts which ran, by kind", "kind", "inactivity");
     
     private List<List<Card>> gameBoard;
-    private Map<String, Integer> scores;
+    private final Scoreboard scores = new Scoreboard();
     private Queue<Card> cardsRemaining;
     
     private String activePlayer;
@@ -102,11 +152,23 @@ public class Board {
     private long timeOut;
     private final int defaultColumns;
     
-    private ScheduledExecutorService executor;
-    private ScheduledFuture<?> result;
-    private Map<String, ScheduledFuture<?>> playerTimeouts = new HashMap<>();
+    private final TimeoutScheduler scheduler;
+    private final Supplier<List<Card>> dealer;
+    private Journal journal; // NO_JOURNAL once the Board is closed
+    private final LongSupplier clock; // the current Unix time, from which declares time out
+    private int changesSinceCheckpoint = 0; // changes recorded in journal since its last checkpoint
+    private final List<List<Card>> dealt = new ArrayList<>(); // decks dealt by the change being made, not yet recorded
+    private Timeout result;
+    private Map<String, Timeout> playerTimeouts = new HashMap<>();
+    private boolean closed = false; // whether close() was called, after which no timeouts are scheduled
     
     private Set<BoardListener> listeners = new HashSet<>();
+    private final SetIndex setIndex; // the cards on the board and the Sets among them
+    private long version = 0;
+    private boolean batching = false; // whether a batch of changes is deferring callListeners()
+    private boolean changedInBatch = false; // whether the board changed during the current batch
+    private volatile BoardSnapshot snapshot; // the state after the latest change, for readers which take no lock
+    private final AtomicReferenceArray<BoardSnapshot> history = new AtomicReferenceArray<>(HISTORY); // by version mod HISTORY
     
     // TODO complete this section if we want to be thorough
     /* Abstraction function:
@@ -156,16 +218,199 @@ public class Board {
      * @param attributes the number of attributes being used
      */
     public Board(List<Card> cards, int attributes) {
+        this(cards, attributes, TimingWheel.shared(), () -> generateRandomCards(attributes));
+    }
+    
+    /**
+     * Constructs an instance of Board, a game of Set with 3 rows and as many columns as attributes,
+     * whose timeouts and new decks come from the caller.
+     * @param cards a list of cards for the Board
+     * @param attributes the number of attributes being used
+     * @param scheduler schedules declare and inactivity timeouts
+     * @param dealer supplies the shuffled deck for each new game once a deck runs out
+     */
+    public Board(List<Card> cards, int attributes, TimeoutScheduler scheduler, Supplier<List<Card>> dealer) {
+        this(cards, attributes, scheduler, dealer, NO_JOURNAL);
+    }
+    
+    /**
+     * Constructs an instance of Board, a game of Set with 3 rows and as many columns as attributes,
+     * whose timeouts and new decks come from the caller, and which records its changes.
+     * @param cards a list of cards for the Board
+     * @param attributes the number of attributes being used
+     * @param scheduler schedules declare and inactivity timeouts
+     * @param dealer supplies the shuffled deck for each new game once a deck runs out
+     * @param journal records every change to the Board, starting with a checkpoint of its first game
+     */
+    public Board(List<Card> cards, int attributes, TimeoutScheduler scheduler, Supplier<List<Card>> dealer,
+            Journal journal) {
         defaultColumns = attributes;
-        resetGame(cards);
+        setIndex = new SetIndex(attributes);
+        this.scheduler = scheduler;
+        this.dealer = dealer;
+        this.journal = journal;
+        this.clock = System::currentTimeMillis;
+        reset(cards);
+        callListeners(); // publishes the first snapshot; there are no listeners yet
+        if (journal != NO_JOURNAL) {
+            journal.checkpoint(checkpoint());
+        }
+        checkRep();
+    }
+    
+    /**
+     * Restores a Board from a checkpoint, without scheduling any timeouts; see resume().
+     * @param checkpoint the state of the Board
+     * @param scheduler schedules declare and inactivity timeouts
+     * @param dealer supplies the shuffled deck for each new game once a deck runs out
+     * @param journal records every change to the Board, starting with the checkpoint
+     */
+    public Board(BoardCheckpoint checkpoint, TimeoutScheduler scheduler, Supplier<List<Card>> dealer,
+            Journal journal) {
+        this(checkpoint, scheduler, dealer, journal, System::currentTimeMillis);
+    }
+    
+    /**
+     * Restores a Board from a checkpoint, without scheduling any timeouts, whose declares time out
+     * by the given clock rather than the system's, as when replaying recorded changes.
+     * @param checkpoint the state of the Board
+     * @param scheduler schedules declare and inactivity timeouts
+     * @param dealer supplies the shuffled deck for each new game once a deck runs out
+     * @param journal records every change to the Board, starting with the checkpoint
+     * @param clock gives the current Unix time in milliseconds
+     */
+    public Board(BoardCheckpoint checkpoint, TimeoutScheduler scheduler, Supplier<List<Card>> dealer,
+            Journal journal, LongSupplier clock) {
+        final BoardSnapshot restored = checkpoint.snapshot();
+        defaultColumns = checkpoint.attributes();
+        setIndex = new SetIndex(defaultColumns);
+        this.scheduler = scheduler;
+        this.dealer = dealer;
+        this.journal = journal;
+        this.clock = clock;
+        
+        gameBoard = new ArrayList<>();
+        for (int i=0; i<restored.getNumRows(); i++) {
+            List<Card> row = new ArrayList<>();
+            for (int j=0; j<restored.getNumCols(); j++) {
+                row.add(restored.getCard(i, j));
+            }
+            gameBoard.add(Collections.synchronizedList(row));
+        }
+        gameBoard = Collections.synchronizedList(gameBoard);
+        indexCards();
+        restored.getScores().forEach(scores::put);
+        cardsRemaining = new LinkedList<>(checkpoint.deck());
+        activePlayer = restored.getDeclarer();
+        squaresHeld = Collections.synchronizedList(new ArrayList<>(restored.getSquaresHeld()));
+        votes = Collections.synchronizedSet(new HashSet<>(restored.getVotes()));
+        declareQueue = new LinkedList<>(checkpoint.declareQueue());
+        timeOut = restored.getTimeout();
+        version = restored.version() - 1; // so the snapshot published below has the version of the checkpoint
+        callListeners(); // there are no listeners yet
+        journal.checkpoint(checkpoint);
         checkRep();
     }
     
+    /**
+     * Takes a checkpoint of the Board, from which it can be restored. Does not encode the
+     * checkpoint, so holds the lock of the Board only briefly.
+     * @return the state of the Board
+     */
+    public synchronized BoardCheckpoint checkpoint() {
+        return new BoardCheckpoint(defaultColumns, snapshot, new ArrayList<>(cardsRemaining), new ArrayList<>(declareQueue));
+    }
+    
+    /**
+     * Starts the timeouts of a Board restored from a checkpoint, as if every player had just made a
+     * request: gives the declarer, if any, a new time limit, and schedules every player's removal
+     * for inactivity.
+     */
+    public synchronized void resume() {
+        if (!activePlayer.equals("")) {
+            resetTimeout();
+            scheduleTimeout();
+            callListeners();
+        }
+        for (String playerID: scores.toMap().keySet()) {
+            scheduleInactivity(playerID);
+        }
+    }
+    
+    /**
+     * Records a change made by a caller of the Board, then the decks the Board dealt during it, then
+     * a checkpoint of the Board if CHECKPOINT_INTERVAL changes were recorded since the last one. Must
+     * be called once the change has been made, and only if it was made, so that changes which were
+     * refused are not recorded.
+     */
+    private void record(EventLog.Type type, String playerID, Square square, List<Card> cards) {
+        if (journal == NO_JOURNAL) {
+            return;
+        }
+        journal.record(type, playerID, square, cards);
+        for (List<Card> deck: dealt) {
+            journal.record(EventLog.Type.DEAL, "", null, deck);
+        }
+        dealt.clear();
+        changesSinceCheckpoint += 1;
+        if (changesSinceCheckpoint >= CHECKPOINT_INTERVAL && !batching) { // the snapshot is stale during a batch
+            checkpointJournal();
+        }
+    }
+    
+    /**
+     * Records a checkpoint of the Board in its Journal, so that restoring the Board needs none of
+     * the changes recorded before.
+     */
+    public synchronized void checkpointJournal() {
+        if (journal != NO_JOURNAL) {
+            journal.checkpoint(checkpoint());
+            changesSinceCheckpoint = 0;
+        }
+    }
+    
+    /**
+     * Closes the Board, once its game is over: cancels every declare and inactivity timeout, stops
+     * scheduling new ones, and records nothing more in its Journal. The Board may still be read and
+     * changed, as by a timeout which was already running.
+     */
+    public synchronized void close() {
+        closed = true;
+        journal = NO_JOURNAL;
+        dealt.clear();
+        if (result != null) {
+            result.cancel();
+        }
+        for (Timeout inactivity: playerTimeouts.values()) {
+            inactivity.cancel();
+        }
+        playerTimeouts.clear();
+    }
+    
     /**
      * Performs a reset of the game.
      * @param cards the list of cards used for the game
      */
     public synchronized void resetGame(List<Card> cards) {
+        reset(cards);
+        callListeners();
+        record(EventLog.Type.RESET, "", null, cards);
+    }
+    
+    /**
+     * Gets the shuffled deck for a new game from the dealer, to be recorded after the change which
+     * dealt it.
+     * @return the deck
+     */
+    private List<Card> deal() {
+        final List<Card> cards = dealer.get();
+        if (journal != NO_JOURNAL) {
+            dealt.add(cards);
+        }
+        return cards;
+    }
+    
+    private void reset(List<Card> cards) {
         List<Card> cardsCopy = new ArrayList<>(cards);
         int counter = 0;
         gameBoard = new ArrayList<>();
@@ -182,7 +427,8 @@ public class Board {
         }
         
         gameBoard = Collections.synchronizedList(gameBoard);
-        scores = new ConcurrentHashMap<>();
+        indexCards();
+        scores.clear();
         
         // linked list is more efficient for removing the first card
         cardsRemaining = new LinkedList<>(cardsCopy.subList(DEFAULT_ROWS*defaultColumns, cardsCopy.size()));
@@ -190,7 +436,46 @@ public class Board {
         squaresHeld = Collections.synchronizedList(new ArrayList<>());
         votes = Collections.synchronizedSet(new HashSet<>());
         declareQueue = new LinkedList<>();
-        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+    
+    /**
+     * Publishes the current state of the board as a new snapshot. Called only by callListeners(),
+     * once after every change, or once after every batch of changes.
+     */
+    private void publish() {
+        version += 1;
+        final BoardSnapshot published = new BoardSnapshot(version, gameBoard, squaresHeld, activePlayer, timeOut,
+                scores.top(scores.size()), votes, cardsRemaining.size(), setIndex.anySet());
+        // recorded in the history first, so any version a reader has seen can be found there
+        history.set((int) (version & (HISTORY - 1)), published);
+        snapshot = published;
+    }
+    
+    /**
+     * Gets the number of attributes of the cards, which is also the default number of columns.
+     * @return the number of attributes
+     */
+    public int getAttributes() {
+        return defaultColumns;
+    }
+    
+    /**
+     * Returns a consistent view of the whole board without taking its lock.
+     * @return the snapshot published after the latest change to the board
+     */
+    public BoardSnapshot snapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Finds a recent snapshot of the board without taking its lock. The last HISTORY snapshots
+     * published are kept.
+     * @param version the version of a snapshot
+     * @return the snapshot with that version, or null if it is too old or was never published
+     */
+    public BoardSnapshot snapshot(long version) {
+        final BoardSnapshot recent = history.get((int) (version & (HISTORY - 1)));
+        return recent != null && recent.version() == version ? recent : null;
     }
     
     /**
@@ -203,6 +488,7 @@ public class Board {
         for (int i=0; i<gameBoard.size(); i++) {
             assert gameBoard.get(i).size() == rowLength;
         }
+        assert setIndex.numCards() == gameBoard.size()*rowLength;
     }
 
     @Override
@@ -222,15 +508,15 @@ public class Board {
      */
     private boolean sameValue(Board that) {
         return this.gameBoard.equals(that.gameBoard) // TODO update when finalized instance variables
-                && this.scores.equals(that.scores)
+                && this.scores.toMap().equals(that.scores.toMap())
                 && this.cardsRemaining.equals(that.cardsRemaining)
                 && this.activePlayer.equals(that.activePlayer)
                 && this.votes.equals(that.votes)
                 && this.declareQueue.equals(that.declareQueue)
                 && this.timeOut == that.timeOut
                 && this.defaultColumns == that.defaultColumns
-                && this.executor.equals(that.executor)
-                && this.result.equals(that.result)
+                && this.scheduler.equals(that.scheduler)
+                && Objects.equals(this.result, that.result)
                 && this.listeners.equals(that.listeners);
     }
     
@@ -259,6 +545,7 @@ public class Board {
             }
             scores.put(playerID, 0);
             callListeners();
+            record(EventLog.Type.ADD_PLAYER, playerID, null, List.of());
             checkRep();
             return true;
         }
@@ -322,12 +609,15 @@ public class Board {
     }
     
     /**
-     * Sets a given square to the given Set card.
+     * Sets a given square to the given Set card. Like condenseCards, this is one step of replacing
+     * a Set, so the change is only published in the snapshot once the whole replacement is done.
      * @param square
      * @param card
      */
     public synchronized void setCard(Square square, Card card) {
-        gameBoard.get(square.getRow()).set(square.getCol(), card);
+        Card old = gameBoard.get(square.getRow()).set(square.getCol(), card);
+        setIndex.remove(old);
+        setIndex.add(card);
     }
     
     /**
@@ -359,9 +649,16 @@ public class Board {
     }
     
     private synchronized void callListeners() {
+        if (batching) {
+            changedInBatch = true;
+            return;
+        }
+        publish();
+        final long start = System.nanoTime();
         for (BoardListener listener: Set.copyOf(listeners)) {
             listener.boardChanged();
         }
+        FAN_OUT.recordSince(start);
     }
     
     /**
@@ -369,7 +666,26 @@ public class Board {
      * @return a Map mapping player IDs to their scores
      */
     public synchronized Map<String, Integer> getScores() {
-        return new HashMap<>(scores);
+        return scores.toMap();
+    }
+    
+    /**
+     * Finds the players with the highest scores at present, without taking the lock of the Board.
+     * @param n the number of players wanted
+     * @return the players with the n highest scores, or all players if there are fewer, from the
+     *         highest score down, with equal scores ordered by player ID
+     */
+    public List<Map.Entry<String, Integer>> getTopScores(int n) {
+        return scores.top(n);
+    }
+    
+    /**
+     * Finds the rank of a player at present, without taking the lock of the Board.
+     * @param playerID the unique ID of the player
+     * @return one more than the number of players with a higher score, or 0 if the player is not playing
+     */
+    public int getRank(String playerID) {
+        return scores.rank(playerID);
     }
     
     /**
@@ -377,41 +693,43 @@ public class Board {
      * @return whether the three given cards is a set
      */
     public synchronized boolean checkSet() {
-        Set<Card.Color> colors = new HashSet<>();
-        Set<Card.Number> numbers = new HashSet<>();
-        Set<Card.Shading> shadings = new HashSet<>();
-        Set<Card.Shape> shapes = new HashSet<>();
-        for (int i=0; i<squaresHeld.size(); i++) {
-            Card card = getCard(squaresHeld.get(i));
-            colors.add(card.color());
-            numbers.add(card.number());
-            shadings.add(card.shading());
-            shapes.add(card.shape());
+        if (squaresHeld.size() != SET_SIZE) {
+            return false;
         }
-        return (colors.size()*numbers.size()*shadings.size()*shapes.size())%2 != 0; // the sets should all be either of size 1 or size 3
+        return SetMath.isSet(getCard(squaresHeld.get(0)).code(), getCard(squaresHeld.get(1)).code(),
+                getCard(squaresHeld.get(2)).code());
     }
     
     /**
-     * Schedule a time limit for a player to declare a set.
+     * Schedule a time limit for a player to declare a set. Does nothing once the Board is closed.
      */
     public synchronized void scheduleTimeout() {
-        result = executor.schedule(new Runnable () {
+        if (closed) {
+            return;
+        }
+        result = scheduler.schedule(new Runnable () {
             public void run() {
-                timedOut(activePlayer);
+                DECLARE_TIMEOUTS.increment();
+                timed(() -> timedOut(activePlayer));
             }
-        }, TIME_LIMIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+        }, TIME_LIMIT_IN_MILLIS);
     }
     
     /**
-     * Schedules a time limit for a player before they are removed from the game.
+     * Schedules a time limit for a player before they are removed from the game. Does nothing once
+     * the Board is closed.
      * @param playerID unique ID of the player
      */
     public synchronized void scheduleInactivity(String playerID) {
-        ScheduledFuture<?> inactiveResult = executor.schedule(new Runnable () {
+        if (closed) {
+            return;
+        }
+        Timeout inactiveResult = scheduler.schedule(new Runnable () {
             public void run() {
-                removePlayer(playerID);
+                INACTIVITY_TIMEOUTS.increment();
+                timed(() -> removePlayer(playerID));
             }
-        }, TIME_LIMIT_IN_MILLIS, TimeUnit.MILLISECONDS);
+        }, TIME_LIMIT_IN_MILLIS);
         playerTimeouts.put(playerID, inactiveResult);
     }
     
@@ -421,36 +739,68 @@ public class Board {
      */
     public synchronized void cancelInactivity(String playerID) {
         if (playerTimeouts.keySet().contains(playerID)) {
-            playerTimeouts.get(playerID).cancel(false);
+            playerTimeouts.get(playerID).cancel();
         }
     }
     
     /**
-     * Removes a player from the game.
+     * Removes a player from the game, along with their vote and their place in the queue to declare.
+     * If they are declaring, their time limit is cancelled and the next player in the queue, if any,
+     * declares instead. Does nothing if the player is not playing.
      * @param playerID unique ID of the player
      */
     public synchronized void removePlayer(String playerID) {
+        if (!scores.containsKey(playerID)) {
+            return;
+        }
         scores.remove(playerID);
+        votes.remove(playerID);
+        declareQueue.remove(playerID);
+        final Timeout inactivity = playerTimeouts.remove(playerID);
+        if (inactivity != null) {
+            inactivity.cancel();
+        }
+        if (activePlayer.equals(playerID)) {
+            if (result != null) {
+                result.cancel();
+            }
+            squaresHeld.clear();
+            nextDeclarer();
+        }
         checkVotes(); // could be the case that if a player is removed, the votes for adding are now unanimous
         callListeners();
+        record(EventLog.Type.REMOVE_PLAYER, playerID, null, List.of());
+    }
+    
+    // passes the declare to the next player waiting, if any, with a new time limit
+    private void nextDeclarer() {
+        if (declareQueue.size() > 0) {
+            activePlayer = declareQueue.remove();
+            resetTimeout();
+            scheduleTimeout();
+        } else {
+            activePlayer = "";
+        }
     }
     
     /** 
-     * Allows a player to declare they've found a set, giving them rights to start picking 3 cards.
+     * Allows a player to declare they've found a set, giving them rights to start picking 3 cards,
+     * or queues them to declare next if another player is declaring. Does nothing if the player is
+     * not playing, or is already declaring or queued.
      * @param playerID the unique ID of the player
      */
     public synchronized void declareSet(String playerID) {
-        if (activePlayer.equals(playerID) || declareQueue.contains(playerID)) { // clicking declare while declaring does nothing
+        if (!scores.containsKey(playerID) || activePlayer.equals(playerID) || declareQueue.contains(playerID)) { // clicking declare while declaring does nothing
             return; 
         } else if (!activePlayer.equals("")) { // another player is currently selecting cards
             declareQueue.add(playerID);
-            return;
         } else {
             activePlayer = playerID;
             resetTimeout();
             scheduleTimeout();
+            callListeners();
         }
-        callListeners();
+        record(EventLog.Type.DECLARE, playerID, null, List.of());
     }
     
     /**
@@ -473,26 +823,25 @@ public class Board {
      * Resets the timeout time to the current time, plus 5 seconds.
      */
     public synchronized void resetTimeout() {
-        timeOut = System.currentTimeMillis() + TIME_LIMIT_IN_MILLIS; // gives 5 seconds to answer correctly
+        timeOut = clock.getAsLong() + TIME_LIMIT_IN_MILLIS; // gives 5 seconds to answer correctly
     }
     
     /**
      * Executes the condensing of 3 x (n+1) cards to 3 x n when n>4 and a Set is found.
      */
     public synchronized void condenseCards() {
-        List<Card> cardsHeld = new ArrayList<>();
         int cols = getNumCols();
         
-        for (int i=0; i<SET_SIZE; i++) {
-            Square sq = squaresHeld.get(i);
-            Card card = getCard(sq);
-            cardsHeld.add(card);
-        }
-        
         List<Card> allCards = new ArrayList<>();
-        for (int i=0; i<SET_SIZE; i++) { // remove the 3 cards found in the Set
-            gameBoard.get(i).removeAll(cardsHeld);
-            allCards.addAll(gameBoard.get(i));
+        for (int i=0; i<DEFAULT_ROWS; i++) { // remove the 3 cards found in the Set
+            for (int j=0; j<cols; j++) {
+                Card card = gameBoard.get(i).get(j);
+                if (squaresHeld.contains(new Square(i, j))) {
+                    setIndex.remove(card);
+                } else {
+                    allCards.add(card);
+                }
+            }
         }
         
         int counter = 0;
@@ -507,7 +856,8 @@ public class Board {
     }
     
     /**
-     * Executes the replacement of three cards once they're found.
+     * Executes the replacement of three cards once they're found. The caller then calls the
+     * listeners.
      */
     public synchronized void replaceCards() {
         if (cardsRemaining.size() == 0 || getNumCols() > defaultColumns) {
@@ -519,48 +869,66 @@ public class Board {
                 setCard(sq, newCard);
             }
         }
+        squaresHeld.clear(); // the held squares now hold other cards, or are gone
         if (cardsRemaining.size() == 0) {
             if (!existsSet()) {
-                resetGame(generateRandomCards(defaultColumns));
+                reset(deal());
             }
         }
-        callListeners();
     }
     
     /**
-     * Adds three cards to the board; called if no one can find a Set on the given board.
+     * Adds three cards to the board; called if no one can find a Set on the given board. Does
+     * nothing if fewer than three cards are left in the deck.
      */
     public synchronized void addCards() {
+        if (cardsRemaining.size() < DEFAULT_ROWS) {
+            return;
+        }
+        addColumn();
+        callListeners();
+        record(EventLog.Type.ADD_CARDS, "", null, List.of());
+    }
+    
+    // deals one card onto the end of each row
+    private void addColumn() {
         for (int row=0; row<DEFAULT_ROWS; row++) {
             Card newCard = cardsRemaining.remove();
             gameBoard.get(row).add(newCard);
+            setIndex.add(newCard);
         }
     }
     
     /**
-     * Allows a player to vote to add 3 more cards.
+     * Allows a player to vote to add 3 more cards. Does nothing if the player is not playing, has
+     * already voted, or the deck is empty.
      * @param playerID the unique ID of the player
      */
     public synchronized void vote(String playerID) {
         if (cardsRemaining.size() == 0) { // shouldn't be able to add more cards if there are none left
             return; 
         }
-        votes.add(playerID);
+        if (!scores.containsKey(playerID) || !votes.add(playerID)) { // only players vote, once each
+            return;
+        }
         checkVotes();
         callListeners();
+        record(EventLog.Type.VOTE, playerID, null, List.of());
     }
     
     /**
-     * Checks to see if everyone has unanimously voted to add 3 more cards.
+     * Checks to see if everyone has unanimously voted to add 3 more cards, and if so adds them. The
+     * caller then calls the listeners.
      */
     public synchronized void checkVotes() {
-        if (votes.size() == numPlayers()) { // adds cards if all players agree
-            addCards();
+        // adds cards if all players agree, and there are players and cards to add
+        if (!votes.isEmpty() && votes.size() == numPlayers() && cardsRemaining.size() >= DEFAULT_ROWS) {
             votes.clear();
+            addColumn();
             
             if (cardsRemaining.size() == 0) {
                 if (!existsSet()) {
-                    resetGame(generateRandomCards(defaultColumns));
+                    reset(deal());
                 }
             }
         }
@@ -574,46 +942,61 @@ public class Board {
         return new HashSet<>(votes);
     }
     
+    /**
+     * Finds how many cards are left in the deck.
+     * @return the number of cards not yet dealt onto the board
+     */
+    public synchronized int numCardsRemaining() {
+        return cardsRemaining.size();
+    }
+    
     /**
      * Finds how many players are playing.
      * @return the number of players in the game
      */
     public synchronized int numPlayers() {
-        return scores.keySet().size();
+        return scores.size();
     }
     
     /**
-     * Executes if the player has run out of time to find a set.
+     * Executes if the player has run out of time to find a set. Does nothing if the player is no
+     * longer declaring.
      * @param playerID the unique ID of the player
      */
     public synchronized void timedOut(String playerID) {
+        if (playerID.equals("") || !playerID.equals(activePlayer)) { // the declare already ended
+            return;
+        }
         int score = scores.get(playerID);
         final int pointsLost = 5;
         scores.put(playerID, score-pointsLost);
         
         squaresHeld.clear();
-        if (declareQueue.size() > 0) {
-            activePlayer = declareQueue.remove();
-            resetTimeout();
-            scheduleTimeout();
-        } else {
-            activePlayer = "";
-        }
+        nextDeclarer();
         callListeners();
+        record(EventLog.Type.TIMEOUT, playerID, null, List.of());
     }
     
     /**
      * Performs the selection of a card by a particular player, according to the rules of Set.
+     * Does nothing if the player is not declaring.
      * @param square the coordinates of the card the player wants to flip
      * @param playerID the unique of the player
+     * @throws IllegalArgumentException if the square is not on the board
      * @throws InterruptedException
      */
     public synchronized void pickCard(Square square, String playerID) throws InterruptedException {
-        if (!playerID.equals(activePlayer)) { // cannot pick card if not currently the player picking cards
+        if (!playerID.equals(activePlayer) || activePlayer.equals("")) { // cannot pick card if not currently the player picking cards
             return; 
         }
+        if (square.getRow() < 0 || square.getRow() >= getNumRows()
+                || square.getCol() < 0 || square.getCol() >= getNumCols()) {
+            throw new IllegalArgumentException("not on the board: " + square);
+        }
         if (squaresHeld.contains(square)) { // toggle if card already selected is picked again
             squaresHeld.remove(square);
+            callListeners();
+            record(EventLog.Type.PICK, playerID, square, List.of());
             return;
         }
         
@@ -623,7 +1006,9 @@ public class Board {
         final int pointsLost = 5; // lose 5 points for an incorrect set
         
         if (squaresHeld.size() == SET_SIZE) {
-            result.cancel(false);
+            if (result != null) { // a board restored from a checkpoint has no timeout until resume()
+                result.cancel();
+            }
             int score = scores.get(playerID);
             if (checkSet()) {
                 scores.put(playerID, score + pointsWon);
@@ -633,17 +1018,105 @@ public class Board {
                 replaceCards();
             } else {
                 scores.put(playerID, score - pointsLost);
-                if (declareQueue.size() > 0) {
-                    activePlayer = declareQueue.remove();
-                    resetTimeout();
-                } else {
-                    activePlayer = "";
-                }
+                nextDeclarer();
             }
             // reset the board so the next player can find a Set
             squaresHeld.clear();
         }
         callListeners();
+        record(EventLog.Type.PICK, playerID, square, List.of());
+    }
+    
+    /**
+     * Performs up to three selections of cards by a particular player at once, as if by pickCard()
+     * for each square in order, stopping early if the player stops picking cards. The picks are made
+     * while holding the lock of the board, so no other change comes between them, and the listeners
+     * are called once for the whole batch.
+     * @param squares the coordinates of the cards the player wants to flip, at most 3
+     * @param playerID the unique ID of the player
+     * @throws IllegalArgumentException if there are more than 3 squares, or any is not on the board,
+     *         in which case no card is picked
+     * @throws InterruptedException
+     */
+    public synchronized void pickCards(List<Square> squares, String playerID) throws InterruptedException {
+        if (squares.size() > SET_SIZE) {
+            throw new IllegalArgumentException("at most " + SET_SIZE + " picks at once: " + squares);
+        }
+        for (Square square: squares) {
+            if (square.getRow() < 0 || square.getRow() >= getNumRows()
+                    || square.getCol() < 0 || square.getCol() >= getNumCols()) {
+                throw new IllegalArgumentException("not on the board: " + square);
+            }
+        }
+        batch(() -> {
+            for (Square square: squares) {
+                if (!playerID.equals(activePlayer)) {
+                    break;
+                }
+                pickCard(square, playerID);
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * Makes a batch of changes to the board while holding its lock, so no other change comes between
+     * them, and the listeners are called once for the whole batch, and the snapshot of the board is
+     * published once, rather than after each change. A batch within a batch is part of it.
+     * @param changes the changes, made by calling methods of this board
+     * @return the result of changes
+     * @throws InterruptedException if the changes are interrupted
+     */
+    public synchronized <T> T batch(GameLoop.Command<T> changes) throws InterruptedException {
+        if (batching) {
+            return changes.run();
+        }
+        batching = true;
+        try {
+            return changes.run();
+        } finally {
+            batching = false;
+            if (changedInBatch) {
+                changedInBatch = false;
+                callListeners();
+            }
+        }
+    }
+    
+    /**
+     * Makes changes to the board while holding its lock, as by calling them directly, and records
+     * in Metrics how long this waited for the lock and then held it. Changes made while the lock
+     * is already held are part of the outer change, and are not timed again.
+     * @param changes the changes, made by calling methods of this board
+     * @return the result of changes
+     * @throws InterruptedException if the changes are interrupted
+     */
+    public <T> T locked(GameLoop.Command<T> changes) throws InterruptedException {
+        if (Thread.holdsLock(this)) {
+            return changes.run();
+        }
+        final long asked = System.nanoTime();
+        synchronized (this) {
+            final long entered = System.nanoTime();
+            LOCK_WAIT.record(entered - asked);
+            try {
+                return changes.run();
+            } finally {
+                LOCK_HOLD.recordSince(entered);
+            }
+        }
+    }
+    
+    // makes a change which cannot be interrupted, such as a timeout, as by locked()
+    private void timed(Runnable change) {
+        try {
+            locked(() -> {
+                change.run();
+                return null;
+            });
+        } catch (InterruptedException ie) {
+            throw new AssertionError("a Runnable cannot be interrupted", ie);
+        }
     }
     
     /**
@@ -651,17 +1124,70 @@ public class Board {
      * @return whether a Set exists
      */
     public synchronized boolean existsSet() {
-        List<Card> allCards = gameBoard.stream().flatMap(List::stream).collect(Collectors.toList());
-        Set<Card> allCardsSet = new HashSet<>(allCards);
-        for (int i=0; i<allCards.size(); i++) {
-            for (int j=i+1; j<allCards.size(); j++) {
-                Card missing = missingCard(allCards.get(i), allCards.get(j));
-                if (allCardsSet.contains(missing)) {
-                    return true;
-                }
+        return setIndex.numSets() > 0;
+    }
+    
+    /**
+     * Counts the Sets among the cards on the board.
+     * @return the number of distinct Sets on the board
+     */
+    public synchronized int countSets() {
+        return setIndex.numSets();
+    }
+    
+    /**
+     * Finds every Set among the cards on the board.
+     * @return a list of all distinct Sets on the board, each given as a list of its 3 cards
+     */
+    public synchronized List<List<Card>> findAllSets() {
+        return setIndex.allSets();
+    }
+    
+    /**
+     * Finds a square holding a card which belongs to some Set on the board, from the latest
+     * snapshot, without taking the lock of the Board.
+     * @return a list containing that square, or an empty list if there is no Set on the board
+     */
+    public List<Square> getHint() {
+        final List<Square> set = snapshot.getSet();
+        if (set.isEmpty()) {
+            return List.of();
+        }
+        return List.of(set.get(0));
+    }
+    
+    /**
+     * Finds the squares of some Set on the board.
+     * @return a list of the 3 squares holding the cards of a Set, or an empty list if there is no Set on the board
+     */
+    public synchronized List<Square> findSet() {
+        List<Square> squares = new ArrayList<>(SET_SIZE);
+        for (Card card: setIndex.anySet()) {
+            squares.add(findSquare(card));
+        }
+        return squares;
+    }
+    
+    private Square findSquare(Card card) {
+        for (int row=0; row<gameBoard.size(); row++) {
+            int col = gameBoard.get(row).indexOf(card);
+            if (col >= 0) {
+                return new Square(row, col);
+            }
+        }
+        throw new AssertionError("indexed card " + card + " is not on the board");
+    }
+    
+    /**
+     * Rebuilds the index of cards and Sets after the layout of the board is replaced.
+     */
+    private void indexCards() {
+        setIndex.clear();
+        for (List<Card> row: gameBoard) {
+            for (Card card: row) {
+                setIndex.add(card);
             }
         }
-        return false;
     }
     
     /**
@@ -670,46 +1196,8 @@ public class Board {
      * @param card2
      * @return the third card required to complete the Set
      */
-    public synchronized Card missingCard(Card card1, Card card2) {
-        // TODO can probably be DRYed but might be difficult using the existing enums
-        Card.Color color;
-        Card.Number number;
-        Card.Shading shading;
-        Card.Shape shape;
-        
-        if (card1.color().equals(card2.color())) {
-            color = card1.color();
-        } else {
-            List<Card.Color> colors = new ArrayList<>(Arrays.asList(Card.Color.values()));
-            colors.removeAll(List.of(card1.color(), card2.color()));
-            color = colors.get(0);
-        }
-        
-        if (card1.number().equals(card2.number())) {
-            number = card1.number();
-        } else {
-            List<Card.Number> numbers = new ArrayList<>(Arrays.asList(Card.Number.values()));
-            numbers.removeAll(List.of(card1.number(), card2.number()));
-            number = numbers.get(0);
-        }
-        
-        if (card1.shading().equals(card2.shading())) {
-            shading = card1.shading();
-        } else {
-            List<Card.Shading> shadings = new ArrayList<>(Arrays.asList(Card.Shading.values()));
-            shadings.removeAll(List.of(card1.shading(), card2.shading()));
-            shading = shadings.get(0);
-        }
-        
-        if (card1.shape().equals(card2.shape())) {
-            shape = card1.shape();
-        } else {
-            List<Card.Shape> shapes = new ArrayList<>(Arrays.asList(Card.Shape.values()));
-            shapes.removeAll(List.of(card1.shape(), card2.shape()));
-            shape = shapes.get(0);
-        }
-        
-        return new Card(color, number, shading, shape);
+    public Card missingCard(Card card1, Card card2) {
+        return Card.fromCode(card1.attributes(), SetMath.third(card1.code(), card2.code()));
     }
 
 }
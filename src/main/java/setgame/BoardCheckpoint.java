@@ -0,0 +1,188 @@
+package setgame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable copy of the whole state of a Board, from which the Board can be restored: a snapshot
+ * of the board, with the order of the cards left in the deck and the players waiting to declare.
+ *
+ * <p>A checkpoint is taken while the Board is locked, which is cheap, since the snapshot is the one
+ * the Board already published; encoding it is left to the caller, outside the lock.
+ */
+public class BoardCheckpoint {
+
+    private final int attributes;
+    private final BoardSnapshot snapshot;
+    private final List<Card> deck;
+    private final List<String> declareQueue;
+
+    /*
+     * Abstraction function:
+     *    AF(attributes, snapshot, deck, declareQueue): the state of a Board of cards with the given
+     *      number of attributes shown by snapshot, whose deck holds the cards of deck in the order
+     *      they will be dealt, and where the players in declareQueue wait in order to declare after
+     *      the declarer
+     *
+     * Representation invariant:
+     *    1 <= attributes <= SetMath.MAX_ATTRIBUTES
+     *    deck.size() == snapshot.numCardsRemaining()
+     *
+     * Safety from rep exposure:
+     *    all fields are private, final and immutable
+     *
+     * Thread safety argument:
+     *    class is threadsafe immutable
+     */
+
+    /**
+     * Makes a checkpoint.
+     * @param attributes the number of attributes of the cards, which is also the default number of columns
+     * @param snapshot the snapshot of the board
+     * @param deck the cards left in the deck, in the order they will be dealt
+     * @param declareQueue the players waiting to declare, in order
+     */
+    BoardCheckpoint(int attributes, BoardSnapshot snapshot, List<Card> deck, List<String> declareQueue) {
+        this.attributes = attributes;
+        this.snapshot = snapshot;
+        this.deck = List.copyOf(deck);
+        this.declareQueue = List.copyOf(declareQueue);
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert attributes >= 1 && attributes <= SetMath.MAX_ATTRIBUTES;
+        assert deck.size() == snapshot.numCardsRemaining();
+    }
+
+    /** @return the number of attributes of the cards, which is also the default number of columns */
+    public int attributes() {
+        return attributes;
+    }
+
+    /** @return the snapshot of the board */
+    public BoardSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /** @return the cards left in the deck, in the order they will be dealt */
+    public List<Card> deck() {
+        return deck;
+    }
+
+    /** @return the players waiting to declare, in order */
+    public List<String> declareQueue() {
+        return declareQueue;
+    }
+
+    /**
+     * Encodes the checkpoint as: i64 version, u8 attributes, u16 rows, u16 columns, u16 code of each
+     * card across each row, u16 cards in the deck and their codes, u16 squares held and the u16 row
+     * and column of each, the declarer, i64 timeout, i32 players and each player and i32 score, i32
+     * votes and each voter, u16 players waiting to declare and each player; where each player is a
+     * u16 length and modified UTF-8, as by DataOutput.writeUTF, and all fields are big-endian.
+     * @return the encoded checkpoint
+     */
+    public byte[] encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            final int rows = snapshot.getNumRows();
+            final int cols = snapshot.getNumCols();
+            out.writeLong(snapshot.version());
+            out.writeByte(attributes);
+            out.writeShort(rows);
+            out.writeShort(cols);
+            for (Card card: snapshot.getCards()) {
+                out.writeShort(card.code());
+            }
+            out.writeShort(deck.size());
+            for (Card card: deck) {
+                out.writeShort(card.code());
+            }
+            out.writeShort(snapshot.getSquaresHeld().size());
+            for (Square square: snapshot.getSquaresHeld()) {
+                out.writeShort(square.getRow());
+                out.writeShort(square.getCol());
+            }
+            out.writeUTF(snapshot.getDeclarer());
+            out.writeLong(snapshot.getTimeout());
+            out.writeInt(snapshot.getScores().size());
+            for (Map.Entry<String, Integer> score: snapshot.getScores().entrySet()) {
+                out.writeUTF(score.getKey());
+                out.writeInt(score.getValue());
+            }
+            out.writeInt(snapshot.getVotes().size());
+            for (String voter: snapshot.getVotes()) {
+                out.writeUTF(voter);
+            }
+            out.writeShort(declareQueue.size());
+            for (String player: declareQueue) {
+                out.writeUTF(player);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("cannot happen writing to memory", ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a checkpoint encoded by encode().
+     * @param encoded the encoded checkpoint
+     * @return the checkpoint
+     * @throws IllegalArgumentException if the bytes are not an encoded checkpoint
+     */
+    public static BoardCheckpoint decode(byte[] encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            final long version = in.readLong();
+            final int attributes = in.readUnsignedByte();
+            final int rows = in.readUnsignedShort();
+            final int cols = in.readUnsignedShort();
+            final List<List<Card>> board = new ArrayList<>();
+            final SetIndex sets = new SetIndex(attributes); // as the restored Board indexes its cards
+            for (int row=0; row<rows; row++) {
+                final List<Card> cards = new ArrayList<>();
+                for (int col=0; col<cols; col++) {
+                    final Card card = Card.fromCode(attributes, in.readUnsignedShort());
+                    cards.add(card);
+                    sets.add(card);
+                }
+                board.add(cards);
+            }
+            final List<Card> deck = new ArrayList<>();
+            for (int i=in.readUnsignedShort(); i>0; i--) {
+                deck.add(Card.fromCode(attributes, in.readUnsignedShort()));
+            }
+            final List<Square> squaresHeld = new ArrayList<>();
+            for (int i=in.readUnsignedShort(); i>0; i--) {
+                squaresHeld.add(new Square(in.readUnsignedShort(), in.readUnsignedShort()));
+            }
+            final String declarer = in.readUTF();
+            final long timeout = in.readLong();
+            final Scoreboard scores = new Scoreboard();
+            for (int i=in.readInt(); i>0; i--) {
+                scores.put(in.readUTF(), in.readInt());
+            }
+            final Set<String> votes = new HashSet<>();
+            for (int i=in.readInt(); i>0; i--) {
+                votes.add(in.readUTF());
+            }
+            final List<String> declareQueue = new ArrayList<>();
+            for (int i=in.readUnsignedShort(); i>0; i--) {
+                declareQueue.add(in.readUTF());
+            }
+            return new BoardCheckpoint(attributes, new BoardSnapshot(version, board, squaresHeld, declarer, timeout,
+                    scores.top(scores.size()), votes, deck.size(), sets.anySet()), deck, declareQueue);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("not a checkpoint", e);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package setgame;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable view of a Board at one moment, for reading the whole board consistently without
+ * taking its lock. Each Board publishes a new snapshot, with a larger version, after every change.
+ */
+public class BoardSnapshot {
+
+    private final long version;
+    private final int rows;
+    private final int cols;
+    private final Card[] cards;
+    private final List<Square> squaresHeld;
+    private final String declarer;
+    private final long timeout;
+    private final Map<String, Integer> scores;
+    private final List<Map.Entry<String, Integer>> ranking;
+    private final Set<String> votes;
+    private final int cardsRemaining;
+    private final List<Square> set;
+    private volatile byte[] rendering; // the BOARD response seen by all but the declarer, once rendered
+    private volatile byte[] binaryRendering; // the same in BinaryFormat, once rendered
+
+    /*
+     * Abstraction function:
+     *    AF(version, rows, cols, cards, squaresHeld, declarer, timeout, scores, ranking, votes,
+     *      cardsRemaining, set):
+     *      the state of a Board after its change numbered version, when it had rows x cols cards
+     *      with the card at (row, col) in cards[row*cols + col], the squares squaresHeld held by the
+     *      declarer in the order they were picked, declarer "" if no one was declaring, the declare
+     *      timing out at the Unix time timeout, the players' scores, ranked in ranking, the players
+     *      who voted to add cards, cardsRemaining cards left in the deck, and the squares set of the
+     *      Set the Board would give as a hint, if any
+     *
+     * Representation invariant:
+     *    rows > 0, cols > 0, cards.length == rows*cols, and no element of cards is null
+     *    every square held lies on the board
+     *    ranking holds exactly the entries of scores, from the highest score down, with equal scores
+     *      ordered by player ID
+     *    set is empty, or holds 3 squares on the board, in row-major order, whose cards form a Set
+     *
+     * Safety from rep exposure:
+     *    all fields are private and final, except the caches rendering and binaryRendering
+     *    cards is never returned; squaresHeld, scores, ranking, votes and set are unmodifiable, and
+     *      the entries of ranking are immutable
+     *    rendering and binaryRendering are returned, but only within the package, whose callers
+     *      never modify them
+     *
+     * Thread safety argument:
+     *    class is threadsafe immutable: all fields are final, and cards is never mutated after
+     *      construction, so a snapshot may be shared with any thread
+     *    rendering and binaryRendering are volatile caches of functions of the final fields,
+     *      so threads which compute one at the same time compute equal values, and any may be kept
+     */
+
+    /**
+     * Makes a snapshot of a board.
+     * @param version number of this snapshot, larger than those of every earlier snapshot of the board
+     * @param board the cards on the board, as a list of rows of equal length; not retained
+     * @param squaresHeld the squares held by the declarer
+     * @param declarer the player declaring a Set, or "" if there is none
+     * @param timeout the Unix time at which the declare times out
+     * @param ranking each player and their score, from the highest score down, with equal scores
+     *        ordered by player ID, as kept by a Scoreboard
+     * @param votes the players who voted to add cards
+     * @param cardsRemaining the number of cards left in the deck
+     * @param set the 3 cards of some Set on the board, as kept by the board's SetIndex, or an empty
+     *        list if there is none
+     */
+    BoardSnapshot(long version, List<List<Card>> board, List<Square> squaresHeld, String declarer, long timeout,
+            List<Map.Entry<String, Integer>> ranking, Set<String> votes, int cardsRemaining, List<Card> set) {
+        this.version = version;
+        this.rows = board.size();
+        this.cols = board.get(0).size();
+        this.cards = new Card[rows*cols];
+        final Square[] setSquares = new Square[set.size()];
+        int found = 0;
+        for (int row=0; row<rows; row++) {
+            final List<Card> cardsInRow = board.get(row);
+            for (int col=0; col<cols; col++) {
+                final Card card = cardsInRow.get(col);
+                cards[row*cols + col] = card;
+                // the squares of the Set are placed while the cards are copied, rather than searched for
+                if (found < setSquares.length && set.contains(card)) {
+                    setSquares[found] = new Square(row, col);
+                    found += 1;
+                }
+            }
+        }
+        this.squaresHeld = List.copyOf(squaresHeld);
+        this.declarer = declarer;
+        this.timeout = timeout;
+        final Map<String, Integer> scores = new HashMap<>();
+        for (Map.Entry<String, Integer> entry: ranking) {
+            scores.put(entry.getKey(), entry.getValue());
+        }
+        this.scores = Map.copyOf(scores);
+        this.ranking = List.copyOf(ranking);
+        this.votes = Set.copyOf(votes);
+        this.cardsRemaining = cardsRemaining;
+        this.set = List.of(setSquares);
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert rows > 0 && cols > 0;
+        assert cards.length == rows*cols;
+        for (Square square: squaresHeld) {
+            assert square.getRow() >= 0 && square.getRow() < rows;
+            assert square.getCol() >= 0 && square.getCol() < cols;
+        }
+        assert scores.size() == ranking.size();
+        for (int i=1; i<ranking.size(); i++) {
+            final int higher = ranking.get(i-1).getValue();
+            final int lower = ranking.get(i).getValue();
+            assert higher > lower
+                    || higher == lower && ranking.get(i-1).getKey().compareTo(ranking.get(i).getKey()) < 0;
+        }
+        assert set.isEmpty() || set.size() == 3
+                && SetMath.isSet(getCard(set.get(0)).code(), getCard(set.get(1)).code(), getCard(set.get(2)).code());
+    }
+
+    /**
+     * @return the number of this snapshot; later snapshots of the same board have larger versions
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the number of rows on the board
+     */
+    public int getNumRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of columns on the board
+     */
+    public int getNumCols() {
+        return cols;
+    }
+
+    /**
+     * @param row the row, between 0 (inclusive) and getNumRows() (exclusive)
+     * @param col the column, between 0 (inclusive) and getNumCols() (exclusive)
+     * @return the card at that square
+     */
+    public Card getCard(int row, int col) {
+        return cards[row*cols + col];
+    }
+
+    /**
+     * @param square a square on the board
+     * @return the card at that square
+     */
+    public Card getCard(Square square) {
+        return getCard(square.getRow(), square.getCol());
+    }
+
+    /**
+     * @return the cards of the board, row by row
+     */
+    public List<Card> getCards() {
+        return List.of(cards);
+    }
+
+    /**
+     * @return an unmodifiable list of the squares held by the declarer, in the order they were picked
+     */
+    public List<Square> getSquaresHeld() {
+        return squaresHeld;
+    }
+
+    /**
+     * @return the player currently finding a Set, or "" if there is none
+     */
+    public String getDeclarer() {
+        return declarer;
+    }
+
+    /**
+     * @return the time at which the declare times out, as a Unix timestamp
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return an unmodifiable map from each player's ID to their score
+     */
+    public Map<String, Integer> getScores() {
+        return scores;
+    }
+
+    /**
+     * Finds the players with the highest scores in this snapshot, ranked when it was published.
+     * @param n the number of players wanted
+     * @return an unmodifiable list of the players with the n highest scores, or all players if there
+     *         are fewer, from the highest score down, with equal scores ordered by player ID
+     */
+    public List<Map.Entry<String, Integer>> getTopScores(int n) {
+        return ranking.subList(0, Math.min(n, ranking.size()));
+    }
+
+    /**
+     * @param playerID a unique ID for a player
+     * @return whether the player is playing
+     */
+    public boolean isPlayer(String playerID) {
+        return scores.containsKey(playerID);
+    }
+
+    /**
+     * @return an unmodifiable set of the players who have voted to add 3 more cards
+     */
+    public Set<String> getVotes() {
+        return votes;
+    }
+
+    /**
+     * @return the number of cards not yet dealt onto the board
+     */
+    public int numCardsRemaining() {
+        return cardsRemaining;
+    }
+
+    /**
+     * Gives the squares of the Set the board's SetIndex held when this snapshot was published, so
+     * hints are answered from the snapshot, without searching or taking the lock of the Board.
+     * @return an unmodifiable list of the 3 squares holding the cards of a Set, in row-major order,
+     *         or an empty list if there is no Set on the board
+     */
+    public List<Square> getSet() {
+        return set;
+    }
+
+    /**
+     * Renders the snapshot as the BOARD of the API, as seen by every player except the declarer,
+     * at most once per snapshot (barring races, which render it again harmlessly).
+     * @return the UTF-8 bytes of the response, which must not be modified
+     */
+    byte[] rendering() {
+        byte[] bytes = rendering;
+        if (bytes == null) {
+            bytes = render().getBytes(UTF_8);
+            rendering = bytes;
+        }
+        return bytes;
+    }
+    
+    /**
+     * Renders the snapshot as a board in BinaryFormat, as seen by every player except the declarer,
+     * at most once per snapshot (barring races, which render it again harmlessly).
+     * @return the encoded board, which must not be modified
+     */
+    byte[] binaryRendering() {
+        byte[] bytes = binaryRendering;
+        if (bytes == null) {
+            bytes = BinaryFormat.board(this);
+            binaryRendering = bytes;
+        }
+        return bytes;
+    }
+    
+    /**
+     * @return the index in rendering() of the declare line, which starts with "up " unless no
+     *         one is declaring; the declarer sees "my " there instead
+     */
+    int declareIndex() {
+        return Integer.toString(rows).length() + 1 + Integer.toString(cols).length() + 1;
+    }
+    
+    private String render() {
+        final boolean[] held = new boolean[cards.length];
+        for (Square square: squaresHeld) {
+            held[square.getRow()*cols + square.getCol()] = true;
+        }
+        final StringBuilder response = new StringBuilder(16 + cards.length*24);
+        response.append(rows).append("x").append(cols).append("\n");
+        if (declarer.equals("")) {
+            response.append("none\n");
+        } else {
+            response.append("up ").append(timeout).append("\n");
+        }
+        for (int i=0; i<cards.length; i++) {
+            response.append(held[i] ? "my " : "up ").append(cards[i]).append("\n");
+        }
+        return response.toString();
+    }
+    
+    @Override
+    public String toString() {
+        final List<String> lines = new ArrayList<>();
+        for (int row=0; row<rows; row++) {
+            lines.add(List.of(cards).subList(row*cols, (row+1)*cols).toString());
+        }
+        return "v" + version + " " + String.join(" ", lines);
+    }
+}
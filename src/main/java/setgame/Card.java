@@ -1,7 +1,14 @@
 package setgame;
 
-/** 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
  * ADT representing the coordinates of a given card in a Board.
+ *
+ * <p>A standard card has a color, number, shading and shape. Decks for games with more than
+ * 4 attributes use cards with further attributes, each again taking one of 3 values.
  */
 public class Card {
     
@@ -10,65 +17,173 @@ public class Card {
     public enum Shading {SOLID, STRIPED, OPEN}
     public enum Shape {DIAMOND, SQUIGGLE, OVAL}
     
-    private final Color color;
-    private final Number number;
-    private final Shading shading;
-    private final Shape shape;
+    private static final Color[] COLORS = Color.values();
+    private static final Number[] NUMBERS = Number.values();
+    private static final Shading[] SHADINGS = Shading.values();
+    private static final Shape[] SHAPES = Shape.values();
+    
+    // the values of the standard attributes which a game does not use
+    private static final int[] UNUSED_VALUES = {
+            Color.RED.ordinal(), Number.ONE.ordinal(), Shading.SOLID.ordinal(), Shape.SQUIGGLE.ordinal()
+    };
+    
+    private final int attributes;
+    private final int code;
+    private final int vector;
     
     /*
      * Abstraction function:
-     *    AF(color, number, shading, shape): card in Set with those properties
-     * 
+     *    AF(attributes, code, vector): card in Set with the given number of attributes, where
+     *      attribute i has the value with ordinal SetMath.attribute(code, i); the first 4 attributes
+     *      are the color, number, shading and shape
+     *
      * Representation invariant:
-     *    true
-     * 
+     *    SetMath.ATTRIBUTES <= attributes <= SetMath.MAX_ATTRIBUTES
+     *    0 <= code < 3^attributes
+     *    vector == SetMath.vector(code)
+     *
      * Safety from rep exposure:
      *    all fields are private and final
+     *    instances are only created by the static initializer, one per number of attributes and code
      *    no mutators, all methods return immutable types
-     * 
+     *
      * Thread safety argument:
      *    class is threadsafe immutable
      *    all fields are private, final, and primitives
      */
     
+    // CARDS[attributes][code] is the canonical instance of every card with at least 4 attributes
+    private static final Card[][] CARDS = new Card[SetMath.MAX_ATTRIBUTES+1][];
+    
+    static {
+        for (int attributes=SetMath.ATTRIBUTES; attributes<=SetMath.MAX_ATTRIBUTES; attributes++) {
+            CARDS[attributes] = new Card[SetMath.cards(attributes)];
+            for (int code=0; code<CARDS[attributes].length; code++) {
+                CARDS[attributes][code] = new Card(attributes, code);
+            }
+        }
+    }
+    
     /**
-     * Creates an instance of Square.
-     * @param color 
+     * Returns the canonical instance of a standard card; no two distinct instances represent the same card.
+     * @param color
      * @param number
      * @param shading
      * @param shape
+     * @return the card with those properties
+     */
+    public static Card of(Color color, Number number, Shading shading, Shape shape) {
+        return fromCode(SetMath.encode(color.ordinal(), number.ordinal(), shading.ordinal(), shape.ordinal()));
+    }
+    
+    /**
+     * Returns the canonical instance of a standard card given its code.
+     * @param code the card code, as described in SetMath
+     * @return the card with that code
      */
-    public Card(Color color, Number number, Shading shading, Shape shape) {
-        this.color = color;
-        this.number = number;
-        this.shading = shading;
-        this.shape = shape;
+    public static Card fromCode(int code) {
+        return CARDS[SetMath.ATTRIBUTES][code];
+    }
+    
+    /**
+     * Returns the canonical instance of a card from a deck with the given number of attributes.
+     * @param attributes number of attributes in the deck, between 1 and SetMath.MAX_ATTRIBUTES;
+     *        decks with at most 4 attributes are made of standard cards
+     * @param code the card code, as described in SetMath
+     * @return the card with that code
+     */
+    public static Card fromCode(int attributes, int code) {
+        return CARDS[Math.max(attributes, SetMath.ATTRIBUTES)][code];
+    }
+    
+    /**
+     * Returns the cards of a full deck, in order of their codes. With fewer than 4 attributes, the
+     * attributes after the first ones are fixed: number ONE, shading SOLID, shape SQUIGGLE.
+     * @param attributes number of attributes which vary among the cards, between 1 and SetMath.MAX_ATTRIBUTES
+     * @return an unmodifiable list of all 3^attributes cards of the deck
+     */
+    public static List<Card> deck(int attributes) {
+        if (attributes < 1 || attributes > SetMath.MAX_ATTRIBUTES) {
+            throw new IllegalArgumentException("unsupported number of attributes: " + attributes);
+        }
+        int unused = 0;
+        for (int i=SetMath.ATTRIBUTES-1; i>=attributes; i--) {
+            unused = unused*SetMath.VALUES + UNUSED_VALUES[i];
+        }
+        int cards = SetMath.cards(attributes);
+        int base = unused*cards; // the unused attributes are the highest digits of the code
+        List<Card> deck = new ArrayList<>(cards);
+        for (int code=0; code<cards; code++) {
+            deck.add(fromCode(attributes, base + code));
+        }
+        return Collections.unmodifiableList(deck);
+    }
+    
+    private Card(int attributes, int code) {
+        this.attributes = attributes;
+        this.code = code;
+        this.vector = SetMath.vector(code);
         checkRep();
     }
     
     private void checkRep() {
-
+        assert attributes >= SetMath.ATTRIBUTES && attributes <= SetMath.MAX_ATTRIBUTES;
+        assert code >= 0 && code < SetMath.cards(attributes);
+        assert vector == SetMath.vector(code);
     }
-
+    
     public Color color() {
-        return color;
+        return COLORS[SetMath.attribute(code, 0)];
     }
     
     public Number number() {
-        return number;
+        return NUMBERS[SetMath.attribute(code, 1)];
     }
     
     public Shading shading() {
-        return shading;
+        return SHADINGS[SetMath.attribute(code, 2)];
     }
     
     public Shape shape() {
-        return shape;
+        return SHAPES[SetMath.attribute(code, 3)];
+    }
+    
+    /**
+     * @param attribute index of an attribute, between 0 (inclusive) and attributes() (exclusive)
+     * @return the ordinal of the value this card has for that attribute
+     */
+    public int attribute(int attribute) {
+        return SetMath.attribute(code, attribute);
+    }
+    
+    /**
+     * @return the number of attributes of this card, at least 4
+     */
+    public int attributes() {
+        return attributes;
+    }
+    
+    /**
+     * @return the code of this card, as described in SetMath
+     */
+    public int code() {
+        return code;
+    }
+    
+    /**
+     * @return the packed vector of this card, as described in SetMath
+     */
+    public int vector() {
+        return vector;
     }
     
     @Override
     public String toString() {
-        return number+"/"+color+"/"+shading+"/"+shape;
+        String name = number()+"/"+color()+"/"+shading()+"/"+shape();
+        for (int i=SetMath.ATTRIBUTES; i<attributes; i++) {
+            name += "/"+attribute(i);
+        }
+        return name;
     }
     
     @Override
@@ -77,12 +192,12 @@ public class Card {
     }
     
     private boolean sameValue(Card that) {
-        return this.color.equals(that.color) && this.number.equals(that.number)
-                && this.shading.equals(that.shading) && this.shape.equals(that.shape);
+        return this.attributes == that.attributes && this.code == that.code;
     }
     
     @Override
     public int hashCode() {
-        return this.color.hashCode()+this.number.hashCode()+this.shading.hashCode()+this.shape.hashCode();
+        // perfect hash, since codes are less than 2^16
+        return (attributes << Short.SIZE) | code;
     }
 }
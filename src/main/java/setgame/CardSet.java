@@ -0,0 +1,86 @@
+package setgame;
+
+/**
+ * A set of cards stored as a bitset indexed by card code.
+ * Mutable and not threadsafe.
+ */
+public class CardSet {
+
+    private static final int WORD_BITS = Long.SIZE;
+
+    private final long[] words;
+
+    /*
+     * Abstraction function:
+     *    AF(words): the set of cards whose codes c have bit (c % 64) of words[c / 64] set
+     *
+     * Representation invariant:
+     *    every code in the set is less than words.length * 64
+     *
+     * Safety from rep exposure:
+     *    words is private and final, and never returned
+     *
+     * Thread safety argument:
+     *    not threadsafe; callers must guard instances with their own lock
+     */
+
+    /**
+     * Creates an empty set of cards.
+     * @param codes an upper bound (exclusive) on the codes of the cards the set will hold
+     */
+    public CardSet(int codes) {
+        words = new long[(codes + WORD_BITS - 1) / WORD_BITS];
+    }
+
+    /**
+     * @param code a card code
+     * @return whether the card with that code is in this set
+     */
+    public boolean contains(int code) {
+        return (words[code / WORD_BITS] & (1L << code)) != 0;
+    }
+
+    /**
+     * @param card a card
+     * @return whether the card is in this set
+     */
+    public boolean contains(Card card) {
+        return contains(card.code());
+    }
+
+    /**
+     * Adds a card to this set.
+     * @param card a card
+     */
+    public void add(Card card) {
+        words[card.code() / WORD_BITS] |= 1L << card.code();
+    }
+
+    /**
+     * Removes a card from this set.
+     * @param card a card
+     */
+    public void remove(Card card) {
+        words[card.code() / WORD_BITS] &= ~(1L << card.code());
+    }
+
+    /**
+     * Removes every card from this set.
+     */
+    public void clear() {
+        for (int i=0; i<words.length; i++) {
+            words[i] = 0;
+        }
+    }
+
+    /**
+     * @return the number of cards in this set
+     */
+    public int size() {
+        int size = 0;
+        for (long word: words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+}
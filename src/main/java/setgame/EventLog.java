@@ -0,0 +1,736 @@
+package setgame;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of the changes made to the boards of a server, kept in a directory of
+ * memory-mapped segment files.
+ *
+ * <p>Boards record their changes through a Board.Journal made by journal(), which only queues each
+ * event, so recording adds no I/O to the board's critical section. A background thread takes the
+ * queued events in batches and copies them into the current segment, which is mapped into memory,
+ * so writing takes no system call per event; when a segment is full, the next one is started.
+ *
+ * <p>Boards also record a checkpoint every Board.CHECKPOINT_INTERVAL changes, which the writer
+ * encodes. A game is restored from its latest checkpoint and the changes recorded after it, so once
+ * a segment is written, the earlier segments which hold none of these for any open game are
+ * deleted. recover() restores the open games of a log, and should be used to restore them into
+ * every new log opened in the same directory, since the segments of earlier logs are deleted too.
+ *
+ * <p>If the writer stops on an error, such as a segment which cannot be made, failure() reports it,
+ * and every event appended after the last one written is dropped rather than queued, counted in the
+ * shared Metrics; the log can still be read and recovered up to the last record written.
+ *
+ * <p>Each record in a segment is an i32 length followed by that many bytes: u8 type, i64 Unix time,
+ * then the game ID and player ID, each a u16 length and UTF-8 bytes, then for PICK a u16 row and
+ * u16 column, for RESET and DEAL a u8 number of attributes, u16 number of cards, and the u16
+ * code of each card, and for CHECKPOINT the checkpoint as encoded by BoardCheckpoint.encode(). All fields are big-endian. A length of 0 ends the segment. The length of a
+ * record is written after the rest of it, so a record cut short by a crash ends the segment.
+ */
+public class EventLog implements AutoCloseable {
+
+    /** System property naming a directory in which the server logs every change to its boards. */
+    public static final String PROPERTY = "setgame.eventLog";
+
+    /**
+     * System property which, when "true", makes the server keep every segment of its log, so every
+     * game can be replayed from its start by a Replayer.
+     */
+    public static final String KEEP_PROPERTY = "setgame.keepEventLog";
+
+    /** Milliseconds between checkpoints of every game, as by GameRegistry.checkpoint(). */
+    public static final long CHECKPOINT_MILLIS = 60_000;
+
+    /** Default size of a segment file in bytes. */
+    public static final int SEGMENT_BYTES = 16 << 20;
+
+    private static final String SUFFIX = ".log";
+    private static final long IDLE_NANOS = 100_000_000; // how long the writer sleeps when there is nothing to write
+    private static final int CLOSED_GAMES = 4096; // how many of the latest games closed the writer remembers
+
+    /** The kinds of change recorded. */
+    public enum Type {
+        /** The board was reset with the given cards, by a caller of the board. */
+        RESET,
+        /** The board dealt the given cards for a new game, during another change. */
+        DEAL,
+        /** A player joined. */
+        ADD_PLAYER,
+        /** A player was removed, after being inactive. */
+        REMOVE_PLAYER,
+        /** A player declared a Set. */
+        DECLARE,
+        /** A player picked the card at a square. */
+        PICK,
+        /** A player voted to add cards. */
+        VOTE,
+        /** The declare of a player timed out. */
+        TIMEOUT,
+        /** Three cards were added, by a caller of the board. */
+        ADD_CARDS,
+        /** The game was closed. */
+        CLOSE,
+        /** The state of the board was checkpointed. */
+        CHECKPOINT
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    private static final Metrics.Counter FAILURES = Metrics.shared().counter("setgame_event_log_failures_total",
+            "Event logs whose writer stopped on an error");
+    private static final Metrics.Counter DROPPED = Metrics.shared().counter("setgame_event_log_dropped_total",
+            "Events not logged because the writer of the event log had stopped on an error");
+
+    /**
+     * An immutable change to a board, as recorded in the log.
+     */
+    public static final class Event {
+
+        private final String game;
+        private final Type type;
+        private final long time;
+        private final String player;
+        private final Square square;
+        private final List<Card> cards;
+        private final BoardCheckpoint checkpoint;
+
+        /*
+         * Abstraction function:
+         *    AF(game, type, time, player, square, cards, checkpoint): the change of kind type made at
+         *      Unix time time to the board of the game with ID game (where "" is a server's default
+         *      game), by player, or by no one if player is "", picking square if it is not null,
+         *      dealing cards, and leaving the board in the state checkpoint if it is not null
+         *
+         * Representation invariant:
+         *    no field is null, except square and checkpoint
+         *    square is not null iff type is PICK
+         *    checkpoint is not null iff type is CHECKPOINT
+         *
+         * Safety from rep exposure:
+         *    all fields are private, final, and immutable
+         *
+         * Thread safety argument:
+         *    class is threadsafe immutable
+         */
+
+        /**
+         * Makes an event.
+         * @param game the ID of the game
+         * @param type the kind of change
+         * @param time the Unix time of the change
+         * @param player the player who made the change, or ""
+         * @param square the square picked, or null if the change is not a PICK
+         * @param cards the cards dealt, or an empty list
+         */
+        public Event(String game, Type type, long time, String player, Square square, List<Card> cards) {
+            this(game, type, time, player, square, cards, null);
+        }
+
+        /**
+         * Makes a CHECKPOINT event.
+         * @param game the ID of the game
+         * @param time the Unix time of the checkpoint
+         * @param checkpoint the state of the board
+         */
+        public Event(String game, long time, BoardCheckpoint checkpoint) {
+            this(game, Type.CHECKPOINT, time, "", null, List.of(), checkpoint);
+        }
+
+        private Event(String game, Type type, long time, String player, Square square, List<Card> cards,
+                BoardCheckpoint checkpoint) {
+            this.game = game;
+            this.type = type;
+            this.time = time;
+            this.player = player;
+            this.square = square;
+            this.cards = List.copyOf(cards);
+            this.checkpoint = checkpoint;
+            checkRep();
+        }
+
+        private void checkRep() {
+            assert game != null && type != null && player != null && cards != null;
+            assert (square != null) == (type == Type.PICK);
+            assert (checkpoint != null) == (type == Type.CHECKPOINT);
+        }
+
+        /** @return the ID of the game, where "" is a server's default game */
+        public String game() {
+            return game;
+        }
+
+        /** @return the kind of change */
+        public Type type() {
+            return type;
+        }
+
+        /** @return the Unix time of the change */
+        public long time() {
+            return time;
+        }
+
+        /** @return the player who made the change, or "" */
+        public String player() {
+            return player;
+        }
+
+        /** @return the square picked, or null if the change is not a PICK */
+        public Square square() {
+            return square;
+        }
+
+        /** @return the cards dealt, or an empty list */
+        public List<Card> cards() {
+            return cards;
+        }
+
+        /** @return the state of the board, or null if the event is not a CHECKPOINT */
+        public BoardCheckpoint checkpoint() {
+            return checkpoint;
+        }
+
+        /**
+         * Makes the change of this event to a board, as it was made when recorded. The board must
+         * take its new decks from the DEAL events which followed this one, in order; DEAL, CLOSE and
+         * CHECKPOINT events make no change.
+         * @param board the board of the game of this event, in the state before the event
+         * @throws InterruptedException if the change is interrupted
+         */
+        public void applyTo(Board board) throws InterruptedException {
+            switch (type) {
+            case RESET:
+                board.resetGame(cards);
+                break;
+            case ADD_PLAYER:
+                board.addPlayer(player);
+                break;
+            case REMOVE_PLAYER:
+                board.removePlayer(player);
+                break;
+            case DECLARE:
+                board.declareSet(player);
+                break;
+            case PICK:
+                board.pickCard(square, player);
+                break;
+            case VOTE:
+                board.vote(player);
+                break;
+            case TIMEOUT:
+                board.timedOut(player);
+                break;
+            case ADD_CARDS:
+                board.addCards();
+                break;
+            case DEAL:
+            case CLOSE:
+            case CHECKPOINT:
+                break;
+            default:
+                throw new AssertionError("unknown event type " + type);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return time + " " + game + " " + type + " " + player + (square == null ? "" : " " + square)
+                    + (cards.isEmpty() ? "" : " " + cards.size() + " cards");
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean keep;
+    private final Queue<Event> pending = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile boolean idle = false;
+    private volatile boolean closed = false;
+    private volatile Exception failure = null;
+    private long segment;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final Map<String, Long> needed = new HashMap<>(); // by game, the first segment needed to restore it
+    private final Set<String> closedGames = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > CLOSED_GAMES;
+        }
+    }); // games closed since their last checkpoint, of which the latest CLOSED_GAMES are kept
+
+    /*
+     * Abstraction function:
+     *    AF(directory, segmentBytes, keep, pending, writer, idle, closed, failure, segment, channel,
+     *       buffer, needed, closedGames): the log of the events in the segment files of directory,
+     *      followed by the events in pending, which writer copies into buffer, the mapping of segment
+     *      number segment open in channel, where each open game written to this log can be restored
+     *      from the segments numbered from needed.get(game), and earlier segments are deleted unless
+     *      keep; events of the games in closedGames, which arrive after their CLOSE, are dropped; if
+     *      failure is not null, the writer stopped on it, and the events after those in the segment
+     *      files are dropped
+     *
+     * Representation invariant:
+     *    segmentBytes > 4
+     *    buffer's position is the end of the records written to the current segment
+     *    every value of needed is at most segment
+     *    no game is both in needed and in closedGames
+     *    if failure is not null, writer has stopped, and pending is empty once no append is running
+     *
+     * Safety from rep exposure:
+     *    all fields are private and never returned
+     *
+     * Thread safety argument:
+     *    pending is a threadsafe queue
+     *    segment, channel, buffer, needed and closedGames are confined to the writer thread, after the constructor
+     *      hands them over by starting it
+     *    idle and closed are volatile; a writer which finds pending empty sets idle before checking
+     *      it again, and appenders unpark it after adding to pending if it is idle, so no event
+     *      waits for the writer's next timed wake-up
+     *    failure is volatile; the writer sets it before emptying pending, and appenders check it
+     *      after adding to pending, so an event added as the writer stops is dropped by one of them
+     */
+
+    /**
+     * Opens a log in a directory, with segments of the default size. Events are appended after
+     * those of earlier logs in the directory, starting a new segment.
+     * @param directory the directory of the segment files, created if it does not exist
+     * @throws IOException if the directory cannot be read or the first segment cannot be made
+     */
+    public EventLog(Path directory) throws IOException {
+        this(directory, SEGMENT_BYTES, false);
+    }
+
+    /**
+     * Opens a log in a directory. Events are appended after those of earlier logs in the directory,
+     * starting a new segment.
+     * @param directory the directory of the segment files, created if it does not exist
+     * @param segmentBytes the size of each segment file in bytes, which bounds the size of a record
+     * @param keep whether to keep every segment, rather than delete those no open game needs
+     * @throws IOException if the directory cannot be read or the first segment cannot be made
+     */
+    public EventLog(Path directory, int segmentBytes, boolean keep) throws IOException {
+        if (segmentBytes <= Integer.BYTES) {
+            throw new IllegalArgumentException("segments are too small: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.keep = keep;
+        Files.createDirectories(directory);
+        final List<Path> segments = segments(directory);
+        this.segment = segments.isEmpty() ? 0 : number(segments.get(segments.size() - 1)) + 1;
+        openSegment();
+        this.writer = new Thread(this::write, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return the directory of the segment files of this log
+     */
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Makes a journal which records the changes to the board of one game in this log.
+     * @param game the ID of the game
+     * @return the journal
+     */
+    public Board.Journal journal(String game) {
+        return new Board.Journal() {
+            @Override public void record(Type type, String player, Square square, List<Card> cards) {
+                append(new Event(game, type, System.currentTimeMillis(), player, square, cards));
+            }
+            @Override public void checkpoint(BoardCheckpoint checkpoint) {
+                append(new Event(game, System.currentTimeMillis(), checkpoint));
+            }
+        };
+    }
+
+    /**
+     * Queues an event to be appended to the log, without waiting for it to be written. If the
+     * writer has stopped on an error, the event is dropped, and counted as dropped in the shared
+     * Metrics.
+     * @param event the event
+     */
+    public void append(Event event) {
+        if (failure != null) {
+            DROPPED.increment();
+            return;
+        }
+        pending.add(event);
+        if (failure != null) {
+            dropPending();
+        } else if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return the error on which the writer of this log stopped, after which every event appended
+     *         is dropped, or null if it has not stopped on an error
+     */
+    public Exception failure() {
+        return failure;
+    }
+
+    // drops the events queued, once the writer has stopped on an error
+    private void dropPending() {
+        while (pending.poll() != null) {
+            DROPPED.increment();
+        }
+    }
+
+    /**
+     * Writes every queued event, stops the writer, and closes the current segment. If the writer
+     * has stopped on an error, the events queued have been dropped, as failure() reports.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                Event event = pending.poll();
+                if (event == null) {
+                    if (closed) {
+                        break;
+                    }
+                    idle = true;
+                    if (pending.isEmpty() && !closed) {
+                        LockSupport.parkNanos(this, IDLE_NANOS);
+                    }
+                    idle = false;
+                    continue;
+                }
+                for (; event != null; event = pending.poll()) {
+                    if (event.type() == Type.CHECKPOINT) {
+                        // every game starts with a checkpoint, so this may be a new game of a closed one's ID
+                        closedGames.remove(event.game());
+                    } else if (closedGames.contains(event.game())) {
+                        // a stray event after the game closed, which would keep its segment forever
+                        continue;
+                    }
+                    writeRecord(encode(event));
+                    if (event.type() == Type.CHECKPOINT) {
+                        needed.put(event.game(), segment);
+                    } else if (event.type() == Type.CLOSE) {
+                        needed.remove(event.game());
+                        closedGames.add(event.game());
+                    } else {
+                        needed.putIfAbsent(event.game(), segment);
+                    }
+                }
+            }
+            buffer.force();
+            channel.close();
+        } catch (IOException | RuntimeException e) {
+            // a log cut short is still read up to the last record written, but no later event can
+            // follow it, so the rest are dropped rather than queued for a writer which is gone
+            System.err.print(" !! event log stopped, dropping further events: ");
+            e.printStackTrace();
+            FAILURES.increment();
+            failure = e;
+            dropPending();
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                // already reported the failure
+            }
+        }
+    }
+
+    private void writeRecord(byte[] record) throws IOException {
+        if (Integer.BYTES + record.length > segmentBytes - Integer.BYTES) {
+            System.err.println(" !! event too large for the log: " + record.length + " bytes");
+            return;
+        }
+        if (buffer.remaining() < Integer.BYTES + record.length + Integer.BYTES) {
+            // the rest of the segment is zero, which ends it
+            buffer.force();
+            channel.close();
+            segment += 1;
+            openSegment();
+            if (!keep) {
+                deleteSegmentsBefore(needed.isEmpty() ? segment : Collections.min(needed.values()));
+            }
+        }
+        final int start = buffer.position();
+        buffer.position(start + Integer.BYTES);
+        buffer.put(record);
+        buffer.putInt(start, record.length);
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(directory.resolve(String.format("%020d", segment) + SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+
+    // deletes the segments no longer needed, which may include those of earlier logs
+    private void deleteSegmentsBefore(long first) throws IOException {
+        for (Path path: segments(directory)) {
+            if (number(path) < first) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static byte[] encode(Event event) {
+        final byte[] game = event.game().getBytes(UTF_8);
+        final byte[] player = event.player().getBytes(UTF_8);
+        final List<Card> cards = event.cards();
+        final byte[] checkpoint = event.checkpoint() == null ? new byte[0] : event.checkpoint().encode();
+        final ByteBuffer record = ByteBuffer.allocate(1 + Long.BYTES + 2 + game.length + 2 + player.length
+                + (event.square() == null ? 0 : 4) + (cards.isEmpty() ? 0 : 3 + 2*cards.size()) + checkpoint.length);
+        record.put((byte) event.type().ordinal()).putLong(event.time());
+        record.putShort((short) game.length).put(game);
+        record.putShort((short) player.length).put(player);
+        if (event.type() == Type.PICK) {
+            record.putShort((short) event.square().getRow()).putShort((short) event.square().getCol());
+        } else if (event.type() == Type.RESET || event.type() == Type.DEAL) {
+            record.put((byte) (cards.isEmpty() ? 0 : cards.get(0).attributes())).putShort((short) cards.size());
+            for (Card card: cards) {
+                record.putShort((short) card.code());
+            }
+        } else if (event.type() == Type.CHECKPOINT) {
+            record.put(checkpoint);
+        }
+        return record.array();
+    }
+
+    private static Event decode(ByteBuffer record) {
+        final Type type = TYPES[record.get()];
+        final long time = record.getLong();
+        final String game = string(record);
+        final String player = string(record);
+        Square square = null;
+        final List<Card> cards = new ArrayList<>();
+        if (type == Type.PICK) {
+            square = new Square(record.getShort() & 0xFFFF, record.getShort() & 0xFFFF);
+        } else if (type == Type.RESET || type == Type.DEAL) {
+            final int attributes = record.get();
+            final int size = record.getShort() & 0xFFFF;
+            for (int i=0; i<size; i++) {
+                cards.add(Card.fromCode(attributes, record.getShort() & 0xFFFF));
+            }
+        } else if (type == Type.CHECKPOINT) {
+            final byte[] checkpoint = new byte[record.remaining()];
+            record.get(checkpoint);
+            return new Event(game, time, BoardCheckpoint.decode(checkpoint));
+        }
+        return new Event(game, type, time, player, square, cards);
+    }
+
+    private static String string(ByteBuffer record) {
+        final byte[] bytes = new byte[record.getShort() & 0xFFFF];
+        record.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * A position in a log: the number of a segment, and an offset within it, just after a record.
+     * Immutable.
+     */
+    static final class Position {
+
+        /** The start of every log. */
+        static final Position START = new Position(-1, 0);
+
+        private final long segment;
+        private final int offset;
+
+        private Position(long segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        @Override
+        public String toString() {
+            return segment + ":" + offset;
+        }
+    }
+
+    /**
+     * Reads every event in the segments of a log, in the order they were appended. Reading a log
+     * which is still being written gives the events written so far.
+     * @param directory the directory of the segment files
+     * @param consumer called with each event in turn
+     * @throws IOException if a segment cannot be read
+     */
+    public static void read(Path directory, Consumer<Event> consumer) throws IOException {
+        read(directory, Position.START, consumer);
+    }
+
+    /**
+     * Reads the events in the segments of a log after a position, in the order they were appended,
+     * so a reader can read the events appended since it last read the log, without reading the
+     * earlier ones again. Segments deleted since are skipped.
+     * @param directory the directory of the segment files
+     * @param from the position after the events already read, or Position.START
+     * @param consumer called with each event in turn
+     * @return the position after the last event read, or from if there is none
+     * @throws IOException if a segment cannot be read
+     */
+    static Position read(Path directory, Position from, Consumer<Event> consumer) throws IOException {
+        long endSegment = from.segment;
+        int endOffset = from.offset;
+        for (Path path: segments(directory)) {
+            final long number = number(path);
+            if (number < from.segment) {
+                continue;
+            }
+            final ByteBuffer segment;
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                segment = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            }
+            if (number == from.segment) {
+                segment.position(Math.min(from.offset, segment.limit()));
+            }
+            while (segment.remaining() >= Integer.BYTES) {
+                final int length = segment.getInt();
+                if (length <= 0 || length > segment.remaining()) {
+                    break;
+                }
+                final ByteBuffer record = segment.slice();
+                record.limit(length);
+                segment.position(segment.position() + length);
+                consumer.accept(decode(record));
+                endSegment = number;
+                endOffset = segment.position();
+            }
+        }
+        return endSegment == from.segment && endOffset == from.offset ? from : new Position(endSegment, endOffset);
+    }
+
+    /**
+     * Restores the games which were open when a log was last written, each from its latest
+     * checkpoint and the changes recorded after it, without scheduling any timeouts.
+     * @param directory the directory of the segment files
+     * @return the state of each open game, by game ID, in the order the games were started
+     * @throws IOException if a segment cannot be read
+     */
+    public static Map<String, BoardCheckpoint> recover(Path directory) throws IOException {
+        final Map<String, BoardCheckpoint> checkpoints = new HashMap<>();
+        final Map<String, List<Event>> tails = new LinkedHashMap<>(); // the events after each checkpoint
+        read(directory, event -> {
+            if (event.type() == Type.CHECKPOINT) {
+                checkpoints.put(event.game(), event.checkpoint());
+                tails.put(event.game(), new ArrayList<>());
+            } else if (event.type() == Type.CLOSE) {
+                checkpoints.remove(event.game());
+                tails.remove(event.game());
+            } else {
+                tails.computeIfAbsent(event.game(), game -> new ArrayList<>()).add(event);
+            }
+        });
+        final Map<String, BoardCheckpoint> games = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Event>> tail: tails.entrySet()) {
+            final BoardCheckpoint checkpoint = checkpoints.get(tail.getKey());
+            // a game with no checkpoint was closed, and its events are from requests still in flight
+            if (checkpoint != null) {
+                games.put(tail.getKey(), replay(checkpoint, tail.getValue()).checkpoint());
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Makes the changes of events to a board, with no timeouts and no journal. An event which
+     * cannot be made is skipped, with a warning.
+     * @param checkpoint the state of the board before the events
+     * @param events the events of one game, in order
+     * @return the board after the events
+     */
+    private static Board replay(BoardCheckpoint checkpoint, List<Event> events) {
+        final Queue<List<Card>> decks = new ArrayDeque<>();
+        for (Event event: events) {
+            if (event.type() == Type.DEAL) {
+                decks.add(event.cards());
+            }
+        }
+        final Board board = new Board(checkpoint, Board.NO_TIMEOUTS, decks::remove, Board.NO_JOURNAL);
+        for (Event event: events) {
+            try {
+                event.applyTo(board);
+            } catch (InterruptedException ie) {
+                throw new AssertionError("replaying with no timeouts is never interrupted", ie);
+            } catch (RuntimeException re) {
+                // one bad event, such as from an older server, loses that change rather than the game
+                System.err.println(" !! skipped event which cannot be replayed: " + event + ": " + re);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * @param directory a directory of segment files
+     * @return the segment files in the directory, in order
+     * @throws IOException if the directory cannot be read
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().matches("[0-9]{20}\\" + SUFFIX))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static long number(Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Prints the events in a log.
+     * @param args the directory of the log
+     * @throws IOException if the log cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("usage: EventLog DIRECTORY");
+        }
+        try {
+            read(Path.of(args[0]), System.out::println);
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package setgame;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single-writer event loop for one game: commands which change a Board are submitted to the loop,
+ * which applies them one at a time in the order they were submitted, so only one thread at a time
+ * ever contends for the Board to change it.
+ *
+ * <p>Loops do not own threads. Each loop runs its queued commands in batches on a thread borrowed
+ * from a pool shared by every game, and gives the thread back once its queue is empty. The pool has
+ * a fixed number of threads, THREADS, however many games there are; or, if the system property
+ * WebServer.VIRTUAL_THREADS asks for it and the JVM supports them, each batch runs on a virtual
+ * thread of its own.
+ */
+public class GameLoop implements Executor {
+
+    /** System property which, when "true", makes the server run each game on a GameLoop. */
+    public static final String PROPERTY = "setgame.eventLoop";
+
+    // commands run per turn on a pool thread, before the loop lets other games have the thread
+    private static final int BATCH = 64;
+
+    /** Number of platform threads in the pool shared by every loop, one per core and at least 2. */
+    public static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final Executor SHARED_POOL = sharedPool();
+
+    private final Executor pool;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /*
+     * Abstraction function:
+     *    AF(pool, commands, scheduled): an event loop whose pending commands are commands, in order,
+     *      run on threads of pool
+     *
+     * Representation invariant:
+     *    if commands is not empty, then scheduled is true or a thread is about to set it
+     *
+     * Safety from rep exposure:
+     *    all fields are private and final, and never returned
+     *
+     * Thread safety argument:
+     *    commands is a threadsafe queue
+     *    only the thread which sets scheduled from false to true may run commands, until it
+     *      sets scheduled back to false, so commands run one at a time and in order; the
+     *      atomic write and read of scheduled order each batch before the next
+     */
+
+    /**
+     * A command to run on the loop.
+     * @param <T> type of the command's result
+     */
+    public interface Command<T> {
+        /**
+         * Applies the command.
+         * @return the result of the command
+         * @throws InterruptedException if the command was interrupted
+         */
+        public T run() throws InterruptedException;
+    }
+
+    /**
+     * @return whether the system property PROPERTY asks for games to run on event loops
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    /**
+     * Makes a new event loop running on the pool shared by all games.
+     */
+    public GameLoop() {
+        this(SHARED_POOL);
+    }
+
+    /**
+     * Makes a new event loop.
+     * @param pool the threads on which to run commands
+     */
+    public GameLoop(Executor pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Queues a command to run after every command already submitted.
+     * @param command the command
+     */
+    @Override
+    public void execute(Runnable command) {
+        commands.add(command);
+        schedule();
+    }
+
+    /**
+     * Queues a command to run after every command already submitted.
+     * @param command the command
+     * @return a future completed with the result of the command, or with the exception or error it threw
+     */
+    public <T> CompletableFuture<T> submit(Command<T> command) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                result.complete(command.run());
+            } catch (Throwable t) { // including Errors, so no caller waits forever
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs a command on the loop and waits for it.
+     * @param command the command
+     * @return the result of the command
+     * @throws InterruptedException if the command was interrupted, or this thread was interrupted while waiting
+     */
+    public <T> T call(Command<T> command) throws InterruptedException {
+        try {
+            return submit(command).get();
+        } catch (ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Makes a scheduler for the timeouts of a Board, which times them on the shared TimingWheel
+     * and runs each as a command on this loop.
+     * @return the scheduler
+     */
+    public Board.TimeoutScheduler timeouts() {
+        return (task, delayMillis) -> TimingWheel.shared().schedule(() -> execute(task), delayMillis);
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable command;
+            for (int i=0; i<BATCH && (command = commands.poll()) != null; i++) {
+                try {
+                    command.run();
+                } catch (Throwable t) { // so the loop keeps draining its later commands
+                    t.printStackTrace();
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            if (!commands.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Makes the pool shared by every loop: one virtual thread per batch if the system property
+     * WebServer.VIRTUAL_THREADS asks for it and the JVM supports virtual threads, and otherwise
+     * THREADS daemon threads.
+     * @return the pool
+     */
+    private static Executor sharedPool() {
+        if (Boolean.getBoolean(WebServer.VIRTUAL_THREADS)) {
+            try {
+                // looked up reflectively, so the server still builds and runs on JVMs without virtual threads
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException roe) {
+                System.err.println("Virtual threads are not available, running game loops on platform threads");
+            }
+        }
+        return Executors.newFixedThreadPool(THREADS, daemon("game-loop"));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,400 @@
+package setgame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Registry of the independent games, or rooms, hosted by one server, each identified by a room ID.
+ *
+ * <p>Rooms are spread over a fixed number of shards by the hash of their ID, and each shard has its
+ * own lock, so looking up, creating and closing rooms in different shards never contend.
+ */
+public class GameRegistry {
+
+    // must be a power of 2
+    private static final int SHARDS = 64;
+
+    private final int defaultAttributes;
+    private final boolean eventLoops;
+    private final EventLog log;
+    private final Shard[] shards = new Shard[SHARDS];
+
+    /*
+     * Abstraction function:
+     *    AF(defaultAttributes, eventLoops, log, shards): the rooms in the maps of all the shards, keyed
+     *      by room ID, where new rooms are dealt defaultAttributes attributes unless asked otherwise,
+     *      run on their own event loop iff eventLoops, and record their changes in log unless it is null
+     *
+     * Representation invariant:
+     *    each room is in the map of shards[shard(id)], where id is its ID, and in no other map
+     *    1 <= defaultAttributes <= SetMath.MAX_ATTRIBUTES
+     *
+     * Safety from rep exposure:
+     *    all fields are private and final; shards and their maps are never returned
+     *    log is threadsafe and meant to be shared
+     *    rooms are immutable references to threadsafe Boards and GameLoops
+     *
+     * Thread safety argument:
+     *    the map of each shard is only accessed while holding the lock of that shard
+     *    boards are made, and rooms closed, while holding the lock of their shard, so log records
+     *      the first game of a room after the close of any earlier room with the same ID; a room's
+     *      board is closed before its close is logged, so it records nothing after
+     *    Rooms are threadsafe
+     */
+
+    /**
+     * A game hosted by the registry: a board, the event loop on which it is changed, if any, and
+     * the requests waiting for it to change.
+     */
+    public static final class Room {
+
+        private final String id;
+        private final Board board;
+        private final GameLoop loop;
+        private final AtomicReference<CompletableFuture<BoardSnapshot>> nextChange =
+                new AtomicReference<>(new CompletableFuture<>());
+        private final Set<Board.BoardListener> listeners = ConcurrentHashMap.newKeySet();
+        private volatile boolean closed = false;
+
+        /*
+         * Abstraction function:
+         *    AF(id, board, loop, nextChange, listeners, closed): the game with the given room ID played
+         *      on board, whose changes are applied on loop, or directly if loop is null, where nextChange
+         *      will be completed at the next change to the board, listeners are also told when the
+         *      room closes, and closed iff the room was closed
+         *
+         * Representation invariant:
+         *    board is not null
+         *    nextChange holds a future which is not yet completed, unless closed
+         *
+         * Safety from rep exposure:
+         *    all fields are private and final, except closed which is a primitive;
+         *      Board and GameLoop are threadsafe and meant to be shared; nextChange and listeners
+         *      are never returned
+         *
+         * Thread safety argument:
+         *    id, board and loop are final references to threadsafe types
+         *    listeners is a threadsafe set
+         *    each change atomically swaps nextChange for a new future before completing the old
+         *      one, so a waiter which takes the future before reading the board's version is
+         *      woken by any change after that version; waiters park on a future rather than on
+         *      the board's monitor, so a waiting virtual thread is never pinned
+         */
+
+        /**
+         * Makes a room, which listens for changes to its board.
+         * @param id the room ID
+         * @param board the game board
+         * @param loop the event loop on which the board is changed, or null to change it directly
+         */
+        public Room(String id, Board board, GameLoop loop) {
+            this.id = id;
+            this.board = board;
+            this.loop = loop;
+            board.addBoardListener(this::signalChange);
+        }
+
+        /**
+         * @return the ID of this room
+         */
+        public String id() {
+            return id;
+        }
+
+        /**
+         * @return the board of this room
+         */
+        public Board board() {
+            return board;
+        }
+
+        /**
+         * @return the event loop on which the board of this room is changed, or null if it is changed directly
+         */
+        public GameLoop loop() {
+            return loop;
+        }
+
+        /**
+         * Applies a change to the board, on the event loop if there is one, and waits for it. The
+         * change holds the lock of the board, as by Board.locked(), so its wait for the lock and
+         * the time it holds it are measured.
+         * @param command the change
+         * @return the result of the change
+         * @throws InterruptedException if the change was interrupted, or interrupted while waiting for it
+         */
+        public <T> T apply(GameLoop.Command<T> command) throws InterruptedException {
+            if (loop == null) {
+                return board.locked(command);
+            }
+            return loop.call(() -> board.locked(command));
+        }
+
+        /**
+         * Waits until the board has changed past a version, or until the room is closed.
+         * @param since a version of the board
+         * @return the first snapshot of the board seen with a version after since, or the latest
+         *         snapshot if the room is closed
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public BoardSnapshot awaitVersion(long since) throws InterruptedException {
+            while (true) {
+                // take the future before reading the version, so no change in between can be missed
+                final CompletableFuture<BoardSnapshot> change = nextChange.get();
+                final BoardSnapshot snapshot = board.snapshot();
+                if (snapshot.version() > since || closed) {
+                    return snapshot;
+                }
+                try {
+                    change.get();
+                } catch (ExecutionException ee) {
+                    throw new AssertionError("changes are never completed exceptionally", ee);
+                }
+            }
+        }
+
+        /**
+         * Wakes every thread waiting for the board to change. Called whenever the board changes.
+         */
+        public void signalChange() {
+            nextChange.getAndSet(new CompletableFuture<>()).complete(board.snapshot());
+        }
+
+        /**
+         * @return whether the room has been closed
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Adds a listener which is called when the board changes, as by Board.addBoardListener(),
+         * and once more when the room is closed.
+         * @param listener the listener
+         */
+        public void addListener(Board.BoardListener listener) {
+            listeners.add(listener);
+            board.addBoardListener(listener);
+        }
+
+        /**
+         * Removes a listener added by addListener().
+         * @param listener the listener, which will no longer be called
+         */
+        public void removeListener(Board.BoardListener listener) {
+            board.removeBoardListener(listener);
+            listeners.remove(listener);
+        }
+
+        /**
+         * Closes the room and its board, as by Board.close(), waking every thread waiting for the
+         * board to change and calling every listener added by addListener().
+         */
+        public void close() {
+            board.close();
+            closed = true;
+            signalChange();
+            for (Board.BoardListener listener: listeners) {
+                listener.boardChanged();
+            }
+        }
+    }
+
+    private static final class Shard {
+        private final Map<String, Room> rooms = new HashMap<>();
+    }
+
+    /**
+     * Makes an empty registry.
+     * @param defaultAttributes the number of attributes of new rooms, unless asked otherwise
+     * @param eventLoops whether each new room applies changes on its own GameLoop
+     */
+    public GameRegistry(int defaultAttributes, boolean eventLoops) {
+        this(defaultAttributes, eventLoops, null);
+    }
+
+    /**
+     * Makes an empty registry whose rooms record every change to their boards in a log.
+     * @param defaultAttributes the number of attributes of new rooms, unless asked otherwise
+     * @param eventLoops whether each new room applies changes on its own GameLoop
+     * @param log the log of the changes to the boards of the rooms, under their room IDs, or null
+     *            to keep no log
+     */
+    public GameRegistry(int defaultAttributes, boolean eventLoops, EventLog log) {
+        if (defaultAttributes < 1 || defaultAttributes > SetMath.MAX_ATTRIBUTES) {
+            throw new IllegalArgumentException("unsupported number of attributes: " + defaultAttributes);
+        }
+        this.defaultAttributes = defaultAttributes;
+        this.eventLoops = eventLoops;
+        this.log = log;
+        for (int i=0; i<SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert defaultAttributes >= 1 && defaultAttributes <= SetMath.MAX_ATTRIBUTES;
+        assert shards.length == SHARDS;
+    }
+
+    private Shard shard(String id) {
+        final int hash = id.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (SHARDS - 1)];
+    }
+
+    /**
+     * @return the number of attributes of new rooms, unless asked otherwise
+     */
+    public int defaultAttributes() {
+        return defaultAttributes;
+    }
+
+    /**
+     * @return the log in which rooms record the changes to their boards, or null if there is none
+     */
+    public EventLog log() {
+        return log;
+    }
+
+    /**
+     * Creates a room with a newly dealt board with the default number of attributes.
+     * @param id the room ID
+     * @return the new room, or null if a room with that ID already exists
+     */
+    public Room create(String id) {
+        return create(id, defaultAttributes);
+    }
+
+    /**
+     * Creates a room with a newly dealt board.
+     * @param id the room ID
+     * @param attributes the number of attributes of the cards, between 1 and SetMath.MAX_ATTRIBUTES
+     * @return the new room, or null if a room with that ID already exists
+     * @throws IllegalArgumentException if that number of attributes is not supported
+     */
+    public Room create(String id, int attributes) {
+        if (attributes < 1 || attributes > SetMath.MAX_ATTRIBUTES) {
+            throw new IllegalArgumentException("unsupported number of attributes: " + attributes);
+        }
+        // deal outside the lock, which is held only while making the board, so that only a board
+        // which is added to the registry records its first game in the log
+        final List<Card> cards = Board.generateRandomCards(attributes);
+        return add(id, timeouts -> new Board(cards, attributes, timeouts,
+                () -> Board.generateRandomCards(attributes), journal(id)));
+    }
+
+    /**
+     * Restores a room from a checkpoint of its board, such as one from EventLog.recover(), and
+     * resumes its timeouts, as by Board.resume().
+     * @param id the room ID
+     * @param checkpoint the state of the board
+     * @return the restored room, or null if a room with that ID already exists
+     */
+    public Room restore(String id, BoardCheckpoint checkpoint) {
+        final int attributes = checkpoint.attributes();
+        final Room room = add(id, timeouts -> new Board(checkpoint, timeouts,
+                () -> Board.generateRandomCards(attributes), journal(id)));
+        if (room != null) {
+            room.board().resume();
+        }
+        return room;
+    }
+
+    // adds a room with a board made for the scheduler of its timeouts, unless the ID is taken
+    private Room add(String id, Function<Board.TimeoutScheduler, Board> makeBoard) {
+        final Shard shard = shard(id);
+        synchronized (shard) {
+            if (shard.rooms.containsKey(id)) {
+                return null;
+            }
+            final GameLoop loop = eventLoops ? new GameLoop() : null;
+            final Room room = new Room(id, makeBoard.apply(loop == null ? TimingWheel.shared() : loop.timeouts()), loop);
+            shard.rooms.put(id, room);
+            return room;
+        }
+    }
+
+    private Board.Journal journal(String id) {
+        return log == null ? Board.NO_JOURNAL : log.journal(id);
+    }
+
+    /**
+     * Looks up a room.
+     * @param id the room ID
+     * @return the room with that ID, or null if there is none
+     */
+    public Room get(String id) {
+        final Shard shard = shard(id);
+        synchronized (shard) {
+            return shard.rooms.get(id);
+        }
+    }
+
+    /**
+     * Closes a room, removing it from the registry and waking every request waiting on its board.
+     * @param id the room ID
+     * @return the room which was closed, or null if there was no room with that ID
+     */
+    public Room close(String id) {
+        final Shard shard = shard(id);
+        final Room room;
+        synchronized (shard) {
+            room = shard.rooms.remove(id);
+            if (room != null) {
+                // stops its timeouts and detaches its journal before CLOSE is logged, so no event of
+                // the game is logged after it
+                room.board().close();
+            }
+            if (room != null && log != null) {
+                // logged under the lock, so before the first game of any new room with the same ID
+                log.append(new EventLog.Event(id, EventLog.Type.CLOSE, System.currentTimeMillis(), "", null, List.of()));
+            }
+        }
+        if (room != null) {
+            room.close();
+        }
+        return room;
+    }
+
+    /**
+     * Records a checkpoint of the board of every room, as by Board.checkpointJournal(), so that no
+     * room which has stopped changing keeps old segments of the log from being deleted.
+     */
+    public void checkpoint() {
+        for (Shard shard: shards) {
+            final List<Room> rooms;
+            synchronized (shard) {
+                rooms = new ArrayList<>(shard.rooms.values());
+            }
+            // outside the lock, which would otherwise wait on each board; a room closed meanwhile
+            // has detached its journal, so logs no checkpoint after it is closed
+            for (Room room: rooms) {
+                if (!room.isClosed()) {
+                    room.board().checkpointJournal();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of rooms in the registry
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard: shards) {
+            synchronized (shard) {
+                size += shard.rooms.size();
+            }
+        }
+        return size;
+    }
+}
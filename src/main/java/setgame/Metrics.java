@@ -0,0 +1,365 @@
+package setgame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the counters, gauges and latency histograms of a server, which renders them in the
+ * Prometheus text exposition format.
+ *
+ * <p>Recording a value never takes a lock: counters and gauges are LongAdders, and a histogram is
+ * an array of atomic counts, one per bucket, so the code being measured is not slowed by another
+ * thread recording or rendering at the same time. Only registering a metric may lock, so metrics are
+ * registered once, up front, and kept in fields.
+ *
+ * <p>Histograms bucket values as HdrHistogram does: each power of 2 is cut into SUB_BUCKETS
+ * buckets of equal width, so every value is counted in a bucket within about 3% of it, from one
+ * nanosecond to centuries, and percentiles are read off the buckets. They count every value since
+ * the histogram was made.
+ */
+public class Metrics {
+
+    private static final Metrics SHARED = new Metrics();
+
+    /** The percentiles rendered for each histogram, as fractions. */
+    public static final List<Double> QUANTILES = List.of(0.5, 0.9, 0.99, 0.999, 1.0);
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    /*
+     * Abstraction function:
+     *    AF(families): the metrics registered, grouped by name into the families in families
+     *
+     * Representation invariant:
+     *    each family is in families under its name
+     *
+     * Safety from rep exposure:
+     *    families is private and final and never returned; the metrics returned are meant to be
+     *      shared, and are threadsafe
+     *
+     * Thread safety argument:
+     *    families, and the series of each family, are threadsafe maps, and metrics are registered
+     *      with computeIfAbsent, so each name and labels make exactly one metric
+     *    metrics are threadsafe, and may be rendered while they are being recorded
+     */
+
+    /**
+     * @return the registry shared by every board and server in this process
+     */
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    /** A metric which can render its samples. */
+    private interface Metric {
+        /**
+         * Renders the samples of this metric.
+         * @param out where to append the samples, one per line
+         * @param name the name of the metric
+         * @param labels the labels of the metric, rendered as name="value" pairs separated by
+         *               commas, or ""
+         */
+        void render(StringBuilder out, String name, String labels);
+    }
+
+    /** A count which only goes up, such as of events. */
+    public static final class Counter implements Metric {
+
+        private final LongAdder count = new LongAdder();
+
+        /** Adds one to the count. */
+        public void increment() {
+            count.increment();
+        }
+
+        /**
+         * Adds to the count.
+         * @param n the amount added, at least 0
+         */
+        public void add(long n) {
+            count.add(n);
+        }
+
+        /** @return the count */
+        public long get() {
+            return count.sum();
+        }
+
+        @Override public void render(StringBuilder out, String name, String labels) {
+            sample(out, name, labels, "", Long.toString(get()));
+        }
+    }
+
+    /** A value which goes up and down, such as the number of requests waiting. */
+    public static final class Gauge implements Metric {
+
+        private final LongAdder value = new LongAdder();
+
+        /** Adds one to the value. */
+        public void increment() {
+            value.increment();
+        }
+
+        /** Subtracts one from the value. */
+        public void decrement() {
+            value.decrement();
+        }
+
+        /** @return the value */
+        public long get() {
+            return value.sum();
+        }
+
+        @Override public void render(StringBuilder out, String name, String labels) {
+            sample(out, name, labels, "", Long.toString(get()));
+        }
+    }
+
+    /**
+     * A histogram of durations in nanoseconds, rendered in seconds as a Prometheus summary with
+     * the percentiles in QUANTILES.
+     */
+    public static final class Histogram implements Metric {
+
+        // each power of 2 is cut into 2^SUB_BITS buckets
+        private static final int SUB_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /*
+         * Abstraction function:
+         *    AF(counts, sum, max): the durations recorded, of which counts[i] were in the range of
+         *      bucket i, and which add up to sum and are at most max
+         *
+         * Representation invariant:
+         *    every count is nonnegative
+         *
+         * Thread safety argument:
+         *    counts, sum and max are each threadsafe; they are not updated together, so a reader
+         *      may see a value in some of them and not yet in others, which at worst skews one
+         *      rendering by the values being recorded while it is rendered
+         */
+
+        /**
+         * Records a duration.
+         * @param nanos the duration in nanoseconds; negative durations, from a clock which went
+         *              backwards, are counted as 0
+         */
+        public void record(long nanos) {
+            final long value = Math.max(0, nanos);
+            counts.incrementAndGet(bucket(value));
+            sum.add(value);
+            if (value > max.get()) {
+                max.accumulateAndGet(value, Math::max);
+            }
+        }
+
+        /**
+         * Records the time since an earlier reading of System.nanoTime().
+         * @param startNanos the reading of System.nanoTime() when the duration started
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /** @return the number of durations recorded */
+        public long count() {
+            long count = 0;
+            for (int i=0; i<BUCKETS; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Finds a percentile of the durations recorded.
+         * @param quantile the fraction of durations, between 0 and 1, which are at most the percentile
+         * @return the highest duration in nanoseconds counted in the same bucket as the percentile,
+         *         but no more than the longest duration recorded; or 0 if none was recorded
+         */
+        public long percentile(double quantile) {
+            return percentiles(List.of(quantile))[0];
+        }
+
+        // the percentiles of several quantiles, in increasing order, from one pass over the buckets
+        private long[] percentiles(List<Double> quantiles) {
+            final long[] snapshot = new long[BUCKETS];
+            long count = 0;
+            for (int i=0; i<BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                count += snapshot[i];
+            }
+            final long longest = max.get();
+            final long[] percentiles = new long[quantiles.size()];
+            int bucket = 0;
+            long seen = snapshot[0];
+            for (int q=0; q<quantiles.size(); q++) {
+                // the rank of the percentile, from 1
+                final long rank = Math.max(1, (long) Math.ceil(quantiles.get(q) * count));
+                while (seen < rank && bucket < BUCKETS - 1) {
+                    bucket += 1;
+                    seen += snapshot[bucket];
+                }
+                percentiles[q] = count == 0 ? 0 : Math.min(highest(bucket), longest);
+            }
+            return percentiles;
+        }
+
+        @Override public void render(StringBuilder out, String name, String labels) {
+            final long[] percentiles = percentiles(QUANTILES);
+            final String separator = labels.isEmpty() ? "" : ",";
+            for (int q=0; q<QUANTILES.size(); q++) {
+                sample(out, name, labels + separator + "quantile=\"" + QUANTILES.get(q) + "\"", "",
+                        seconds(percentiles[q]));
+            }
+            sample(out, name, labels, "_sum", seconds(sum.sum()));
+            sample(out, name, labels, "_count", Long.toString(count()));
+        }
+
+        /**
+         * @param value a nonnegative value
+         * @return the index of the bucket which counts value: values below SUB_BUCKETS each have
+         *         their own bucket, and above, each power of 2 has SUB_BUCKETS buckets
+         */
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            final int shift = exponent - SUB_BITS;
+            return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        /**
+         * @param bucket the index of a bucket
+         * @return the highest value counted in that bucket
+         */
+        static long highest(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            final int shift = (bucket >>> SUB_BITS) - 1;
+            final long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+            return lowest + ((1L << shift) - 1);
+        }
+
+        private static String seconds(long nanos) {
+            return Double.toString(nanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    /** The metrics with one name, which differ by their labels. */
+    private static final class Family {
+
+        private final String name;
+        private final String help;
+        private final String type;
+        private final Map<String, Metric> series = new ConcurrentHashMap<>(); // by rendered labels
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Registers a counter, or finds the one already registered with the same name and labels.
+     * @param name the name of the counter, which by convention ends in "_total"
+     * @param help a description of what is counted
+     * @param labels the names and values of its labels, alternating, e.g. "route", "look"
+     * @return the counter
+     * @throws IllegalArgumentException if a metric of another kind has the same name, or the
+     *         labels do not come in pairs
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return register(name, help, "counter", labels, Counter::new);
+    }
+
+    /**
+     * Registers a gauge, or finds the one already registered with the same name and labels.
+     * @param name the name of the gauge
+     * @param help a description of what is measured
+     * @param labels the names and values of its labels, alternating
+     * @return the gauge
+     * @throws IllegalArgumentException if a metric of another kind has the same name, or the
+     *         labels do not come in pairs
+     */
+    public Gauge gauge(String name, String help, String... labels) {
+        return register(name, help, "gauge", labels, Gauge::new);
+    }
+
+    /**
+     * Registers a histogram of durations, or finds the one already registered with the same name
+     * and labels.
+     * @param name the name of the histogram, which by convention ends in "_seconds"
+     * @param help a description of what is timed
+     * @param labels the names and values of its labels, alternating
+     * @return the histogram
+     * @throws IllegalArgumentException if a metric of another kind has the same name, or the
+     *         labels do not come in pairs
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return register(name, help, "summary", labels, Histogram::new);
+    }
+
+    private <M extends Metric> M register(String name, String help, String type, String[] labels,
+            Supplier<M> make) {
+        if (!name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*") || labels.length % 2 != 0) {
+            throw new IllegalArgumentException("invalid metric " + name + " " + List.of(labels));
+        }
+        final Family family = families.computeIfAbsent(name, n -> new Family(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already a " + family.type);
+        }
+        final List<String> rendered = new ArrayList<>();
+        for (int i=0; i<labels.length; i+=2) {
+            rendered.add(labels[i] + "=\"" + escape(labels[i+1]) + "\"");
+        }
+        final Metric metric = family.series.computeIfAbsent(String.join(",", rendered), l -> make.get());
+        @SuppressWarnings("unchecked") // every metric of a family is of the kind its type names
+        final M registered = (M) metric;
+        return registered;
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format, version 0.0.4: for each name,
+     * in order, its HELP and TYPE lines, then one line per sample.
+     * @return the rendering
+     */
+    public String render() {
+        final StringBuilder out = new StringBuilder();
+        for (Family family: new TreeMap<>(families).values()) {
+            out.append("# HELP ").append(family.name).append(" ")
+                    .append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append("\n");
+            out.append("# TYPE ").append(family.name).append(" ").append(family.type).append("\n");
+            new TreeMap<>(family.series).forEach((labels, metric) -> metric.render(out, family.name, labels));
+        }
+        return out.toString();
+    }
+
+    // appends one sample line: the name with a suffix, the labels if any, and the value
+    private static void sample(StringBuilder out, String name, String labels, String suffix, String value) {
+        out.append(name).append(suffix);
+        if (!labels.isEmpty()) {
+            out.append("{").append(labels).append("}");
+        }
+        out.append(" ").append(value).append("\n");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,296 @@
+package setgame;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Offline calculator for the exact number of k-card tables which contain no Set.
+ *
+ * <p>A table without a Set is a cap in the affine space AG(n,3), where n is the number of
+ * attributes and the cards are the points. The affine group of AG(n,3) maps Sets to Sets and acts
+ * transitively on ordered triples of cards which are not a Set, so every such triple lies in the
+ * same number M(k) of k-card caps, and the number of k-card caps is
+ * 3^n (3^n - 1) (3^n - 3) M(k) / (k (k-1) (k-2)).
+ *
+ * <p>M(k) is computed by fixing the frame F_2 = {0, e1, e2} and growing the frame one unit vector
+ * at a time: the stabilizer of F_j = {0, e1, ..., ej} acts transitively on the points outside the
+ * flat S_j spanned by F_j, so the caps containing F_j are those inside S_j plus, weighted by
+ * (3^n - 3^j) / t_j where t_j is the number of points of the cap outside S_j, the caps containing
+ * F_(j+1). Only caps containing a full frame are enumerated, in parallel with fork/join.
+ */
+public class NoSetMain {
+
+    // largest cap in AG(n,3) for n = 0, 1, 2, 3, 4
+    private static final int[] MAX_CAP = {1, 2, 4, 9, 20};
+
+    // caps with fewer points than the frame plus this many are split into one subtask per extension
+    private static final int SPLIT_POINTS = 2;
+
+    /**
+     * Prints, for each number of attributes, the number of k-card tables with no Set and the
+     * probability that k cards dealt at random contain no Set.
+     *
+     * <p> Command-line usage:
+     * <pre> java setgame.NoSetMain [ATTRIBUTES...] </pre>
+     * where each ATTRIBUTES is between 1 and 4, and defaults to all of them.
+     *
+     * @param args arguments as described above
+     */
+    public static void main(String[] args) {
+        final List<Integer> dimensions = new ArrayList<>();
+        for (String arg: args) {
+            dimensions.add(Integer.parseInt(arg));
+        }
+        if (dimensions.isEmpty()) {
+            dimensions.addAll(List.of(1, 2, 3, 4));
+        }
+
+        for (int attributes: dimensions) {
+            final long start = System.nanoTime();
+            final BigInteger[] counts = countNoSetTables(attributes);
+            final long millis = (System.nanoTime() - start) / 1_000_000;
+            final int cards = SetMath.cards(attributes);
+
+            System.out.println(attributes + " attributes (" + cards + " cards, " + millis + " ms)");
+            System.out.println("  cards  tables without a Set  P(no Set)");
+            for (int k=0; k<counts.length; k++) {
+                final double probability = counts[k].doubleValue() / binomial(cards, k).doubleValue();
+                System.out.println(String.format("  %5d  %20s  %.6g%s", k, counts[k], probability,
+                        k % SetMath.VALUES == 0 && k > 0 ? "  (3 x " + k/SetMath.VALUES + " table)" : ""));
+            }
+        }
+    }
+
+    /**
+     * Counts the tables which contain no Set.
+     * @param attributes number of attributes of the deck, between 1 and 4
+     * @return an array whose element k is the number of k-card subsets of the deck containing no Set;
+     *         every larger subset contains a Set
+     */
+    public static BigInteger[] countNoSetTables(int attributes) {
+        if (attributes < 1 || attributes >= MAX_CAP.length) {
+            throw new IllegalArgumentException("unsupported number of attributes: " + attributes);
+        }
+        final int cards = SetMath.cards(attributes);
+        final BigInteger[] counts = new BigInteger[MAX_CAP[attributes] + 1];
+        for (int k=0; k<counts.length && k<SetMath.VALUES; k++) {
+            counts[k] = binomial(cards, k); // fewer than 3 cards never contain a Set
+        }
+        if (attributes == 1) {
+            return counts;
+        }
+
+        // weighted[k] is M(k), as a fraction over the common denominator
+        final int levels = attributes - 2;
+        final int bound = MAX_CAP[attributes] + 1;
+        final BigInteger[] numerators = new BigInteger[bound];
+        final BigInteger denominator = factorial(bound).pow(levels);
+        for (int k=0; k<bound; k++) {
+            numerators[k] = BigInteger.ZERO;
+        }
+        for (int span=2; span<=attributes; span++) {
+            final long[] histogram = ForkJoinPool.commonPool().invoke(
+                    CapTask.frame(attributes, span, bound));
+            for (int key=0; key<histogram.length; key++) {
+                if (histogram[key] == 0) {
+                    continue;
+                }
+                // key = k + bound*(t_2 + bound*(t_3 + ...)), weight = product of (3^n - 3^j) / t_j
+                BigInteger weight = BigInteger.valueOf(histogram[key]).multiply(denominator);
+                int rest = key / bound;
+                for (int j=2; j<span; j++) {
+                    final int outside = rest % bound;
+                    rest /= bound;
+                    weight = weight.multiply(BigInteger.valueOf(cards - SetMath.cards(j)))
+                            .divide(BigInteger.valueOf(outside));
+                }
+                numerators[key % bound] = numerators[key % bound].add(weight);
+            }
+        }
+
+        final BigInteger triples = BigInteger.valueOf((long) cards * (cards - 1) * (cards - SetMath.VALUES));
+        for (int k=SetMath.VALUES; k<bound; k++) {
+            final BigInteger[] quotient = numerators[k].multiply(triples)
+                    .divideAndRemainder(denominator.multiply(BigInteger.valueOf((long) k * (k-1) * (k-2))));
+            assert quotient[1].signum() == 0 : "count of " + k + "-card caps is not an integer";
+            counts[k] = quotient[0];
+        }
+        return counts;
+    }
+
+    private static BigInteger binomial(int n, int k) {
+        BigInteger result = BigInteger.ONE;
+        for (int i=0; i<k; i++) {
+            result = result.multiply(BigInteger.valueOf(n - i)).divide(BigInteger.valueOf(i + 1));
+        }
+        return result;
+    }
+
+    private static BigInteger factorial(int n) {
+        BigInteger result = BigInteger.ONE;
+        for (int i=2; i<=n; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+        }
+        return result;
+    }
+
+    /**
+     * Counts the caps extending a given cap inside the flat of the first span unit vectors,
+     * by their size and by how many of their points lie outside each smaller flat S_j, 2 <= j < span.
+     */
+    private static class CapTask extends RecursiveTask<long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int attributes;
+        private final int span;
+        private final int bound;
+        private final int frameSize;
+        private final int[] cap;
+        private final int size;
+        private final long blockedLow;
+        private final long blockedHigh;
+        private final int next;
+
+        /*
+         * Abstraction function:
+         *    AF(attributes, span, bound, frameSize, cap, size, blockedLow, blockedHigh, next):
+         *      the task of counting the caps of AG(attributes, 3) inside S_span which contain
+         *      cap[0..size-1] and whose other points have codes at least next
+         *
+         * Representation invariant:
+         *    cap[0..frameSize-1] is the frame F_span, and cap[0..size-1] is a cap inside S_span
+         *    bit c of blockedLow (c < 64) or blockedHigh (c >= 64) is set iff card c is in the cap
+         *      or completes a Set with two cards of the cap
+         *
+         * Safety from rep exposure:
+         *    cap is copied whenever it is extended; tasks are private to NoSetMain
+         *
+         * Thread safety argument:
+         *    all fields are final and cap is never mutated after construction, so a task
+         *      may be computed by any fork/join worker
+         */
+
+        static CapTask frame(int attributes, int span, int bound) {
+            final int[] frame = new int[span + 1];
+            long low = 0;
+            long high = 0;
+            for (int i=0; i<=span; i++) {
+                frame[i] = i == 0 ? 0 : SetMath.cards(i - 1); // the unit vector e_i has code 3^(i-1)
+                for (int j=0; j<i; j++) {
+                    final int third = SetMath.third(frame[i], frame[j]);
+                    low |= third < Long.SIZE ? 1L << third : 0;
+                    high |= third >= Long.SIZE ? 1L << third : 0;
+                }
+                low |= frame[i] < Long.SIZE ? 1L << frame[i] : 0;
+                high |= frame[i] >= Long.SIZE ? 1L << frame[i] : 0;
+            }
+            return new CapTask(attributes, span, bound, frame.length, frame, frame.length, low, high, 0);
+        }
+
+        private CapTask(int attributes, int span, int bound, int frameSize, int[] cap, int size,
+                long blockedLow, long blockedHigh, int next) {
+            this.attributes = attributes;
+            this.span = span;
+            this.bound = bound;
+            this.frameSize = frameSize;
+            this.cap = cap;
+            this.size = size;
+            this.blockedLow = blockedLow;
+            this.blockedHigh = blockedHigh;
+            this.next = next;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (size >= frameSize + SPLIT_POINTS) {
+                final long[] histogram = newHistogram();
+                final int[] points = new int[bound];
+                System.arraycopy(cap, 0, points, 0, size);
+                extend(points, size, blockedLow, blockedHigh, next, histogram);
+                return histogram;
+            }
+
+            final long[] histogram = newHistogram();
+            record(cap, size, histogram);
+            final List<CapTask> subtasks = new ArrayList<>();
+            final int limit = SetMath.cards(span);
+            for (int card=next; card<limit; card++) {
+                if (isBlocked(blockedLow, blockedHigh, card)) {
+                    continue;
+                }
+                long low = blockedLow;
+                long high = blockedHigh;
+                for (int i=0; i<size; i++) {
+                    final int third = SetMath.third(card, cap[i]);
+                    low |= third < Long.SIZE ? 1L << third : 0;
+                    high |= third >= Long.SIZE ? 1L << third : 0;
+                }
+                final int[] extended = new int[size + 1];
+                System.arraycopy(cap, 0, extended, 0, size);
+                extended[size] = card;
+                subtasks.add(new CapTask(attributes, span, bound, frameSize, extended, size + 1,
+                        low, high, card + 1));
+            }
+            for (CapTask subtask: invokeAll(subtasks)) {
+                final long[] counts = subtask.join();
+                for (int key=0; key<histogram.length; key++) {
+                    histogram[key] += counts[key];
+                }
+            }
+            return histogram;
+        }
+
+        private long[] newHistogram() {
+            int keys = bound;
+            for (int j=2; j<span; j++) {
+                keys *= bound;
+            }
+            return new long[keys];
+        }
+
+        /**
+         * Counts the cap cap[0..size-1] and every cap extending it with cards of code at least next.
+         */
+        private void extend(int[] points, int size, long low, long high, int next, long[] histogram) {
+            record(points, size, histogram);
+            final int limit = SetMath.cards(span);
+            for (int card=next; card<limit; card++) {
+                if (isBlocked(low, high, card)) {
+                    continue;
+                }
+                long extendedLow = low;
+                long extendedHigh = high;
+                for (int i=0; i<size; i++) {
+                    final int third = SetMath.third(card, points[i]);
+                    extendedLow |= third < Long.SIZE ? 1L << third : 0;
+                    extendedHigh |= third >= Long.SIZE ? 1L << third : 0;
+                }
+                points[size] = card;
+                extend(points, size + 1, extendedLow, extendedHigh, card + 1, histogram);
+            }
+        }
+
+        private void record(int[] points, int size, long[] histogram) {
+            int key = 0;
+            for (int j=span-1; j>=2; j--) {
+                final int flat = SetMath.cards(j);
+                int outside = 0;
+                for (int i=0; i<size; i++) {
+                    if (points[i] >= flat) {
+                        outside += 1;
+                    }
+                }
+                key = key*bound + outside;
+            }
+            histogram[key*bound + size] += 1;
+        }
+
+        private static boolean isBlocked(long low, long high, int card) {
+            return card < Long.SIZE ? (low & (1L << card)) != 0 : (high & (1L << card)) != 0;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package setgame;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Replays a game recorded in an EventLog, rebuilding its Board as it was at any time in the log.
+ *
+ * <p>The recorded changes are made again to a Board restored from a checkpoint in the log, with no
+ * timeouts scheduled: the timeouts which fired are themselves recorded, and declares time out by
+ * the time of the change being made rather than the system clock. So fast-forwarding takes no
+ * longer than making the changes, and a replay can start from the latest checkpoint before the
+ * time wanted rather than from the start of the game.
+ *
+ * <p>A Replayer reads the log once; refresh() gives one which also has the events logged since,
+ * reading only those.
+ */
+public class Replayer {
+
+    private final Path directory;
+    private final String game;
+    private final List<EventLog.Event> events;
+    private final int[] checkpoints;
+    private final EventLog.Position end;
+
+    /*
+     * Abstraction function:
+     *    AF(directory, game, events, checkpoints, end): the game with ID game recorded in the log
+     *      in directory, whose events from its earliest checkpoint in the log when first read, up
+     *      to position end in the log, are events, in order, of which those at the indices in
+     *      checkpoints are CHECKPOINTs
+     *
+     * Representation invariant:
+     *    every event is of game, and the first is a CHECKPOINT
+     *    checkpoints holds, in increasing order, exactly the indices of the CHECKPOINTs in events
+     *
+     * Safety from rep exposure:
+     *    all fields are private and final; events and checkpoints are never returned, and events
+     *      are immutable
+     *
+     * Thread safety argument:
+     *    events and checkpoints are not mutated after construction, so a Replayer may be shared;
+     *      each replay makes its own Board, confined to the thread replaying; refresh() makes a
+     *      new Replayer rather than changing this one
+     */
+
+    /**
+     * Reads a game from a log.
+     * @param directory the directory of the segment files of the log
+     * @param game the ID of the game, where "" is a server's default game
+     * @throws IOException if the log cannot be read
+     * @throws IllegalArgumentException if the log has no checkpoint of the game, from which to replay it
+     */
+    public Replayer(Path directory, String game) throws IOException {
+        this(directory, game, List.of(), EventLog.Position.START);
+    }
+
+    // reads the events of the game logged after a position, following those already read
+    private Replayer(Path directory, String game, List<EventLog.Event> read, EventLog.Position from)
+            throws IOException {
+        this.directory = directory;
+        this.game = game;
+        this.events = new ArrayList<>(read);
+        this.end = EventLog.read(directory, from, event -> {
+            if (event.game().equals(game) && (!events.isEmpty() || event.type() == EventLog.Type.CHECKPOINT)) {
+                events.add(event);
+            }
+        });
+        if (events.isEmpty()) {
+            throw new IllegalArgumentException("no checkpoint of game \"" + game + "\" in " + directory);
+        }
+        this.checkpoints = IntStream.range(0, events.size())
+                .filter(i -> events.get(i).type() == EventLog.Type.CHECKPOINT).toArray();
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert events.get(0).type() == EventLog.Type.CHECKPOINT;
+        assert checkpoints.length > 0 && checkpoints[0] == 0;
+    }
+
+    /**
+     * Catches up with the log, reading only the events appended since this Replayer last read it.
+     * @return a Replayer of the same game with every event of it in the log, which is this one if
+     *         nothing was logged since
+     * @throws IOException if the log cannot be read
+     */
+    public Replayer refresh() throws IOException {
+        final Replayer refreshed = new Replayer(directory, game, events, end);
+        return refreshed.end == end ? this : refreshed; // the same position if nothing was logged
+    }
+
+    /**
+     * @return the ID of the game
+     */
+    public String game() {
+        return game;
+    }
+
+    /**
+     * @return the number of events which can be replayed
+     */
+    public int size() {
+        return events.size();
+    }
+
+    /**
+     * @return the Unix time of the earliest state of the game which can be replayed
+     */
+    public long startTime() {
+        return events.get(0).time();
+    }
+
+    /**
+     * @return the Unix time of the last event of the game
+     */
+    public long endTime() {
+        return events.get(events.size() - 1).time();
+    }
+
+    /**
+     * Rebuilds the board as it was at a time, after every event recorded until then.
+     * @param time a Unix time, at least startTime()
+     * @return a snapshot of the board at that time, or null if the game was closed then
+     * @throws IllegalArgumentException if time is before startTime()
+     */
+    public BoardSnapshot at(long time) {
+        final Playback playback = new Playback(time);
+        playback.advanceTo(time);
+        return playback.board == null ? null : playback.board.snapshot();
+    }
+
+    /**
+     * Plays the game from a time at a multiple of the speed at which it was played, waiting between
+     * changes so that they are shown when they would have been, divided by speed. Changes which fall
+     * within the same millisecond of the replay are shown together.
+     * @param from the Unix time from which to play, at least startTime()
+     * @param speed how many times faster than it was played to play the game, greater than 0
+     * @param show called with a snapshot of the board at from, and after each change until the end
+     *             of the log or until the game was closed
+     * @throws InterruptedException if interrupted while waiting between changes
+     * @throws IllegalArgumentException if from is before startTime(), or speed is not positive
+     */
+    public void play(long from, double speed, Consumer<BoardSnapshot> show) throws InterruptedException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        final Playback playback = new Playback(from);
+        playback.advanceTo(from);
+        final long start = System.currentTimeMillis();
+        long shown = -1;
+        while (playback.board != null) {
+            final BoardSnapshot snapshot = playback.board.snapshot();
+            if (snapshot.version() != shown) {
+                show.accept(snapshot);
+                shown = snapshot.version();
+            }
+            if (playback.next == events.size()) {
+                return;
+            }
+            final long time = events.get(playback.next).time();
+            final long wait = start + (long) ((time - from) / speed) - System.currentTimeMillis();
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+            // every event due by now, so a fast replay shows changes no more often than once a millisecond
+            final long due = from + (long) ((System.currentTimeMillis() - start) * speed);
+            playback.advanceTo(Math.max(time, due));
+        }
+    }
+
+    /**
+     * One replay of the game: a board rebuilt from a checkpoint, and the events made to it so far.
+     */
+    private final class Playback {
+
+        private Board board; // null once the game is closed, until it is restored from a checkpoint
+        private int next; // index of the next event to make
+        private long now; // the time of the event being made
+
+        /*
+         * Abstraction function:
+         *    AF(board, next, now): the game as it was after events[0..next-1], with board null if it
+         *      was closed, while making events[next-1] at Unix time now
+         *
+         * Representation invariant:
+         *    0 < next <= events.size()
+         */
+
+        /**
+         * Starts a replay from the latest checkpoint at or before a time.
+         * @param time a Unix time, at least startTime()
+         */
+        Playback(long time) {
+            if (time < startTime()) {
+                throw new IllegalArgumentException("the game can only be replayed from " + startTime());
+            }
+            int low = 0;
+            int high = checkpoints.length - 1;
+            while (low < high) { // find the last checkpoint at or before time
+                final int middle = (low + high + 1) / 2;
+                if (events.get(checkpoints[middle]).time() <= time) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            next = checkpoints[low];
+            step();
+        }
+
+        /**
+         * Makes every event recorded until a time.
+         * @param time a Unix time
+         */
+        void advanceTo(long time) {
+            // the board is closed, or rebuilt, between batches
+            while (next < events.size() && events.get(next).time() <= time) {
+                final EventLog.Event event = events.get(next);
+                if (board == null || event.type() == EventLog.Type.CLOSE) {
+                    step();
+                    continue;
+                }
+                try {
+                    // in one batch, so the board publishes one snapshot rather than one per event
+                    board.batch(() -> {
+                        while (next < events.size() && events.get(next).time() <= time
+                                && events.get(next).type() != EventLog.Type.CLOSE) {
+                            step();
+                        }
+                        return null;
+                    });
+                } catch (InterruptedException ie) {
+                    throw new AssertionError("replaying with no timeouts is never interrupted", ie);
+                }
+            }
+        }
+
+        private void step() {
+            final EventLog.Event event = events.get(next);
+            now = event.time();
+            next += 1;
+            try {
+                switch (event.type()) {
+                case CHECKPOINT:
+                    if (board == null) {
+                        board = new Board(event.checkpoint(), Board.NO_TIMEOUTS, this::deal, Board.NO_JOURNAL,
+                                () -> now);
+                    }
+                    break;
+                case CLOSE:
+                    board = null;
+                    break;
+                default:
+                    if (board != null) {
+                        event.applyTo(board);
+                    }
+                }
+            } catch (InterruptedException ie) {
+                throw new AssertionError("replaying with no timeouts is never interrupted", ie);
+            } catch (RuntimeException re) {
+                // as in recovery, an event which cannot be made is skipped
+                System.err.println(" !! skipped event which cannot be replayed: " + event + ": " + re);
+            }
+        }
+
+        // the deck recorded when the board dealt it, just after the event being made
+        private List<Card> deal() {
+            for (int i=next; i<events.size(); i++) {
+                if (events.get(i).type() == EventLog.Type.DEAL) {
+                    return events.get(i).cards();
+                }
+            }
+            throw new IllegalStateException("the log ends before the board dealt a new deck");
+        }
+    }
+
+    /**
+     * Prints a game as it was at a time, as a BOARD response shows it to someone not declaring.
+     * @param args the directory of the log, the ID of the game, and optionally a Unix time, without
+     *             which the game is shown at the end of the log
+     * @throws IOException if the log cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            throw new IllegalArgumentException("usage: Replayer DIRECTORY GAME [TIME]");
+        }
+        final Replayer replayer = new Replayer(Path.of(args[0]), args[1]);
+        final long time = args.length == 3 ? Long.parseLong(args[2]) : replayer.endTime();
+        final BoardSnapshot snapshot = replayer.at(time);
+        System.out.print(snapshot == null ? "closed\n" : new String(snapshot.rendering(), UTF_8));
+    }
+}
@@ -0,0 +1,205 @@
+package setgame;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Scores of the players of a game, kept ranked as they change.
+ *
+ * <p>Players are kept in a concurrent skip list ordered from the highest score down, so the top
+ * players can be read without locking or copying the scores. A Fenwick tree counts the players
+ * with each score, so the rank of a player is found in time logarithmic in the range of scores.
+ */
+public class Scoreboard {
+
+    private static final int INITIAL_RANGE = 256; // must be a power of 2
+
+    // highest score first, then by player ID
+    private static final Comparator<Entry> RANKING =
+            Comparator.comparingInt((Entry entry) -> -entry.score).thenComparing(entry -> entry.player);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(RANKING);
+    private int low = -INITIAL_RANGE / 2;
+    private int[] counts = new int[INITIAL_RANGE + 1];
+
+    /*
+     * Abstraction function:
+     *    AF(entries, ranking, low, counts): the players in entries, each with the score of their
+     *      entry, ranked by ranking; counts is a 1-indexed Fenwick tree over the scores from low
+     *      to low + counts.length - 2, counting the players with each score
+     *
+     * Representation invariant:
+     *    ranking contains exactly the values of entries, and entries maps each player to their entry
+     *    the score of every entry is in the range of counts
+     *    counts.length - 1 is a power of 2
+     *
+     * Safety from rep exposure:
+     *    all fields are private; entries are immutable and only their players and scores are returned
+     *
+     * Thread safety argument:
+     *    every change, and every read of low and counts, happens while holding this object's lock
+     *    entries and ranking are threadsafe, and are read without the lock: a reader may see a
+     *      change to one before the other, but entries are immutable, so each it sees is consistent
+     */
+
+    /** An immutable player and score, as kept in the ranking. */
+    private static final class Entry {
+        private final String player;
+        private final int score;
+
+        Entry(String player, int score) {
+            this.player = player;
+            this.score = score;
+        }
+    }
+
+    private void checkRep() {
+        assert entries.size() == ranking.size();
+        assert Integer.bitCount(counts.length - 1) == 1;
+    }
+
+    /**
+     * @param player a unique ID for a player
+     * @return whether the player has a score
+     */
+    public boolean containsKey(String player) {
+        return entries.containsKey(player);
+    }
+
+    /**
+     * @param player a unique ID for a player
+     * @return the score of the player, or null if they have none
+     */
+    public Integer get(String player) {
+        final Entry entry = entries.get(player);
+        return entry == null ? null : entry.score;
+    }
+
+    /**
+     * @return the number of players with a score
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Sets the score of a player, adding them if they have none.
+     * @param player a unique ID for a player
+     * @param score the new score of the player
+     */
+    public synchronized void put(String player, int score) {
+        final Entry entry = new Entry(player, score);
+        final Entry old = entries.put(player, entry);
+        if (old != null) {
+            ranking.remove(old);
+            count(old.score, -1);
+        }
+        if (score < low || score - low >= counts.length - 1) {
+            grow(score);
+        }
+        ranking.add(entry);
+        count(score, +1);
+        checkRep();
+    }
+
+    /**
+     * Removes the score of a player, if they have one.
+     * @param player a unique ID for a player
+     */
+    public synchronized void remove(String player) {
+        final Entry old = entries.remove(player);
+        if (old != null) {
+            ranking.remove(old);
+            count(old.score, -1);
+        }
+        checkRep();
+    }
+
+    /**
+     * Removes every score.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        ranking.clear();
+        low = -INITIAL_RANGE / 2;
+        counts = new int[INITIAL_RANGE + 1];
+        checkRep();
+    }
+
+    /**
+     * Finds the rank of a player: one more than the number of players with a higher score, so
+     * players with equal scores share a rank.
+     * @param player a unique ID for a player
+     * @return the rank of the player, from 1, or 0 if they have no score
+     */
+    public synchronized int rank(String player) {
+        final Entry entry = entries.get(player);
+        if (entry == null) {
+            return 0;
+        }
+        return entries.size() - countAtMost(entry.score) + 1;
+    }
+
+    /**
+     * Finds the players with the highest scores, without copying the others.
+     * @param n the number of players wanted
+     * @return the players with the n highest scores, or all players if there are fewer, from the
+     *         highest score down, with equal scores ordered by player ID
+     */
+    public List<Map.Entry<String, Integer>> top(int n) {
+        final List<Map.Entry<String, Integer>> top = new ArrayList<>(Math.min(n, 64));
+        final Iterator<Entry> iterator = ranking.iterator();
+        while (top.size() < n && iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            top.add(new AbstractMap.SimpleImmutableEntry<>(entry.player, entry.score));
+        }
+        return top;
+    }
+
+    /**
+     * @return a new map from each player to their score
+     */
+    public Map<String, Integer> toMap() {
+        final Map<String, Integer> scores = new HashMap<>();
+        entries.forEach((player, entry) -> scores.put(player, entry.score));
+        return scores;
+    }
+
+    private void count(int score, int delta) {
+        for (int i = score - low + 1; i < counts.length; i += i & -i) {
+            counts[i] += delta;
+        }
+    }
+
+    private int countAtMost(int score) {
+        int count = 0;
+        for (int i = score - low + 1; i > 0; i -= i & -i) {
+            count += counts[i];
+        }
+        return count;
+    }
+
+    // widens the range of counts to include score, and recounts the players in the ranking from scratch
+    private void grow(int score) {
+        int range = counts.length - 1;
+        int newLow = low;
+        while (score < newLow || score - newLow >= range) {
+            newLow -= range / 2;
+            range *= 2;
+        }
+        low = newLow;
+        counts = new int[range + 1];
+        for (Entry entry: ranking) {
+            count(entry.score, +1);
+        }
+    }
+}
@@ -4,11 +4,16 @@
 package setgame;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Game server runner.
@@ -44,6 +49,20 @@ public class ServerMain {
      *     and unicorns:
      * <pre> 8080 3 3 1F308 1F984 </pre>
      * 
+     * <p> Run with the system property {@code setgame.eventLoop=true} to apply every change to the
+     *     board on a single-writer event loop (see {@link GameLoop}).
+     * 
+     * <p> Run with the system property {@code setgame.eventLog=DIRECTORY} to record every change to
+     *     the boards in an event log in that directory (see {@link EventLog}). Games which were open
+     *     when the log was last written are restored from it first, including the board given by the
+     *     arguments, if it was open. Run also with {@code setgame.keepEventLog=true} to keep the whole
+     *     log, so every game can be replayed from its start (see {@link Replayer}).
+     * 
+     * <p> Requests are logged to System.err, or with the system property
+     *     {@code setgame.requestLog=FILE} to FILE, rolled over as it grows; run also with
+     *     {@code setgame.requestLogSample=N} to log only one in every N successful requests (see
+     *     {@link setgame.web.RequestLog}).
+     * 
      * @param args arguments as described above
      * @throws IOException if an error occurs parsing a file or starting a server
      */
@@ -52,6 +71,12 @@ public class ServerMain {
         
         final int port;
         final Board board;
+        final GameLoop loop = GameLoop.isEnabled() ? new GameLoop() : null;
+        final String logDirectory = System.getProperty(EventLog.PROPERTY);
+        final Map<String, BoardCheckpoint> recovered = logDirectory == null
+                ? Map.of() : EventLog.recover(Path.of(logDirectory));
+        final EventLog log = logDirectory == null ? null : new EventLog(Path.of(logDirectory),
+                EventLog.SEGMENT_BYTES, Boolean.getBoolean(EventLog.KEEP_PROPERTY));
         
         try {
             port = Integer.parseInt(arguments.remove());
@@ -60,7 +85,17 @@ public class ServerMain {
         }
         
         if (arguments.size() == 1) {
-            board = Board.generateRandom(Integer.parseInt(arguments.remove()));
+            final int attributes = Integer.parseInt(arguments.remove());
+            final Board.TimeoutScheduler timeouts = loop == null ? TimingWheel.shared() : loop.timeouts();
+            final Board.Journal journal = log == null ? Board.NO_JOURNAL : log.journal("");
+            final BoardCheckpoint checkpoint = recovered.get("");
+            if (checkpoint == null) {
+                board = new Board(Board.generateRandomCards(attributes), attributes, timeouts,
+                        () -> Board.generateRandomCards(attributes), journal);
+            } else {
+                board = new Board(checkpoint, timeouts, () -> Board.generateRandomCards(checkpoint.attributes()), journal);
+                board.resume();
+            }
         } else if (arguments.size() > 2) {
             throw new IllegalArgumentException("broken"); // TODO handle this?
 //            final int rows, columns;
@@ -76,7 +111,42 @@ public class ServerMain {
             throw new IllegalArgumentException("expected FILENAME or ROWS COLUMNS CARD...");
         }
         
-        new WebServer(board, port).start();
+        final GameRegistry registry = new GameRegistry(board.getAttributes(), loop != null, log);
+        recovered.forEach((id, checkpoint) -> {
+            if (!id.equals("")) {
+                registry.restore(id, checkpoint);
+            }
+        });
+        if (!recovered.isEmpty()) {
+            System.err.println("restored " + recovered.size() + " games from " + logDirectory);
+        }
+        if (log != null) {
+            final Runnable checkpoint = () -> {
+                if (log.failure() != null) {
+                    return; // the writer has stopped, and would drop every checkpoint
+                }
+                board.checkpointJournal();
+                registry.checkpoint();
+            };
+            final ScheduledExecutorService checkpoints = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "checkpoints");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checkpoints.scheduleWithFixedDelay(checkpoint, EventLog.CHECKPOINT_MILLIS, EventLog.CHECKPOINT_MILLIS,
+                    TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                checkpoint.run();
+                log.close();
+                if (log.failure() != null) {
+                    System.err.println(" !! event log stopped early, so games restore only as far as it was written: "
+                            + log.failure());
+                }
+            }));
+        }
+        final WebServer server = new WebServer(registry, board, loop, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop)); // writes out the requests logged
+        server.start();
     }
     
 //    /**
@@ -0,0 +1,240 @@
+package setgame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the cards on a board and of every Set among them, updated one card at a time.
+ * Mutable and not threadsafe.
+ */
+public class SetIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_CARDS = 32;
+    private static final int CODE_BITS = 13;
+    private static final long CODE_MASK = (1L << CODE_BITS) - 1;
+
+    private final int attributes;
+    private final CardSet present;
+    private int[] cards = new int[INITIAL_CARDS];
+    private int numCards = 0;
+
+    private long[] sets = new long[INITIAL_CAPACITY];
+    private int numSets = 0;
+
+    /*
+     * Abstraction function:
+     *    AF(attributes, present, cards, numCards, sets, numSets): the cards from a deck with the given
+     *      number of attributes with codes cards[0..numCards-1],
+     *      together with every Set formed by three of them, each Set stored in sets as the key
+     *      setKey of its three codes
+     *
+     * Representation invariant:
+     *    present contains exactly the codes cards[0..numCards-1], which are distinct
+     *    sets is an open-addressing hash table with linear probing, whose length is a power of 2,
+     *      where 0 marks an empty slot
+     *    sets holds exactly numSets keys, one for each Set among the indexed cards
+     *    2*numSets <= sets.length
+     *
+     * Safety from rep exposure:
+     *    all fields are private and never returned; sets are returned as new lists of
+     *      immutable Cards
+     *
+     * Thread safety argument:
+     *    not threadsafe; callers must guard instances with their own lock
+     */
+
+    /**
+     * Creates an empty index.
+     * @param attributes number of attributes of the deck the indexed cards come from
+     */
+    public SetIndex(int attributes) {
+        this.attributes = attributes;
+        this.present = new CardSet(SetMath.codes(attributes));
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert attributes >= 1 && attributes <= SetMath.MAX_ATTRIBUTES;
+        assert numCards >= 0 && numCards <= cards.length;
+        assert Integer.bitCount(sets.length) == 1;
+        assert 2*numSets <= sets.length;
+    }
+
+    /**
+     * @param card a card
+     * @return whether the card is in this index
+     */
+    public boolean contains(Card card) {
+        return present.contains(card);
+    }
+
+    /**
+     * @return the number of cards in this index
+     */
+    public int numCards() {
+        return numCards;
+    }
+
+    /**
+     * @return the number of distinct Sets among the cards in this index
+     */
+    public int numSets() {
+        return numSets;
+    }
+
+    /**
+     * Adds a card, along with every Set it forms with the cards already indexed.
+     * Takes time proportional to the number of cards indexed.
+     * @param card a card not already in this index
+     */
+    public void add(Card card) {
+        assert !present.contains(card);
+        int code = card.code();
+        for (int i=0; i<numCards; i++) {
+            int third = SetMath.third(code, cards[i]);
+            // the Set {code, cards[i], third} is seen from both cards[i] and third; insert it once
+            if (third > cards[i] && present.contains(third)) {
+                insert(setKey(code, cards[i], third));
+            }
+        }
+        present.add(card);
+        if (numCards == cards.length) {
+            cards = Arrays.copyOf(cards, 2*cards.length);
+        }
+        cards[numCards] = code;
+        numCards += 1;
+        checkRep();
+    }
+
+    /**
+     * Removes a card, along with every Set containing it.
+     * Takes time proportional to the number of cards indexed.
+     * @param card a card in this index
+     */
+    public void remove(Card card) {
+        assert present.contains(card);
+        int code = card.code();
+        present.remove(card);
+        for (int i=0; i<numCards; i++) {
+            if (cards[i] == code) {
+                numCards -= 1;
+                cards[i] = cards[numCards];
+                break;
+            }
+        }
+        for (int i=0; i<numCards; i++) {
+            int third = SetMath.third(code, cards[i]);
+            if (third > cards[i] && present.contains(third)) {
+                delete(setKey(code, cards[i], third));
+            }
+        }
+        checkRep();
+    }
+
+    /**
+     * Removes every card and Set from this index.
+     */
+    public void clear() {
+        present.clear();
+        numCards = 0;
+        for (int i=0; i<sets.length; i++) {
+            sets[i] = 0;
+        }
+        numSets = 0;
+    }
+
+    /**
+     * @return some Set among the indexed cards, as a list of its 3 cards, or an empty list if there is none
+     */
+    public List<Card> anySet() {
+        for (long key: sets) {
+            if (key != 0) {
+                return cardsOf(key);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * @return every Set among the indexed cards, each as a list of its 3 cards
+     */
+    public List<List<Card>> allSets() {
+        List<List<Card>> result = new ArrayList<>(numSets);
+        for (long key: sets) {
+            if (key != 0) {
+                result.add(cardsOf(key));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Packs the codes of a Set into a nonzero key which does not depend on their order.
+     */
+    private static long setKey(int a, int b, int c) {
+        int low = Math.min(a, Math.min(b, c));
+        int high = Math.max(a, Math.max(b, c));
+        int middle = a + b + c - low - high;
+        return ((long) low << (2*CODE_BITS)) | ((long) middle << CODE_BITS) | high;
+    }
+
+    private List<Card> cardsOf(long key) {
+        return List.of(Card.fromCode(attributes, (int) (key >>> (2*CODE_BITS))),
+                Card.fromCode(attributes, (int) ((key >>> CODE_BITS) & CODE_MASK)),
+                Card.fromCode(attributes, (int) (key & CODE_MASK)));
+    }
+
+    private int home(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> (Long.SIZE - Integer.numberOfTrailingZeros(sets.length)));
+    }
+
+    private void insert(long key) {
+        if (2*(numSets+1) > sets.length) {
+            long[] old = sets;
+            sets = new long[old.length * 2];
+            for (long oldKey: old) {
+                if (oldKey != 0) {
+                    place(oldKey);
+                }
+            }
+        }
+        place(key);
+        numSets += 1;
+    }
+
+    private void place(long key) {
+        int mask = sets.length - 1;
+        int slot = home(key);
+        while (sets[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        sets[slot] = key;
+    }
+
+    private void delete(long key) {
+        int mask = sets.length - 1;
+        int slot = home(key);
+        while (sets[slot] != key) {
+            if (sets[slot] == 0) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // shift back any later key in the same probe run which would otherwise become unreachable
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (sets[next] != 0) {
+            int want = home(sets[next]);
+            if (((next - want) & mask) >= ((next - hole) & mask)) {
+                sets[hole] = sets[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        sets[hole] = 0;
+        numSets -= 1;
+    }
+}
@@ -0,0 +1,216 @@
+package setgame;
+
+/**
+ * Allocation-free arithmetic on the integer codes of Set cards.
+ *
+ * <p>A card code is a base-3 number with one digit per attribute, in the order the attributes
+ * are declared in {@link Card}: code = color + 3*number + 9*shading + 27*shape + 81*(fifth attribute)
+ * + ..., where each attribute contributes the ordinal of its value. Three cards form a Set exactly
+ * when every digit of their codes sums to 0 mod 3, so the third card of a Set is found digit by digit.
+ *
+ * <p>For cards with more than ATTRIBUTES attributes, codes are also converted to vectors over Z_3
+ * packed into one int, with bit i of the low half set when attribute i has value 1 and bit i of
+ * the high half set when it has value 2. The third card of a Set is then computed for all
+ * attributes at once with a few bitwise operations.
+ */
+public final class SetMath {
+
+    /** Number of attributes of a standard card. */
+    public static final int ATTRIBUTES = 4;
+
+    /** Largest number of attributes supported. */
+    public static final int MAX_ATTRIBUTES = 8;
+
+    /** Number of values each attribute can take. */
+    public static final int VALUES = 3;
+
+    /** Number of distinct standard card codes, 3^ATTRIBUTES. */
+    public static final int CARDS = 81;
+
+    /** Number of distinct card codes with MAX_ATTRIBUTES attributes, 3^MAX_ATTRIBUTES. */
+    public static final int MAX_CARDS = 6561;
+
+    private static final int LANES = 16;
+    private static final int LANE_MASK = (1 << LANES) - 1;
+    private static final int HALF_MASK = (1 << MAX_ATTRIBUTES) - 1;
+
+    // THIRD[a*CARDS + b] is the code of the third card of the Set containing a and b
+    private static final byte[] THIRD = new byte[CARDS*CARDS];
+
+    // VECTORS[code] is the packed vector of a code
+    private static final int[] VECTORS = new int[MAX_CARDS];
+
+    // POWER_SUMS[bits] is the sum of 3^i over the bits i set in bits
+    private static final int[] POWER_SUMS = new int[1 << MAX_ATTRIBUTES];
+
+    static {
+        for (int a=0; a<CARDS; a++) {
+            for (int b=0; b<CARDS; b++) {
+                THIRD[a*CARDS + b] = (byte) computeThird(a, b);
+            }
+        }
+        for (int code=0; code<MAX_CARDS; code++) {
+            int vector = 0;
+            for (int i=0; i<MAX_ATTRIBUTES; i++) {
+                int value = attribute(code, i);
+                if (value == 1) {
+                    vector |= 1 << i;
+                } else if (value == 2) {
+                    vector |= 1 << (i + LANES);
+                }
+            }
+            VECTORS[code] = vector;
+        }
+        for (int bits=0; bits<POWER_SUMS.length; bits++) {
+            int sum = 0;
+            int power = 1;
+            for (int i=0; i<MAX_ATTRIBUTES; i++) {
+                if ((bits & (1 << i)) != 0) {
+                    sum += power;
+                }
+                power *= VALUES;
+            }
+            POWER_SUMS[bits] = sum;
+        }
+    }
+
+    private SetMath() {
+        throw new AssertionError("static utility class");
+    }
+
+    /**
+     * Counts the cards in a full deck.
+     * @param attributes number of attributes, between 0 and MAX_ATTRIBUTES
+     * @return 3^attributes
+     */
+    public static int cards(int attributes) {
+        int cards = 1;
+        for (int i=0; i<attributes; i++) {
+            cards *= VALUES;
+        }
+        return cards;
+    }
+
+    /**
+     * Counts the codes that cards of a deck may take. Decks with fewer than ATTRIBUTES attributes
+     * are made of standard cards, so their codes range over all CARDS standard codes.
+     * @param attributes number of attributes, between 1 and MAX_ATTRIBUTES
+     * @return an upper bound (exclusive) on the codes of cards in that deck
+     */
+    public static int codes(int attributes) {
+        return cards(Math.max(attributes, ATTRIBUTES));
+    }
+
+    /**
+     * Encodes the attribute values of a standard card.
+     * @param color ordinal of the color
+     * @param number ordinal of the number
+     * @param shading ordinal of the shading
+     * @param shape ordinal of the shape
+     * @return the card code, between 0 (inclusive) and CARDS (exclusive)
+     */
+    public static int encode(int color, int number, int shading, int shape) {
+        return color + VALUES*(number + VALUES*(shading + VALUES*shape));
+    }
+
+    /**
+     * Extracts one attribute value from a card code.
+     * @param code a card code
+     * @param attribute index of the attribute, between 0 (inclusive) and MAX_ATTRIBUTES (exclusive)
+     * @return the ordinal of that attribute's value
+     */
+    public static int attribute(int code, int attribute) {
+        for (int i=0; i<attribute; i++) {
+            code /= VALUES;
+        }
+        return code % VALUES;
+    }
+
+    /**
+     * Given two card codes, computes the unique code which completes a Set with them.
+     * @param a a card code
+     * @param b a card code
+     * @return the code of the third card of the Set containing a and b
+     */
+    public static int third(int a, int b) {
+        if (a < CARDS && b < CARDS) {
+            return THIRD[a*CARDS + b];
+        }
+        return code(thirdVector(VECTORS[a], VECTORS[b]));
+    }
+
+    private static int computeThird(int a, int b) {
+        int result = 0;
+        int place = 1;
+        for (int i=0; i<ATTRIBUTES; i++) {
+            // each digit of the third card satisfies x + y + z = 0 mod 3
+            int digit = (2*VALUES - a%VALUES - b%VALUES) % VALUES;
+            result += digit*place;
+            a /= VALUES;
+            b /= VALUES;
+            place *= VALUES;
+        }
+        return result;
+    }
+
+    /**
+     * Determines whether three card codes form a Set.
+     * @param a a card code
+     * @param b a card code
+     * @param c a card code
+     * @return whether, for each attribute, the three cards are all the same or all different
+     */
+    public static boolean isSet(int a, int b, int c) {
+        return third(a, b) == c;
+    }
+
+    /**
+     * Counts the attributes on which two cards agree.
+     * @param a a card code
+     * @param b a card code
+     * @param attributes number of attributes to compare, between 0 and MAX_ATTRIBUTES
+     * @return how many of the first attributes attributes have equal values in both cards
+     */
+    public static int sameAttributes(int a, int b, int attributes) {
+        int differ = VECTORS[a] ^ VECTORS[b];
+        differ = (differ | (differ >>> LANES)) & ((1 << attributes) - 1);
+        return attributes - Integer.bitCount(differ);
+    }
+
+    /**
+     * Converts a card code to its packed vector.
+     * @param code a card code, less than MAX_CARDS
+     * @return the packed vector of the card, as described above
+     */
+    public static int vector(int code) {
+        return VECTORS[code];
+    }
+
+    /**
+     * Converts a packed vector to its card code.
+     * @param vector the packed vector of a card with at most MAX_ATTRIBUTES attributes
+     * @return the card code
+     */
+    public static int code(int vector) {
+        return POWER_SUMS[vector & HALF_MASK] + 2*POWER_SUMS[(vector >>> LANES) & HALF_MASK];
+    }
+
+    /**
+     * Given the packed vectors of two cards, computes the packed vector which completes a Set with them.
+     * @param a a packed vector
+     * @param b a packed vector
+     * @return the packed vector of the third card, x where a + b + x = 0 in every attribute
+     */
+    public static int thirdVector(int a, int b) {
+        int a1 = a & LANE_MASK;
+        int a2 = a >>> LANES;
+        int a0 = ~(a1 | a2);
+        int b1 = b & LANE_MASK;
+        int b2 = b >>> LANES;
+        int b0 = ~(b1 | b2);
+        // attributes where a + b = 1 and a + b = 2 (mod 3); the third card takes the negation
+        int sumIsOne = (a0 & b1) | (a1 & b0) | (a2 & b2);
+        int sumIsTwo = (a0 & b2) | (a2 & b0) | (a1 & b1);
+        return (sumIsTwo & LANE_MASK) | ((sumIsOne & LANE_MASK) << LANES);
+    }
+}
@@ -3,58 +3,179 @@
  */
 package setgame;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
 /**
- * Example code.
- * 
- * <p>PS4 instructions: you may use, modify, or remove this class.
+ * Monte Carlo simulator which plays complete games of Set through a Board.
+ *
+ * <p>Each game is played by a single player who declares and picks a Set whenever there is one on
+ * the board, and otherwise votes to add 3 cards, until the deck runs out and the Board deals a
+ * new game. Games run in parallel, one Board per thread, each with its own stream of randomness;
+ * timeouts are never scheduled, so games run as fast as the Board allows.
  */
 public class SimulationMain {
-    
+
+    private static final String PLAYER = "simulator";
+
     /**
-     * Simulate a game.
-     * 
-     * @param args unused
+     * Simulate games and print the distributions of their length, of the widest board reached,
+     * and of the number of cards left on the board when the deck runs out.
+     *
+     * <p> Command-line usage:
+     * <pre> java setgame.SimulationMain GAMES [ATTRIBUTES [SEED]] </pre>
+     * where GAMES is the number of games to play, ATTRIBUTES is between 1 and 8 and defaults to 4,
+     * and SEED is a long seeding the shuffles, which are otherwise random.
+     *
+     * @param args arguments as described above
+     * @throws InterruptedException if interrupted while waiting for the games to finish
      */
-    public static void main(String[] args) {
-//        final int size = 4;
-//        final int players = 30;
-//        final int tries = 30;
-//        final int idGenerator = 1000;
-//        
-//        final Board board = Board.generateRandom(size, size, Set.of("A", "B"));
-//        final Map<String, Integer> tryCounts = new ConcurrentHashMap<>();
-//        
-//        for (int ii = 0; ii < players; ii++) {
-//            new Thread(() -> {
-//                final Random random = new Random();
-//                String playerID = String.valueOf(random.nextInt(idGenerator));
-//                board.addPlayer(playerID);
-////                System.out.println(board);
-//                
-//                tryCounts.put(playerID, 0);
-//                for (int jj = 0; jj < tries; jj++) {
-//                    try {
-//                        Square card = new Square(random.nextInt(size)+1, random.nextInt(size)+1);
-////                        System.out.println(playerID + " 1 " + card.toString());
-//                        board.flipCard(card, playerID);
-////                        System.out.println(playerID + " 1 " + card.toString() + " " + board.getSquareStates());
-//                    } catch (InterruptedException e) {
-//                        e.printStackTrace();
-//                    }
-//                    try {
-//                        Square card = new Square(random.nextInt(size)+1, random.nextInt(size)+1);
-////                        System.out.println(playerID + " 2 " + card.toString());
-//                        board.flipCard(card, playerID);
-////                        System.out.println(playerID + " 2 " + card.toString() + " " + board.getSquareStates());
-//                    } catch (InterruptedException e) {
-//                        e.printStackTrace();
-//                    }
-//                    tryCounts.put(playerID, tryCounts.get(playerID)+1);
-//                }
-//                
-//            }).start();
-//        }
-//        
-        System.out.println("the end");
+    public static void main(String[] args) throws InterruptedException {
+        final long games = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        final int attributes = args.length > 1 ? Integer.parseInt(args[1]) : SetMath.ATTRIBUTES;
+        final SplittableRandom root = args.length > 2 ? new SplittableRandom(Long.parseLong(args[2]))
+                : new SplittableRandom();
+        final int threads = Runtime.getRuntime().availableProcessors();
+
+        final long start = System.nanoTime();
+        final List<Simulation> simulations = new ArrayList<>();
+        final List<Thread> workers = new ArrayList<>();
+        for (int i=0; i<threads; i++) {
+            final long share = games/threads + (i < games%threads ? 1 : 0);
+            final Simulation simulation = new Simulation(attributes, share, root.split());
+            final Thread worker = new Thread(simulation::run, "simulation-" + i);
+            simulations.add(simulation);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker: workers) {
+            worker.join();
+        }
+        final long millis = (System.nanoTime() - start) / 1_000_000;
+
+        final Simulation total = new Simulation(attributes, 0, root);
+        for (Simulation simulation: simulations) {
+            total.merge(simulation);
+        }
+        System.out.println(games + " games with " + attributes + " attributes on " + threads + " threads ("
+                + millis + " ms)");
+        print("Sets found per game", total.setsFound, games);
+        print("cards added per game", total.cardsAdded, games);
+        print("widest board, in columns", total.widest, games);
+        print("cards left when the deck ran out", total.leftOver, games);
+    }
+
+    private static void print(String title, long[] histogram, long games) {
+        long sum = 0;
+        for (int value=0; value<histogram.length; value++) {
+            sum += value * histogram[value];
+        }
+        System.out.println(String.format("%s (mean %.4f)", title, (double) sum / Math.max(games, 1)));
+        for (int value=0; value<histogram.length; value++) {
+            if (histogram[value] > 0) {
+                System.out.println(String.format("  %5d  %12d  %.6f", value, histogram[value],
+                        (double) histogram[value] / games));
+            }
+        }
+    }
+
+    /**
+     * Plays a number of games on one Board and records histograms of their outcomes.
+     */
+    private static class Simulation {
+
+        private final int attributes;
+        private final long games;
+        private final Board board;
+        private final long[] setsFound;
+        private final long[] cardsAdded;
+        private final long[] widest;
+        private final long[] leftOver;
+
+        /*
+         * Abstraction function:
+         *    AF(attributes, games, board, setsFound, cardsAdded, widest, leftOver): a run of the given number of games
+         *      on board, where element v of each histogram counts the games finished so far in which
+         *      v Sets were found, v cards were added, the board was v columns wide at most, and
+         *      v cards were on the board when the deck ran out
+         *
+         * Representation invariant:
+         *    each histogram has one element per card in the deck, plus one
+         *
+         * Safety from rep exposure:
+         *    simulations are private to SimulationMain
+         *
+         * Thread safety argument:
+         *    each simulation is confined to the thread which runs it until that thread is joined
+         */
+
+        Simulation(int attributes, long games, SplittableRandom random) {
+            final int cards = SetMath.cards(attributes);
+            this.attributes = attributes;
+            this.games = games;
+            this.board = new Board(Board.generateRandomCards(attributes, random), attributes, Board.NO_TIMEOUTS,
+                    () -> Board.generateRandomCards(attributes, random));
+            this.setsFound = new long[cards + 1];
+            this.cardsAdded = new long[cards + 1];
+            this.widest = new long[cards + 1];
+            this.leftOver = new long[cards + 1];
+        }
+
+        void run() {
+            board.addPlayer(PLAYER);
+            int sets = 0;
+            int added = 0;
+            int columns = board.getNumCols();
+            for (long game=0; game<games; ) {
+                final int width = board.getNumCols();
+                final int onBoard = board.getNumRows() * width;
+                final int remaining = board.numCardsRemaining();
+                final List<Square> set = board.findSet();
+                final int left;
+                if (set.isEmpty()) {
+                    board.vote(PLAYER);
+                    added += board.getNumRows();
+                    left = onBoard + board.getNumRows();
+                } else {
+                    board.declareSet(PLAYER);
+                    for (Square square: set) {
+                        try {
+                            board.pickCard(square, PLAYER);
+                        } catch (InterruptedException ie) {
+                            throw new AssertionError("picking a card never blocks", ie);
+                        }
+                    }
+                    sets += 1;
+                    // the picked cards are replaced, unless the deck is empty or the board is wider than usual
+                    left = remaining == 0 || width > attributes ? onBoard - set.size() : onBoard;
+                }
+
+                if (board.numPlayers() > 0) {
+                    columns = Math.max(columns, board.getNumCols());
+                    continue;
+                }
+                // the deck ran out with no Set left, so the Board dealt a new game and dropped its players
+                columns = Math.max(columns, left / board.getNumRows());
+                setsFound[sets] += 1;
+                cardsAdded[added] += 1;
+                widest[columns] += 1;
+                leftOver[left] += 1;
+                game += 1;
+                board.addPlayer(PLAYER);
+                sets = 0;
+                added = 0;
+                columns = board.getNumCols();
+            }
+        }
+
+        void merge(Simulation that) {
+            for (int value=0; value<setsFound.length; value++) {
+                setsFound[value] += that.setsFound[value];
+                cardsAdded[value] += that.cardsAdded[value];
+                widest[value] += that.widest[value];
+                leftOver[value] += that.leftOver[value];
+            }
+        }
     }
 }
@@ -0,0 +1,263 @@
+package setgame;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel which schedules the timeouts of any number of boards on a single thread.
+ *
+ * <p>Time is cut into ticks, and the wheel has a power-of-2 number of slots, each holding a linked
+ * list of the timeouts due in that tick modulo the number of slots, along with how many more turns
+ * of the wheel each must wait. Scheduling and cancelling a timeout take constant time; once per
+ * tick, the wheel's thread hands the due timeouts of one slot to an executor, which runs them, so
+ * a slow or failing timeout never delays the others. Timeouts start up to one tick late.
+ *
+ * <p>Unless the caller gives its own, the executor of a wheel has a fixed number of threads, one
+ * per core and at least 2, so the number of threads stays the same however many boards have
+ * timeouts. A timeout which waits for the lock of a busy board holds up only the timeouts queued
+ * behind it, and only once every thread of the pool is waiting.
+ */
+public class TimingWheel implements Board.TimeoutScheduler, AutoCloseable {
+
+    private static final long TICK_MILLIS = 10;
+    private static final int SLOTS = 512; // one turn of the wheel is about 5 seconds, the usual delay
+    /** Number of threads running the timeouts of a wheel which makes its own pool. */
+    public static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final TimingWheel SHARED = new TimingWheel(TICK_MILLIS, SLOTS, "timing-wheel");
+
+    private final long tickNanos;
+    private final Entry[] slots;
+    private final String name;
+    private final Executor executor;
+    private final boolean ownsExecutor; // whether close() shuts executor down
+    private final long start = System.nanoTime();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final Queue<Entry> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+    private long tick = 0;
+    private volatile boolean closed = false;
+    private volatile Thread worker; // the wheel's thread, once started
+
+    /*
+     * Abstraction function:
+     *    AF(tickNanos, slots, name, executor, ownsExecutor, start, started, scheduled, cancelled, tick,
+     *      closed, worker): a timer
+     *      whose thread, named name, has handed to executor every timeout due in ticks before tick,
+     *      where tick t ends at start + (t+1)*tickNanos nanoseconds; its pending timeouts are those
+     *      in scheduled and those in the list of each slot, which are not cancelled, and which
+     *      will run only if the timer is not closed
+     *
+     * Representation invariant:
+     *    slots.length is a power of 2, and each element of slots is the sentinel of a circular
+     *      doubly linked list of entries
+     *    an entry in the list of slot s is due in a tick t with t % slots.length == s, after
+     *      its rounds more turns of the wheel
+     *
+     * Safety from rep exposure:
+     *    all fields are private, and entries are only returned as Board.Timeouts
+     *
+     * Thread safety argument:
+     *    scheduled and cancelled are threadsafe queues through which other threads hand entries
+     *      to the wheel's thread
+     *    tick, the lists of slots, and the links and rounds of entries are confined to the
+     *      wheel's thread
+     *    the state of each entry is atomic, so exactly one of running and cancelling it succeeds
+     *    executor is threadsafe, and tasks share nothing with the wheel's thread once handed to it
+     *    closed and worker are volatile, so the wheel's thread sees close(), and close() sees the thread
+     */
+
+    /**
+     * @return the timing wheel shared by every board in this process
+     */
+    public static TimingWheel shared() {
+        return SHARED;
+    }
+
+    /**
+     * Makes a timing wheel whose thread starts when it schedules its first timeout, and which runs
+     * its timeouts on a pool of its own, of THREADS daemon threads.
+     * @param tickMillis the length of a tick in milliseconds, and so the precision of the timeouts
+     * @param slots the number of slots, a power of 2
+     * @param name the name of the wheel's thread, and of the threads running its timeouts
+     */
+    public TimingWheel(long tickMillis, int slots, String name) {
+        this(tickMillis, slots, name, Executors.newFixedThreadPool(THREADS, runnable -> {
+            final Thread thread = new Thread(runnable, name + "-task");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * Makes a timing wheel whose thread starts when it schedules its first timeout.
+     * @param tickMillis the length of a tick in milliseconds, and so the precision of the timeouts
+     * @param slots the number of slots, a power of 2
+     * @param name the name of the wheel's thread
+     * @param executor runs the timeouts once they are due; not shut down by close()
+     */
+    public TimingWheel(long tickMillis, int slots, String name, Executor executor) {
+        this(tickMillis, slots, name, executor, false);
+    }
+
+    private TimingWheel(long tickMillis, int slots, String name, Executor executor, boolean ownsExecutor) {
+        if (tickMillis <= 0 || slots <= 0 || Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("invalid timing wheel: " + tickMillis + " ms x " + slots);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.slots = new Entry[slots];
+        for (int i=0; i<slots; i++) {
+            this.slots[i] = new Entry(null, 0);
+        }
+        this.name = name;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    @Override
+    public Board.Timeout schedule(Runnable task, long delayMillis) {
+        final Entry entry = new Entry(task, System.nanoTime() - start + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        scheduled.add(entry);
+        if (started.compareAndSet(false, true)) {
+            final Thread thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        }
+        return entry;
+    }
+
+    /**
+     * Stops the wheel's thread, and shuts down the pool running its timeouts if the wheel made it.
+     * Timeouts not yet handed to the pool never run, including any scheduled later. The shared
+     * wheel is never closed.
+     */
+    @Override
+    public void close() {
+        if (this == SHARED) {
+            throw new UnsupportedOperationException("the shared timing wheel is never closed");
+        }
+        closed = true;
+        final Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            final long deadline = start + (tick + 1)*tickNanos;
+            for (long wait = deadline - System.nanoTime(); wait > 0 && !closed; wait = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(this, wait);
+            }
+            if (closed) {
+                return;
+            }
+            for (Entry entry = scheduled.poll(); entry != null; entry = scheduled.poll()) {
+                if (!entry.isCancelled()) {
+                    place(entry);
+                }
+            }
+            for (Entry entry = cancelled.poll(); entry != null; entry = cancelled.poll()) {
+                entry.unlink();
+            }
+            expire(slots[(int) (tick & (slots.length - 1))]);
+            tick += 1;
+        }
+    }
+
+    private void place(Entry entry) {
+        // an overdue entry is run in the current tick
+        final long due = Math.max(entry.deadline / tickNanos, tick);
+        entry.rounds = (due - tick) / slots.length;
+        final Entry head = slots[(int) (due & (slots.length - 1))];
+        entry.prev = head.prev;
+        entry.next = head;
+        head.prev.next = entry;
+        head.prev = entry;
+    }
+
+    private void expire(Entry head) {
+        Entry entry = head.next;
+        while (entry != head) {
+            final Entry next = entry.next;
+            if (entry.rounds > 0) {
+                entry.rounds -= 1;
+            } else {
+                entry.unlink();
+                if (entry.expire()) {
+                    try {
+                        final Runnable task = entry.task;
+                        executor.execute(() -> run(task));
+                    } catch (Throwable t) { // so the wheel's thread survives, e.g. an executor which refuses the task
+                        t.printStackTrace();
+                    }
+                }
+            }
+            entry = next;
+        }
+    }
+
+    // runs a timeout on a thread of the executor
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * A timeout scheduled on the wheel, and a node of the list of its slot.
+     */
+    private class Entry implements Board.Timeout {
+
+        private static final int PENDING = 0;
+        private static final int EXPIRED = 1;
+        private static final int CANCELLED = 2;
+
+        private final Runnable task;
+        private final long deadline; // in nanoseconds after the wheel's start
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long rounds;
+        private Entry prev = this;
+        private Entry next = this;
+
+        Entry(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                cancelled.add(this);
+            }
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        boolean expire() {
+            return state.compareAndSet(PENDING, EXPIRED);
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+}
@@ -6,14 +6,25 @@ package setgame;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpContext;
@@ -23,6 +34,8 @@ import com.sun.net.httpserver.HttpServer;
 import setgame.web.ExceptionsFilter;
 import setgame.web.HeadersFilter;
 import setgame.web.LogFilter;
+import setgame.web.MetricsFilter;
+import setgame.web.RequestLog;
 
 /**
  * HTTP web game server.
@@ -35,15 +48,52 @@ public class WebServer {
     private static final int ERROR_CODE = 404;
     private static final int SUCCESS_CODE = 200;
     
+    /** Response header giving the version of the board shown, to pass to /watch/player?since=version. */
+    public static final String VERSION_HEADER = "Board-Version";
+    
+    // the modifier which replaces "up" on the declare line of the declarer's responses
+    private static final byte[] MY = "my".getBytes(UTF_8);
+    
+    /** Milliseconds between keep-alive comments on an idle /events/player stream. */
+    public static final long HEARTBEAT_MILLIS = 15_000;
+    
+    // the player shown replays: not a valid player ID, so never the declarer
+    private static final String SPECTATOR = "/";
+    
+    // the number of games whose replayers are kept, so each replay reads only what was logged since the last
+    private static final int REPLAYERS = 16;
+    
+    /** System property which, when "true", makes the server handle each request on a virtual thread. */
+    public static final String VIRTUAL_THREADS = "setgame.virtualThreads";
+    
+    // the routes served outside /room/, and under /room/id/, by which request latencies are labelled
+    private static final List<String> ROUTES = List.of("look", "declare", "pick", "add", "scores", "watch",
+            "events", "rank", "hint", "replay", "room", "metrics");
+    private static final List<String> ROOM_ROUTES = List.of("create", "close", "look", "declare", "pick", "add",
+            "scores", "watch", "events", "hint", "rank");
+    
+    private static final Metrics.Gauge WATCHES = Metrics.shared().gauge("setgame_active_watches",
+            "Requests to /watch waiting for the board to change");
+    private static final Metrics.Gauge EVENT_STREAMS = Metrics.shared().gauge("setgame_active_event_streams",
+            "Open /events streams");
+    
     private final HttpServer server;
-    private final Board board;
+    private final GameRegistry registry;
+    private final GameRegistry.Room defaultRoom; // the room served by the routes outside /room/
+    private final RequestLog requestLog;
+    private final Map<String, Replayer> replayers = new LinkedHashMap<>(REPLAYERS, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Replayer> eldest) {
+            return size() > REPLAYERS;
+        }
+    }; // the replayers of the games replayed most recently, by game ID; guarded by itself
     
     // TODO update this if we want to be thorough
     // TODO DRY out this code
     // TODO might not be threadsafe, interleaving between actions and calls to boardResponse()
     /* Abstraction function:
-     *    AF(server, board): a game of Memory Scramble serviced by server and with a current
-     *        game state represented by board
+     *    AF(server, registry, defaultRoom, requestLog, replayers): games of Set serviced by server, one
+     *        played in defaultRoom and one in each room of registry, whose requests are logged to
+     *        requestLog, and of which replayers holds those recently replayed from the event log
      *        
      * Representation invariant:
      *    true
@@ -53,11 +103,12 @@ public class WebServer {
      *    all methods return immutable values or void
      * 
      * Thread safety argument:
-     *    all fields are private and threadsafe
-     *    boardResponse uses a method guaranteed to return a consistent report of the 
-     *      current states of all squares on the Board, and which are held by the player
+     *    all fields are private and threadsafe, except replayers, which is only accessed while
+     *      holding its lock, and holds threadsafe Replayers
+     *    boardResponse and scoreResponse render a single immutable snapshot of the Board, so
+     *      they report a consistent state without locking the Board
      *    all handling methods can be called concurrently, since the HttpServer uses
-     *      multiple threads to handle this, and the board is safe for concurrency 
+     *      multiple threads to handle this, and the boards and registry are safe for concurrency 
      */
     
     /**
@@ -68,16 +119,40 @@ public class WebServer {
      * @throws IOException if an error occurs starting the server
      */
     public WebServer(Board board, int port) throws IOException {
+        this(board, null, port);
+    }
+    
+    /**
+     * Make a new web game server using board that listens for connections on port, and which
+     * applies every change to the board as a command on the game's event loop.
+     * 
+     * @param board shared game board
+     * @param loop event loop on which the board is changed, or null to change it directly
+     * @param port server port number
+     * @throws IOException if an error occurs starting the server
+     */
+    public WebServer(Board board, GameLoop loop, int port) throws IOException {
+        this(new GameRegistry(board.getAttributes(), loop != null), board, loop, port);
+    }
+    
+    /**
+     * Make a new web game server using board that listens for connections on port, which also
+     * serves the rooms of registry under /room/ID/.
+     * 
+     * @param registry rooms to serve, to which more can be added by clients
+     * @param board shared game board of the routes outside /room/
+     * @param loop event loop on which board is changed, or null to change it directly
+     * @param port server port number
+     * @throws IOException if an error occurs starting the server
+     */
+    public WebServer(GameRegistry registry, Board board, GameLoop loop, int port) throws IOException {
         this.server = HttpServer.create(new InetSocketAddress(port), 0);
-        this.board = board;
-        board.addBoardListener(() -> {
-           synchronized (board) {
-               board.notifyAll();
-           }
-        });
+        this.registry = registry;
+        this.defaultRoom = new GameRegistry.Room("", board, loop);
+        this.requestLog = requestLog();
         
         // handle concurrent requests with multiple threads
-        server.setExecutor(Executors.newCachedThreadPool());
+        server.setExecutor(requestExecutor());
         
         HeadersFilter headers = new HeadersFilter(Map.of(
                 // allow requests from web pages hosted anywhere
@@ -85,38 +160,140 @@ public class WebServer {
                 // all responses will be plain-text UTF-8
                 "Content-Type", "text/plain; charset=utf-8"
                 ));
-        List<Filter> filters = List.of(new ExceptionsFilter(), new LogFilter(), headers);
+        MetricsFilter metrics = new MetricsFilter(Metrics.shared(), ROUTES, ROOM_ROUTES);
+        List<Filter> filters = List.of(new ExceptionsFilter(requestLog), new LogFilter(requestLog), metrics, headers);
         
         // handle requests for /look/player
-        HttpContext look = server.createContext("/look/", this::handleLook);
+        HttpContext look = server.createContext("/look/",
+                exchange -> handleLook(exchange, defaultRoom, parameters(exchange)));
         look.getFilters().addAll(filters);
         
         // handle requests for /declare/player
-        HttpContext declare = server.createContext("/declare/", this::handleDeclare);
+        HttpContext declare = server.createContext("/declare/",
+                exchange -> handleDeclare(exchange, defaultRoom, parameters(exchange)));
         declare.getFilters().addAll(filters);
         
         // handle requests for /pick/player/row,column
-        HttpContext pick = server.createContext("/pick/", this::handlePick);
+        HttpContext pick = server.createContext("/pick/",
+                exchange -> handlePick(exchange, defaultRoom, parameters(exchange)));
         pick.getFilters().addAll(filters);
         
         // handle requests for /add/player
-        HttpContext add = server.createContext("/add/", this::handleAdd);
+        HttpContext add = server.createContext("/add/",
+                exchange -> handleAdd(exchange, defaultRoom, parameters(exchange)));
         add.getFilters().addAll(filters);
         
         // handle requests for /scores
-        HttpContext scores = server.createContext("/scores", this::handleScores);
+        HttpContext scores = server.createContext("/scores",
+                exchange -> handleScores(exchange, defaultRoom, parameters(exchange)));
         scores.getFilters().addAll(filters);
 
         // handle requests for /watch/player
-        HttpContext watch = server.createContext("/watch/", this::handleWatch);
+        HttpContext watch = server.createContext("/watch/",
+                exchange -> handleWatch(exchange, defaultRoom, parameters(exchange)));
         watch.getFilters().addAll(filters);
         
+        // handle requests for /events/player
+        HttpContext events = server.createContext("/events/",
+                exchange -> handleEvents(exchange, defaultRoom, parameters(exchange)));
+        events.getFilters().addAll(filters);
+        
+        // handle requests for /rank/player
+        HttpContext rank = server.createContext("/rank/",
+                exchange -> handleRank(exchange, defaultRoom, parameters(exchange)));
+        rank.getFilters().addAll(filters);
+        
+        // handle requests for /hint/player
+        HttpContext hint = server.createContext("/hint/",
+                exchange -> handleHint(exchange, defaultRoom, parameters(exchange)));
+        hint.getFilters().addAll(filters);
+        
+        // handle requests for /replay/ and /replay/id
+        HttpContext replay = server.createContext("/replay/",
+                exchange -> handleReplay(exchange, parameters(exchange)));
+        replay.getFilters().addAll(filters);
+        
+        // handle requests for /room/id/create, /room/id/close, and the routes above under /room/id/
+        HttpContext room = server.createContext("/room/", this::handleRoom);
+        room.getFilters().addAll(filters);
+        
+        // handle requests for /metrics
+        HttpContext metricsContext = server.createContext("/metrics",
+                exchange -> handleMetrics(exchange, parameters(exchange)));
+        metricsContext.getFilters().addAll(filters);
+        
         checkRep();
     }
     
     private void checkRep() {
         assert server != null;
-        assert board != null;
+        assert registry != null;
+        assert defaultRoom != null;
+        assert requestLog != null;
+    }
+    
+    /**
+     * Makes the log of requests: to the file named by the system property RequestLog.PROPERTY, or
+     * to System.err if it is not set, of one in every N successful requests, where N is given by
+     * the system property RequestLog.SAMPLE_PROPERTY, or 1 if it is not set.
+     * @return the log
+     * @throws IOException if the file cannot be opened
+     */
+    private static RequestLog requestLog() throws IOException {
+        final String file = System.getProperty(RequestLog.PROPERTY);
+        return new RequestLog(file == null ? null : Path.of(file), Integer.getInteger(RequestLog.SAMPLE_PROPERTY, 1));
+    }
+    
+    /**
+     * Makes the executor which runs the handlers of requests: one virtual thread per request if the
+     * system property VIRTUAL_THREADS asks for it and the JVM supports virtual threads, and otherwise
+     * a pool of platform threads.
+     * @return the executor
+     */
+    private static ExecutorService requestExecutor() {
+        if (Boolean.getBoolean(VIRTUAL_THREADS)) {
+            try {
+                // looked up reflectively, so the server still builds and runs on JVMs without virtual threads
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException roe) {
+                System.err.println("Virtual threads are not available, using platform threads");
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+    
+    /**
+     * Finds the part of the requested path after the path of the handler's context, without the
+     * BinaryFormat.SUFFIX which asks for a binary response.
+     * @param exchange the HttpExchange used
+     * @return the parameters of the request
+     */
+    private static String parameters(HttpExchange exchange) {
+        // if you want to know the requested path:
+        final String path = exchange.getRequestURI().getPath();
+        
+        // it will always start with the base path from server.createContext():
+        final String base = exchange.getHttpContext().getPath();
+        assert path.startsWith(base);
+        
+        final String parameters = path.substring(base.length());
+        if (parameters.endsWith(BinaryFormat.SUFFIX)) {
+            return parameters.substring(0, parameters.length() - BinaryFormat.SUFFIX.length());
+        }
+        return parameters;
+    }
+    
+    /**
+     * @param exchange the HttpExchange used
+     * @return whether the request asks for a response in BinaryFormat, by the suffix of its route
+     *         or by its Accept header
+     */
+    private static boolean binary(HttpExchange exchange) {
+        if (exchange.getRequestURI().getPath().endsWith(BinaryFormat.SUFFIX)) {
+            return true;
+        }
+        final String accept = exchange.getRequestHeaders().getFirst("Accept");
+        return accept != null && accept.contains(BinaryFormat.MEDIA_TYPE);
     }
     
     /**
@@ -135,11 +312,30 @@ public class WebServer {
     }
     
     /**
-     * Stop this server. Once stopped, this server cannot be restarted.
+     * Stop this server, and write out its log of requests. Once stopped, this server cannot be restarted.
      */
     public void stop() {
         System.err.println("Server will stop");
         server.stop(0);
+        requestLog.close();
+    }
+    
+    /**
+     * Applies a change to the board of a room which cannot be interrupted, as in Room.apply().
+     * @param room the room
+     * @param change the change
+     * @throws IOException if interrupted while waiting for the change
+     */
+    private static void change(GameRegistry.Room room, Runnable change) throws IOException {
+        try {
+            room.apply(() -> {
+                change.run();
+                return null;
+            });
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while changing the board");
+        }
     }
     
     /**
@@ -147,88 +343,339 @@ public class WebServer {
      * @param playerID the unique ID of the player
      * @return the String representation
      */
-    private String boardResponse(String playerID) {
-        synchronized (board) {
-            List<Square> squaresHeld = board.getSquaresHeld();
-            String declarer = board.getDeclarer();
-            
-            String response = board.getNumRows()+"x"+board.getNumCols()+"\n";
-            if (declarer.equals("")) {
-                response += "none\n";
+    String boardResponse(String playerID) {
+        return boardResponse(defaultRoom.board().snapshot(), playerID);
+    }
+    
+    /**
+     * Sends a successful response showing a snapshot of the board, whose version is sent in the
+     * VERSION_HEADER header, and closes the exchange. The board is rendered once per snapshot and
+     * shared by every player, except for the declare line of the declarer, which is patched in as
+     * the response is written. If the request asks for it, the board is sent in BinaryFormat.
+     * @param exchange the HttpExchange used
+     * @param snapshot a snapshot of the board
+     * @param base an earlier snapshot of the board which the client already has, to show only the
+     *             changes since it, or null to show the whole board; ignored in BinaryFormat
+     * @param playerID the unique ID of the player
+     * @throws IOException
+     */
+    private static void sendBoard(HttpExchange exchange, BoardSnapshot snapshot, BoardSnapshot base,
+            String playerID) throws IOException {
+        exchange.getResponseHeaders().set(VERSION_HEADER, Long.toString(snapshot.version()));
+        exchange.getResponseHeaders().set("Vary", "Accept");
+        final OutputStream body;
+        if (binary(exchange)) {
+            final byte[] rendering = snapshot.binaryRendering();
+            exchange.getResponseHeaders().set("Content-Type", BinaryFormat.MEDIA_TYPE);
+            exchange.sendResponseHeaders(SUCCESS_CODE, rendering.length);
+            body = exchange.getResponseBody();
+            body.write(rendering, 0, BinaryFormat.DECLARE_INDEX);
+            body.write(BinaryFormat.declare(snapshot, playerID));
+            body.write(rendering, BinaryFormat.DECLARE_INDEX + 1, rendering.length - BinaryFormat.DECLARE_INDEX - 1);
+        } else if (base != null && base.version() <= snapshot.version()) {
+            final byte[] delta = deltaResponse(base, snapshot, playerID).getBytes(UTF_8);
+            exchange.sendResponseHeaders(SUCCESS_CODE, delta.length);
+            body = exchange.getResponseBody();
+            body.write(delta);
+        } else {
+            final byte[] rendering = snapshot.rendering();
+            // the length is known, so the response is sent with a Content-Length rather than chunked
+            exchange.sendResponseHeaders(SUCCESS_CODE, rendering.length);
+            body = exchange.getResponseBody();
+            if (snapshot.getDeclarer().equals(playerID)) {
+                final int declare = snapshot.declareIndex();
+                body.write(rendering, 0, declare);
+                body.write(MY);
+                body.write(rendering, declare + MY.length, rendering.length - declare - MY.length);
             } else {
-              final String modifier;
-              if (declarer.equals(playerID)) {
-                  modifier = "my ";
-              } else {
-                  modifier = "up ";
-              }
-              final long millis = board.getTimeout();
-              response += modifier + millis + "\n"; 
+                body.write(rendering);
             }
-            for (int row=0; row<board.getNumRows(); row++) {
-                for (int col=0; col<board.getNumCols(); col++) {
-                    final String modifier;
-                    if (squaresHeld.contains(new Square(row, col))) {
-                        modifier = "my ";
-                    } else {
-                        modifier = "up ";
-                    }
-                    
-                    Square sq = new Square(row, col);
-                    response += modifier + board.getCard(sq).toString() + "\n";             
-                }
+        }
+        body.flush();
+        exchange.close();
+    }
+    
+    /**
+     * Parses the query of a request, whose parameters must all be nonnegative numbers, such as
+     * versions of the board.
+     * @param exchange the HttpExchange used
+     * @param names the names of the parameters allowed
+     * @return a map from the name of each parameter given to its value, or null if the query names
+     *         another parameter or a value is not a number
+     */
+    private static Map<String, Long> numbers(HttpExchange exchange, Set<String> names) {
+        final Map<String, Long> versions = new HashMap<>();
+        final String query = exchange.getRequestURI().getQuery();
+        if (query == null || query.isEmpty()) {
+            return versions;
+        }
+        for (String parameter: query.split("&")) {
+            final String[] nameAndValue = parameter.split("=", 2);
+            if (nameAndValue.length != 2 || !names.contains(nameAndValue[0])
+                    || !nameAndValue[1].matches("[0-9]{1,18}")) {
+                return null;
             }
+            versions.put(nameAndValue[0], Long.parseLong(nameAndValue[1]));
+        }
+        return versions;
+    }
+    
+    /**
+     * Finds the snapshot which a request asked to be sent the changes since.
+     * @param board the board
+     * @param versions the parsed query of the request
+     * @return the snapshot of the "delta" version, or null if none was asked for or it is no
+     *         longer kept by the board, in which case the whole board is sent
+     */
+    private static BoardSnapshot deltaBase(Board board, Map<String, Long> versions) {
+        final Long delta = versions.get("delta");
+        return delta == null ? null : board.snapshot(delta);
+    }
+    
+    /**
+     * Converts a snapshot of the board into the proper String representation to send as an HTTP response.
+     * @param snapshot a snapshot of the board
+     * @param playerID the unique ID of the player
+     * @return the String representation
+     */
+    static String boardResponse(BoardSnapshot snapshot, String playerID) {
+        final String response = new String(snapshot.rendering(), UTF_8);
+        if (!snapshot.getDeclarer().equals(playerID)) {
             return response;
         }
+        final int declare = snapshot.declareIndex();
+        return response.substring(0, declare) + "my" + response.substring(declare + MY.length);
+    }
+    
+    /**
+     * Sends a successful response with the scores of players, in BinaryFormat if the request asks
+     * for it, and closes the exchange.
+     * @param exchange the HttpExchange used
+     * @param scores the players and their scores, in the order to send them
+     * @param votes the players who voted to add cards
+     * @throws IOException
+     */
+    private static void sendScores(HttpExchange exchange, Collection<Map.Entry<String, Integer>> scores,
+            Set<String> votes) throws IOException {
+        exchange.getResponseHeaders().set("Vary", "Accept");
+        final byte[] response;
+        if (binary(exchange)) {
+            exchange.getResponseHeaders().set("Content-Type", BinaryFormat.MEDIA_TYPE);
+            response = BinaryFormat.scores(scores, votes);
+        } else {
+            response = scoreResponse(scores, votes).getBytes(UTF_8);
+        }
+        exchange.sendResponseHeaders(SUCCESS_CODE, response.length);
+        final OutputStream body = exchange.getResponseBody();
+        body.write(response);
+        body.flush();
+        exchange.close();
+    }
+    
+    /**
+     * Converts the changes between two snapshots of the board into the String representation of a
+     * delta, as specified by the API: the version of the older snapshot, then the dimensions if they
+     * changed, the declare state if it changed, and each square whose spot changed, with the spots of
+     * the newer snapshot.
+     * @param base the older snapshot
+     * @param snapshot the newer snapshot
+     * @param playerID the unique ID of the player
+     * @return the String representation
+     */
+    static String deltaResponse(BoardSnapshot base, BoardSnapshot snapshot, String playerID) {
+        StringBuilder response = new StringBuilder();
+        response.append("delta ").append(base.version()).append("\n");
+        final boolean resized = base.getNumRows() != snapshot.getNumRows() || base.getNumCols() != snapshot.getNumCols();
+        if (resized) {
+            response.append(snapshot.getNumRows()).append("x").append(snapshot.getNumCols()).append("\n");
+        }
+        final String declare = declareResponse(snapshot, playerID);
+        if (!declare.equals(declareResponse(base, playerID))) {
+            response.append(declare).append("\n");
+        }
+        final List<Square> squaresHeld = snapshot.getSquaresHeld();
+        final List<Square> baseSquaresHeld = base.getSquaresHeld();
+        for (int row=0; row<snapshot.getNumRows(); row++) {
+            for (int col=0; col<snapshot.getNumCols(); col++) {
+                final Square square = new Square(row, col);
+                final Card card = snapshot.getCard(row, col);
+                final boolean held = squaresHeld.contains(square);
+                // after a resize the squares move, so every square is sent
+                if (resized || !card.equals(base.getCard(row, col)) || held != baseSquaresHeld.contains(square)) {
+                    response.append(row).append(",").append(col).append(" ")
+                            .append(held ? "my " : "up ").append(card).append("\n");
+                }
+            }
+        }
+        return response.toString();
+    }
+    
+    /**
+     * @param snapshot a snapshot of the board
+     * @param playerID the unique ID of the player
+     * @return the DECLARE line of the board as seen by the player, without its newline
+     */
+    private static String declareResponse(BoardSnapshot snapshot, String playerID) {
+        final String declarer = snapshot.getDeclarer();
+        if (declarer.equals("")) {
+            return "none";
+        }
+        return (declarer.equals(playerID) ? "my " : "up ") + snapshot.getTimeout();
     }
     
     /**
-     * Outputs the scores and votes of the current players, as specified by the API.
+     * Outputs the scores and votes of the players in a snapshot of the board, as specified by the API.
+     * @param snapshot a snapshot of the board
      * @return the String representation
      */
-    private String scoreResponse() {
-        Set<String> votes = board.getVotes();
-        Map<String, Integer> scores = board.getScores();
-        String scoreString = "";
-        for (String player: scores.keySet()) {
+    static String scoreResponse(BoardSnapshot snapshot) {
+        return scoreResponse(snapshot.getScores().entrySet(), snapshot.getVotes());
+    }
+    
+    /**
+     * Outputs the scores and votes of players, as specified by the API.
+     * @param scores the players and their scores, in the order to output them
+     * @param votes the players who voted to add cards
+     * @return the String representation
+     */
+    static String scoreResponse(Collection<Map.Entry<String, Integer>> scores, Set<String> votes) {
+        StringBuilder scoreString = new StringBuilder();
+        for (Map.Entry<String, Integer> score: scores) {
+            final String player = score.getKey();
             String vote;
             if (votes.contains(player)) {
                 vote = "add";
             } else {
                 vote = "none";
             }
-            scoreString += player + " " + scores.get(player) + " " + vote + "\n";
+            scoreString.append(player).append(" ").append(score.getValue()).append(" ").append(vote).append("\n");
         }
-        return scoreString;
+        return scoreString.toString();
     }
     
     /**
-     * Handles the /look/player route. Sends a response showing the board, formatted as described 
-     * in the grammar in the API, or reports "Your player name ID contains non-alphanumeric characters." 
-     * if the playerID is not alphanumeric.
+     * Writes a complete response and closes the exchange.
      * @param exchange the HttpExchange used
+     * @param code the HTTP status code
+     * @param response the body of the response
      * @throws IOException
      */
-    private void handleLook(HttpExchange exchange) throws IOException {
-        // if you want to know the requested path:
-        final String path = exchange.getRequestURI().getPath();
+    private static void respond(HttpExchange exchange, int code, String response) throws IOException {
+        exchange.sendResponseHeaders(code, 0);
+        OutputStream body = exchange.getResponseBody();
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(body, UTF_8), true);
+        out.print(response);
+        out.flush();
+        exchange.close();
+    }
+    
+    /**
+     * Handles the /room/id/... routes. /room/id/create and /room/id/create/attributes create a room
+     * and /room/id/close closes it, responding with ROOM; every other route of the API is served on
+     * the board of the room under /room/id/, e.g. /room/id/look/player. Reports "No such room." if the
+     * room does not exist, and "Your requested room route was not valid." if the request is malformed.
+     * @param exchange the HttpExchange used
+     * @throws IOException
+     */
+    private void handleRoom(HttpExchange exchange) throws IOException {
+        final String[] parts = parameters(exchange).split("/", 3);
+        if (parts.length < 2 || !parts[0].matches("\\w+")) {
+            respond(exchange, ERROR_CODE, "Your requested room route was not valid.");
+            return;
+        }
+        final String id = parts[0];
+        final String route = parts[1];
+        final String rest = parts.length > 2 ? parts[2] : "";
         
-        // it will always start with the base path from server.createContext():
-        final String base = exchange.getHttpContext().getPath();
-        assert path.startsWith(base);
+        if (route.equals("create")) {
+            handleCreate(exchange, id, rest);
+            return;
+        } else if (route.equals("close") && rest.isEmpty()) {
+            handleClose(exchange, id);
+            return;
+        }
         
-        final String player = path.substring(base.length());
+        final GameRegistry.Room room = registry.get(id);
+        if (room == null) {
+            respond(exchange, ERROR_CODE, "No such room.");
+            return;
+        }
+        switch (route) {
+        case "look": handleLook(exchange, room, rest); break;
+        case "declare": handleDeclare(exchange, room, rest); break;
+        case "pick": handlePick(exchange, room, rest); break;
+        case "add": handleAdd(exchange, room, rest); break;
+        case "scores": handleScores(exchange, room, rest); break;
+        case "watch": handleWatch(exchange, room, rest); break;
+        case "events": handleEvents(exchange, room, rest); break;
+        case "hint": handleHint(exchange, room, rest); break;
+        case "rank": handleRank(exchange, room, rest); break;
+        default: respond(exchange, ERROR_CODE, "Your requested room route was not valid.");
+        }
+    }
+    
+    /**
+     * Handles the /room/id/create and /room/id/create/attributes routes, creating a room with a newly
+     * dealt board.
+     * @param exchange the HttpExchange used
+     * @param id the room ID
+     * @param attributes the number of attributes requested, or "" for the registry's default
+     * @throws IOException
+     */
+    private void handleCreate(HttpExchange exchange, String id, String attributes) throws IOException {
+        if (!attributes.matches("[1-" + SetMath.MAX_ATTRIBUTES + "]?")) {
+            respond(exchange, ERROR_CODE, "Your requested number of attributes is not supported.");
+            return;
+        }
+        final GameRegistry.Room room = attributes.isEmpty() ? registry.create(id)
+                : registry.create(id, Integer.parseInt(attributes));
+        if (room == null) {
+            respond(exchange, ERROR_CODE, "That room already exists.");
+            return;
+        }
+        respond(exchange, SUCCESS_CODE, "created " + id + "\n");
+    }
+    
+    /**
+     * Handles the /room/id/close route, removing the room and waking the players watching it.
+     * @param exchange the HttpExchange used
+     * @param id the room ID
+     * @throws IOException
+     */
+    private void handleClose(HttpExchange exchange, String id) throws IOException {
+        final GameRegistry.Room room = registry.close(id);
+        if (room == null) {
+            respond(exchange, ERROR_CODE, "No such room.");
+            return;
+        }
+        respond(exchange, SUCCESS_CODE, "closed " + id + "\n");
+    }
+    
+    /**
+     * Handles the /look/player route. Sends a response showing the board, formatted as described 
+     * in the grammar in the API, or only its changes since the version given by ?delta=version,
+     * or reports "Your player name ID contains non-alphanumeric characters." 
+     * if the playerID is not alphanumeric.
+     * @param exchange the HttpExchange used
+     * @param room the room whose board is served
+     * @param player the player ID requested
+     * @throws IOException
+     */
+    private void handleLook(HttpExchange exchange, GameRegistry.Room room, String player) throws IOException {
+        final Board board = room.board();
+        final Map<String, Long> versions = numbers(exchange, Set.of("delta"));
         
         final String response;
-        if (player.matches("\\w+")) {
-            // if the request is valid, respond with HTTP code 200 to indicate success
-            // - response length 0 means a response will be written
-            // - you must call this method before calling getResponseBody()
-            exchange.sendResponseHeaders(SUCCESS_CODE, 0);
-            if (!board.isPlayer(player)) {
-                board.addPlayer(player);
+        if (versions == null) {
+            exchange.sendResponseHeaders(ERROR_CODE, 0);
+            response = "Your requested version was not valid.";
+        } else if (player.matches("\\w+")) {
+            if (!board.snapshot().isPlayer(player)) {
+                change(room, () -> board.addPlayer(player));
             }
-            response = boardResponse(player);
+            // if the request is valid, respond with HTTP code 200 to indicate success
+            sendBoard(exchange, board.snapshot(), deltaBase(board, versions), player);
+            return;
         } else {
             // otherwise, respond with HTTP code 404 to indicate an error
             exchange.sendResponseHeaders(ERROR_CODE, 0);
@@ -247,26 +694,27 @@ public class WebServer {
     }
     
     /**
-     * Handles the /declare/player route.
+     * Handles the /declare/player route, which also takes ?delta=version as for /look/player.
      * @param exchange the HttpExchange used
+     * @param room the room whose board is served
+     * @param playerID the player ID requested
      * @throws IOException
      */
-    private void handleDeclare(HttpExchange exchange) throws IOException {
-        final String path = exchange.getRequestURI().getPath();
-        
-        final String base = exchange.getHttpContext().getPath();
-        assert path.startsWith(base);
-        
-        final String playerID = path.substring(base.length());
+    private void handleDeclare(HttpExchange exchange, GameRegistry.Room room, String playerID) throws IOException {
+        final Board board = room.board();
+        final Map<String, Long> versions = numbers(exchange, Set.of("delta"));
         
         final String response;
-        if (playerID.matches("\\w+")) {
-            exchange.sendResponseHeaders(SUCCESS_CODE, 0);
-            if (!board.isPlayer(playerID)) {
-                board.addPlayer(playerID);
+        if (versions == null) {
+            exchange.sendResponseHeaders(ERROR_CODE, 0);
+            response = "Your requested version was not valid.";
+        } else if (playerID.matches("\\w+")) {
+            if (!board.snapshot().isPlayer(playerID)) {
+                change(room, () -> board.addPlayer(playerID));
             }
-            board.declareSet(playerID);
-            response = boardResponse(playerID);
+            change(room, () -> board.declareSet(playerID));
+            sendBoard(exchange, board.snapshot(), deltaBase(board, versions), playerID);
+            return;
         } else {
             exchange.sendResponseHeaders(ERROR_CODE, 0);
             response = "Your player name ID contains non-alphanumeric characters.";
@@ -281,40 +729,50 @@ public class WebServer {
     }
     
     /**
-     * Handles the /pick/player/row,column route. Attempts to flip the card at (row, column) for the given player.
-     * Sends a response showing the board, formatted as described in the API, or reports 
+     * Handles the /pick/player/row,column route, and the /pick/player/row,column;row,column;row,column
+     * route which makes up to three picks at once as a single change to the board.
+     * Attempts to flip the card at (row, column) for the given player.
+     * Sends a response showing the board, formatted as described in the API, or only its changes
+     * since the version given by ?delta=version, or reports 
      * "Your requested pick was not valid." if the request was not formatted correctly or specified an out-of-bounds
      * square, or reports "Your requested flip was interrupted." in case of an InterruptedException.
      * @param exchange the HttpExchange used
+     * @param room the room whose board is served
+     * @param parameters the player ID, row and column requested
      * @throws IOException
      */
-    private void handlePick(HttpExchange exchange) throws IOException {
-        final String path = exchange.getRequestURI().getPath();
-        
-        final String base = exchange.getHttpContext().getPath();
-        assert path.startsWith(base);
-        
-        final String parameters = path.substring(base.length());
+    private void handlePick(HttpExchange exchange, GameRegistry.Room room, String parameters) throws IOException {
+        final Board board = room.board();
+        final Map<String, Long> versions = numbers(exchange, Set.of("delta"));
         
         String response;
-        if (parameters.matches("\\w+/[0-9]+,[0-9]+")) {
-            final String[] splitParameters = parameters.split("/|,");
+        if (versions == null) {
+            exchange.sendResponseHeaders(ERROR_CODE, 0);
+            response = "Your requested version was not valid.";
+        } else if (parameters.matches("\\w+/[0-9]{1,9},[0-9]{1,9}(;[0-9]{1,9},[0-9]{1,9}){0,2}")) {
+            final String[] splitParameters = parameters.split("/");
             final String playerID = splitParameters[0];
-            final Square square = new Square(Integer.valueOf(splitParameters[1]),
-                    Integer.valueOf(splitParameters[2]));
+            final List<Square> squares = new ArrayList<>();
+            for (String pick: splitParameters[1].split(";")) {
+                final String[] rowAndColumn = pick.split(",");
+                squares.add(new Square(Integer.valueOf(rowAndColumn[0]), Integer.valueOf(rowAndColumn[1])));
+            }
             
-            if (!board.isPlayer(playerID)) {
-                board.addPlayer(playerID);
+            if (!board.snapshot().isPlayer(playerID)) {
+                change(room, () -> board.addPlayer(playerID));
             }
             
             try {
-                board.pickCard(square, playerID);
-                exchange.sendResponseHeaders(SUCCESS_CODE, 0);
-                response = boardResponse(playerID);
+                room.apply(() -> {
+                    board.pickCards(squares, playerID);
+                    return null;
+                });
+                sendBoard(exchange, board.snapshot(), deltaBase(board, versions), playerID);
+                return;
             } catch (InterruptedException e) {
                 exchange.sendResponseHeaders(ERROR_CODE, 0);
                 response = "Your requested pick was interrupted.";
-            } catch (NullPointerException npe) {
+            } catch (IllegalArgumentException | NullPointerException e) {
                 exchange.sendResponseHeaders(ERROR_CODE, 0);
                 response = "Your requested pick was not valid.";
             }
@@ -334,25 +792,23 @@ public class WebServer {
     /**
      * Handles the /add/player route.
      * @param exchange the HttpExchange used
+     * @param room the room whose board is served
+     * @param playerID the player ID requested
      * @throws IOException
      */
-    private void handleAdd(HttpExchange exchange) throws IOException {
-        final String path = exchange.getRequestURI().getPath();
-        
-        final String base = exchange.getHttpContext().getPath();
-        assert path.startsWith(base);
-        
-        final String playerID = path.substring(base.length());
+    private void handleAdd(HttpExchange exchange, GameRegistry.Room room, String playerID) throws IOException {
+        final Board board = room.board();
         
         final String response;
         if (playerID.matches("\\w+")) {
-            exchange.sendResponseHeaders(SUCCESS_CODE, 0);
-            if (!board.isPlayer(playerID)) {
-                board.addPlayer(playerID);
+            if (!board.snapshot().isPlayer(playerID)) {
+                change(room, () -> board.addPlayer(playerID));
             }
-            board.vote(playerID);
+            change(room, () -> board.vote(playerID));
             
-            response = scoreResponse();
+            final BoardSnapshot snapshot = board.snapshot();
+            sendScores(exchange, snapshot.getScores().entrySet(), snapshot.getVotes());
+            return;
         } else {
             exchange.sendResponseHeaders(ERROR_CODE, 0);
             response = "Your player name ID contains non-alphanumeric characters.";
@@ -368,24 +824,30 @@ public class WebServer {
     
     /**
      * Handles the /scores route. Returns a list of the current scores of each player in the game,
-     * formatted as specified in the API, or reports that "There should be no additional 
+     * formatted as specified in the API, or with ?top=n only the n players with the highest scores,
+     * ranked, or reports that "There should be no additional 
      * characters following /scores in the request." if the GET request contains any extraneous information
-     * beyond the /scores path.
+     * beyond the /scores path. The scores, ranked or not, and the votes all come from the latest
+     * snapshot of the board, so a response shows a single version of the board.
      * @param exchange the HttpExchange used
+     * @param room the room whose board is served
+     * @param params the rest of the requested path, which should be empty
      * @throws IOException
      */
-    private void handleScores(HttpExchange exchange) throws IOException {
-        final String path = exchange.getRequestURI().getPath();
-        
-        final String base = exchange.getHttpContext().getPath();
-        assert path.startsWith(base);
-        
-        final String params = path.substring(base.length());
+    private void handleScores(HttpExchange exchange, GameRegistry.Room room, String params) throws IOException {
+        final Board board = room.board();
+        final Map<String, Long> query = numbers(exchange, Set.of("top"));
         
         final String response;
-        if (params.length() == 0) {
-            exchange.sendResponseHeaders(SUCCESS_CODE, 0);
-            response = scoreResponse();
+        if (params.length() == 0 && query != null) {
+            final BoardSnapshot snapshot = board.snapshot();
+            final Long top = query.get("top");
+            if (top == null) {
+                sendScores(exchange, snapshot.getScores().entrySet(), snapshot.getVotes());
+            } else {
+                sendScores(exchange, snapshot.getTopScores((int) Math.min(top, Integer.MAX_VALUE)), snapshot.getVotes());
+            }
+            return;
         } else {
             exchange.sendResponseHeaders(ERROR_CODE, 0);
             response = "There should be no additional characters following /scores in the request.";
@@ -400,41 +862,297 @@ public class WebServer {
     }
     
     /**
-     * Handles the /watch/player route.
+     * Handles the /rank/player route. Sends the rank of the player among the players of the game,
+     * where players with equal scores share a rank, or "none" if the player is not playing.
      * @param exchange the HttpExchange used
+     * @param room the room whose board is served
+     * @param playerID the player ID requested
      * @throws IOException
      */
-    private void handleWatch(HttpExchange exchange) throws IOException {
-        final String path = exchange.getRequestURI().getPath();
-        
-        final String base = exchange.getHttpContext().getPath();
-        assert path.startsWith(base);
+    private void handleRank(HttpExchange exchange, GameRegistry.Room room, String playerID) throws IOException {
+        if (!playerID.matches("\\w+")) {
+            respond(exchange, ERROR_CODE, "Your player name ID contains non-alphanumeric characters.");
+            return;
+        }
+        final int rank = room.board().getRank(playerID);
+        respond(exchange, SUCCESS_CODE, (rank == 0 ? "none" : Integer.toString(rank)) + "\n");
+    }
+    
+    /**
+     * Handles the /watch/player and /watch/player?since=version routes. Waits until the board has
+     * changed after the given version, or after the current version if none is given, then sends a
+     * response showing the board as for /look/player, including ?delta=version. Reports "Your requested
+     * version was not valid." if a version is not a number.
+     * @param exchange the HttpExchange used
+     * @param room the room whose board is served
+     * @param player the player ID requested
+     * @throws IOException
+     */
+    private void handleWatch(HttpExchange exchange, GameRegistry.Room room, String player) throws IOException {
+        final Board board = room.board();
         
-        final String player = path.substring(base.length());
+        final Map<String, Long> versions = numbers(exchange, Set.of("since", "delta"));
         
         final String response;
-        if (player.matches("\\w+")) {
-            exchange.sendResponseHeaders(SUCCESS_CODE, 0);
-            if (!board.isPlayer(player)) {
-                board.addPlayer(player);
+        if (versions == null) {
+            exchange.sendResponseHeaders(ERROR_CODE, 0);
+            response = "Your requested version was not valid.";
+        } else if (player.matches("\\w+")) {
+            if (!board.snapshot().isPlayer(player)) {
+                change(room, () -> board.addPlayer(player));
             }
             
-            board.cancelInactivity(player); 
-            synchronized (board) {
+            change(room, () -> board.cancelInactivity(player));
+            // without a version, wait for the next change after this player joined
+            final long since = versions.getOrDefault("since", board.snapshot().version());
+            BoardSnapshot snapshot;
+            WATCHES.increment();
+            try {
+                snapshot = room.awaitVersion(since);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                snapshot = board.snapshot();
+            } finally {
+                WATCHES.decrement();
+            }
+            sendBoard(exchange, snapshot, deltaBase(board, versions), player);
+            change(room, () -> board.scheduleInactivity(player)); // used to remove players if a /watch request isn't sent again within a time limit
+            return;
+        } else {
+            exchange.sendResponseHeaders(ERROR_CODE, 0);
+            response = "Your player name ID may only consist of alphanumeric characters.";
+        }
+        OutputStream body = exchange.getResponseBody();
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(body, UTF_8), true);
+        out.print(response);
+        out.flush();
+        
+        exchange.close();
+    }
+    
+    /**
+     * Handles the /events/player route. Keeps the response open as a stream of Server-Sent Events:
+     * one "board" event showing the board as for /look/player when the stream opens and after each
+     * change to the board, with the board's version as its ID, and a comment every HEARTBEAT_MILLIS
+     * while the board is idle. The stream ends when the client disconnects or the room is closed.
+     * @param exchange the HttpExchange used
+     * @param room the room whose board is served
+     * @param player the player ID requested
+     * @throws IOException
+     */
+    private void handleEvents(HttpExchange exchange, GameRegistry.Room room, String player) throws IOException {
+        final Board board = room.board();
+        
+        if (!player.matches("\\w+")) {
+            respond(exchange, ERROR_CODE, "Your player name ID may only consist of alphanumeric characters.");
+            return;
+        }
+        if (!board.snapshot().isPlayer(player)) {
+            change(room, () -> board.addPlayer(player));
+        }
+        change(room, () -> board.cancelInactivity(player));
+        
+        // the listener is called while the board is locked, so it only marks the board as changed,
+        // and consecutive changes are sent as one event showing the latest board
+        final BlockingQueue<Boolean> changed = new ArrayBlockingQueue<>(1);
+        final Board.BoardListener listener = () -> changed.offer(true);
+        room.addListener(listener);
+        EVENT_STREAMS.increment();
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(SUCCESS_CODE, 0);
+            final OutputStream body = exchange.getResponseBody();
+            long sent = -1;
+            while (!room.isClosed()) {
+                final BoardSnapshot snapshot = board.snapshot();
+                if (snapshot.version() > sent) {
+                    body.write(event(snapshot, player).getBytes(UTF_8));
+                    sent = snapshot.version();
+                }
+                body.flush();
+                if (changed.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS) == null) {
+                    body.write(": heartbeat\n\n".getBytes(UTF_8));
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ioe) {
+            // the client went away; there is no one left to tell
+        } finally {
+            EVENT_STREAMS.decrement();
+            try {
+                room.removeListener(listener);
+                change(room, () -> board.scheduleInactivity(player)); // used to remove players who stop listening
+            } finally {
+                exchange.close(); // even if the change fails, so the stream is never left open
+            }
+        }
+    }
+    
+    /**
+     * Handles the /replay/game route, where game is a room ID, or empty for the game served by the
+     * routes outside /room/, replaying it from the event log. With ?at=TIME, sends the board as it
+     * was at the Unix time TIME, formatted as for /look/player to someone not declaring; with
+     * ?from=TIME&speed=N, streams the board from TIME as Server-Sent Events, as for /events/player,
+     * N times as fast as it was played; with neither, sends the board at the end of the log. Reports
+     * an error if no log is kept, or the game or time is not in it.
+     * @param exchange the HttpExchange used
+     * @param game the ID of the game requested
+     * @throws IOException
+     */
+    private void handleReplay(HttpExchange exchange, String game) throws IOException {
+        final EventLog log = registry.log();
+        final Map<String, Long> times = numbers(exchange, Set.of("at", "from", "speed"));
+        if (log == null) {
+            respond(exchange, ERROR_CODE, "No event log is kept.");
+            return;
+        } else if (!game.matches("\\w*")) {
+            respond(exchange, ERROR_CODE, "Your requested game ID may only consist of alphanumeric characters.");
+            return;
+        } else if (times == null || times.containsKey("at") && times.containsKey("from")
+                || times.containsKey("speed") && (!times.containsKey("from") || times.get("speed") == 0)) {
+            respond(exchange, ERROR_CODE, "Your requested time was not valid.");
+            return;
+        }
+        
+        final Replayer replayer;
+        try {
+            replayer = replayer(log, game);
+        } catch (IllegalArgumentException iae) {
+            respond(exchange, ERROR_CODE, "No such game in the event log.");
+            return;
+        }
+        final long time = times.getOrDefault("at", times.getOrDefault("from", replayer.endTime()));
+        if (time < replayer.startTime()) {
+            respond(exchange, ERROR_CODE, "Your requested time is before the start of the event log.");
+            return;
+        }
+        
+        if (!times.containsKey("from")) {
+            final BoardSnapshot snapshot = replayer.at(time);
+            if (snapshot == null) {
+                respond(exchange, ERROR_CODE, "That game was closed at that time.");
+                return;
+            }
+            sendBoard(exchange, snapshot, null, SPECTATOR);
+            return;
+        }
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(SUCCESS_CODE, 0);
+            final OutputStream body = exchange.getResponseBody();
+            replayer.play(time, times.getOrDefault("speed", 1L), snapshot -> {
                 try {
-                    board.wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    body.write(event(snapshot, SPECTATOR).getBytes(UTF_8));
+                    body.flush();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
                 }
+            });
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (UncheckedIOException uioe) {
+            // the client went away; there is no one left to tell
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    /**
+     * Finds the replayer of a game, reading the log only as far as needed: all of it for a game not
+     * replayed recently, or else only the events logged since the game was last replayed.
+     * @param log the event log
+     * @param game the ID of the game
+     * @return a replayer with every event of the game in the log
+     * @throws IOException if the log cannot be read
+     * @throws IllegalArgumentException if the log has no checkpoint of the game
+     */
+    private Replayer replayer(EventLog log, String game) throws IOException {
+        final Replayer cached;
+        synchronized (replayers) {
+            cached = replayers.get(game);
+        }
+        // read outside the lock, so replays of different games do not wait for each other
+        final Replayer replayer = cached == null ? new Replayer(log.directory(), game) : cached.refresh();
+        synchronized (replayers) {
+            replayers.put(game, replayer);
+        }
+        return replayer;
+    }
+    
+    /**
+     * Handles the /metrics route. Sends the metrics of the server, such as the latency of each
+     * route and the time changes wait for the lock of a board, in the Prometheus text exposition
+     * format, or reports "There should be no additional characters following /metrics in the
+     * request." if the path goes on past /metrics.
+     * @param exchange the HttpExchange used
+     * @param params the rest of the requested path, which should be empty
+     * @throws IOException
+     */
+    private void handleMetrics(HttpExchange exchange, String params) throws IOException {
+        if (!params.isEmpty()) {
+            respond(exchange, ERROR_CODE, "There should be no additional characters following /metrics in the request.");
+            return;
+        }
+        final byte[] response = Metrics.shared().render().getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(SUCCESS_CODE, response.length);
+        final OutputStream body = exchange.getResponseBody();
+        body.write(response);
+        body.flush();
+        exchange.close();
+    }
+    
+    /**
+     * Formats a snapshot of the board as a Server-Sent Event.
+     * @param snapshot a snapshot of the board
+     * @param playerID the unique ID of the player
+     * @return a "board" event whose ID is the version of the snapshot and whose data is the
+     *         String representation of the snapshot, one line per data field
+     */
+    static String event(BoardSnapshot snapshot, String playerID) {
+        final StringBuilder event = new StringBuilder();
+        event.append("id: ").append(snapshot.version()).append("\n");
+        event.append("event: board\n");
+        for (String line: boardResponse(snapshot, playerID).split("\n")) {
+            event.append("data: ").append(line).append("\n");
+        }
+        return event.append("\n").toString();
+    }
+    
+    /**
+     * Handles the /hint/player route. Sends a response giving the square of one card which belongs
+     * to a Set on the board, formatted as described in the API, or reports "Your player name ID 
+     * contains non-alphanumeric characters." if the playerID is not alphanumeric.
+     * @param exchange the HttpExchange used
+     * @param room the room whose board is served
+     * @param playerID the player ID requested
+     * @throws IOException
+     */
+    private void handleHint(HttpExchange exchange, GameRegistry.Room room, String playerID) throws IOException {
+        final Board board = room.board();
+        
+        final String response;
+        if (playerID.matches("\\w+")) {
+            exchange.sendResponseHeaders(SUCCESS_CODE, 0);
+            if (!board.snapshot().isPlayer(playerID)) {
+                change(room, () -> board.addPlayer(playerID));
+            }
+            List<Square> hint = board.getHint();
+            if (hint.isEmpty()) {
+                response = "none\n";
+            } else {
+                response = hint.get(0) + "\n";
             }
-            response = boardResponse(player); // used to remove players if a /watch request isn't sent again within a time limit
-            board.scheduleInactivity(player);
         } else {
             exchange.sendResponseHeaders(ERROR_CODE, 0);
-            response = "Your player name ID may only consist of alphanumeric characters.";
+            response = "Your player name ID contains non-alphanumeric characters.";
         }
         OutputStream body = exchange.getResponseBody();
         PrintWriter out = new PrintWriter(new OutputStreamWriter(body, UTF_8), true);
+
         out.print(response);
         out.flush();
         
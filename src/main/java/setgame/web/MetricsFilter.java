@@ -0,0 +1,72 @@
+package setgame.web;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import setgame.Metrics;
+
+/**
+ * Filter that times every request, counting it in a latency histogram for its route.
+ *
+ * <p>A request's route is the first part of its path, e.g. "look" for /look/player, or for a
+ * request under /room/id/, "room/" and the route within the room, e.g. "room/look" for
+ * /room/id/look/player. Routes are only ever those given when the filter is made, so clients
+ * cannot make the server keep a histogram per path they ask for.
+ */
+public class MetricsFilter extends Filter {
+
+    /** Name of the latency histograms, labelled by route. */
+    public static final String NAME = "setgame_request_seconds";
+
+    private static final String ROOM = "room";
+
+    private final Map<String, Metrics.Histogram> latencies = new HashMap<>();
+
+    /**
+     * Make a metrics filter that records into metrics.
+     * @param metrics the registry of the histograms
+     * @param routes the routes served outside /room/, e.g. "look", "scores"
+     * @param roomRoutes the routes served under /room/id/, e.g. "create", "look"
+     */
+    public MetricsFilter(Metrics metrics, List<String> routes, List<String> roomRoutes) {
+        final String help = "Time to handle and respond to a request, by route";
+        for (String route: routes) {
+            latencies.put(route, metrics.histogram(NAME, help, "route", route));
+        }
+        // requests for /room/ with no valid route are counted under "room"
+        latencies.put(ROOM, metrics.histogram(NAME, help, "route", ROOM));
+        for (String route: roomRoutes) {
+            latencies.put(ROOM + "/" + route, metrics.histogram(NAME, help, "route", ROOM + "/" + route));
+        }
+    }
+
+    @Override public String description() { return "Time requests"; }
+
+    @Override public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            latencies.getOrDefault(route(exchange), latencies.get(ROOM)).recordSince(start);
+        }
+    }
+
+    /**
+     * @param exchange the HttpExchange used
+     * @return the route of the request, without any suffix after a "." such as ".bin"
+     */
+    private static String route(HttpExchange exchange) {
+        final String context = exchange.getHttpContext().getPath().replace("/", "");
+        if (!context.equals(ROOM)) {
+            return context;
+        }
+        // /room/id/route/...
+        final String[] parts = exchange.getRequestURI().getPath().split("/", 5);
+        return parts.length > 3 ? ROOM + "/" + parts[3].split("\\.", 2)[0] : ROOM;
+    }
+}
@@ -0,0 +1,391 @@
+package setgame.web;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import setgame.Metrics;
+
+/**
+ * Log of the requests a server handles, written in the background so that logging never makes a
+ * request wait.
+ *
+ * <p>Requests and exceptions are logged into a ring buffer of entries made up front, which are
+ * filled in and reused, so logging allocates nothing. A request thread takes the next free entry
+ * with a single compare-and-set; if the buffer is full because the writer has fallen behind, the
+ * entry is dropped and counted rather than waited for. The writer thread formats the entries in
+ * batches, one line per request, and writes each batch with one call: to a file, which is rolled
+ * over once it passes a size, or to System.err. Only one in every so many successful requests may
+ * be logged, chosen at random; requests which fail are always logged.
+ *
+ * <p>A batch which cannot be written to the file is dropped and counted, and the file is reopened
+ * for the next batch, so logging resumes once the file can be written again. Entries logged as the
+ * log is closed, which the writer cannot wait for, are counted as dropped too.
+ */
+public class RequestLog implements AutoCloseable {
+
+    /** System property naming a file to which the server logs its requests, instead of System.err. */
+    public static final String PROPERTY = "setgame.requestLog";
+
+    /**
+     * System property giving N, where the server logs one in every N successful requests, at
+     * random; 1 if not given.
+     */
+    public static final String SAMPLE_PROPERTY = "setgame.requestLogSample";
+
+    /** Default number of entries in the ring buffer; a power of 2. */
+    public static final int CAPACITY = 8192;
+
+    /** Default size in bytes past which a log file is rolled over. */
+    public static final long ROLL_BYTES = 16 << 20;
+
+    /** Default number of rolled-over log files kept, as FILE.1 (the newest) to FILE.KEEP. */
+    public static final int KEEP = 5;
+
+    private static final int BATCH = 1024; // entries written at once, at most
+    private static final long IDLE_NANOS = 50_000_000; // how long the writer sleeps when there is nothing to write
+
+    private static final Metrics.Counter DROPPED = Metrics.shared().counter("setgame_request_log_dropped_total",
+            "Requests not logged because the request log was full or closed, or could not be written");
+
+    /** A slot of the ring buffer, filled in by a request thread and read by the writer. */
+    private static final class Entry {
+        private volatile long sequence = -1; // the sequence number of the entry the slot holds
+        private long time;
+        private String method;
+        private URI uri;
+        private int status;
+        private long nanos;
+        private Throwable error;
+    }
+
+    private final Entry[] entries;
+    private final int sample;
+    private final Path file;
+    private final long rollBytes;
+    private final int keep;
+    private final AtomicLong claimed = new AtomicLong(); // sequence number of the next entry to fill in
+    private volatile long written = 0; // sequence number of the next entry to write
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed = false;
+    private OutputStream out; // null if the file must be reopened after an error
+    private long size; // bytes in the current file
+    private boolean failing = false; // whether the last batch could not be written
+
+    /*
+     * Abstraction function:
+     *    AF(entries, sample, file, rollBytes, keep, claimed, written, dropped, writer, closed, out,
+     *      size, failing): a log of one in every sample successful requests, and of every failure,
+     *      to file, rolled over after rollBytes into keep older files, or to System.err if file is
+     *      null, through out, which holds size bytes, or which is reopened if out is null; whose
+     *      entries with sequence numbers from written to claimed-1 are in
+     *      entries[sequence % entries.length], waiting for writer, and which has dropped dropped
+     *      entries, having reported an error writing them if failing; writer stops once it has
+     *      written every entry after closed
+     *
+     * Representation invariant:
+     *    entries.length is a power of 2
+     *    written <= claimed <= written + entries.length
+     *    sample >= 1
+     *    out is not null if file is null
+     *
+     * Safety from rep exposure:
+     *    all fields are private, and entries are never returned
+     *
+     * Thread safety argument:
+     *    a request thread owns an entry from when it claims its sequence number, by compare-and-set
+     *      on claimed, until it publishes it by the volatile write of the entry's sequence; claimed
+     *      is never more than entries.length ahead of written, so the writer is done with the slot
+     *    the writer only reads an entry once its sequence is published, and gives the slot back by
+     *      the volatile write of written once it has read the entry
+     *    out, size and failing are confined to the writer thread, after the constructor
+     *    closed is volatile
+     */
+
+    /**
+     * Makes a log which writes to a file, appending to it if it exists, and rolls it over once
+     * it passes ROLL_BYTES, keeping KEEP older files; or which writes to System.err.
+     * @param file the file, or null to write to System.err
+     * @param sample log one in every sample successful requests, at random; at least 1
+     * @throws IOException if the file cannot be opened
+     */
+    public RequestLog(Path file, int sample) throws IOException {
+        this(file, sample, CAPACITY, ROLL_BYTES, KEEP);
+    }
+
+    /**
+     * Makes a log.
+     * @param file the file to write, or null to write to System.err
+     * @param sample log one in every sample successful requests, at random; at least 1
+     * @param capacity the number of entries which may wait to be written, a power of 2
+     * @param rollBytes the size of a file in bytes past which it is rolled over, moving FILE.i to
+     *                  FILE.(i+1) and FILE to FILE.1, and a new FILE started
+     * @param keep the number of rolled-over files kept
+     * @throws IOException if the file cannot be opened
+     * @throws IllegalArgumentException if sample or capacity is invalid
+     */
+    RequestLog(Path file, int sample, int capacity, long rollBytes, int keep) throws IOException {
+        if (sample < 1 || capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("invalid request log: 1 in " + sample + ", " + capacity + " entries");
+        }
+        this.entries = new Entry[capacity];
+        for (int i=0; i<capacity; i++) {
+            entries[i] = new Entry();
+        }
+        this.sample = sample;
+        this.file = file;
+        this.rollBytes = rollBytes;
+        this.keep = keep;
+        if (file != null) {
+            this.out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            this.size = Files.size(file);
+        } else {
+            this.out = System.err;
+        }
+        this.writer = new Thread(this::write, "request-log");
+        writer.setDaemon(true);
+        writer.start();
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert Integer.bitCount(entries.length) == 1;
+        assert sample >= 1;
+    }
+
+    /**
+     * Logs a request which was answered, unless it succeeded and is not sampled. Never waits.
+     * @param method the method of the request
+     * @param uri the URI of the request
+     * @param status the status code of the response
+     * @param nanos how long the request took to handle, in nanoseconds
+     */
+    public void request(String method, URI uri, int status, long nanos) {
+        if (sample > 1 && status < 400 && ThreadLocalRandom.current().nextInt(sample) != 0) {
+            return;
+        }
+        offer(method, uri, status, nanos, null);
+    }
+
+    /**
+     * Logs a request which threw an exception. Never waits.
+     * @param method the method of the request
+     * @param uri the URI of the request
+     * @param error the exception, whose stack trace is logged
+     */
+    public void exception(String method, URI uri, Throwable error) {
+        offer(method, uri, -1, 0, error);
+    }
+
+    private void offer(String method, URI uri, int status, long nanos, Throwable error) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - written >= entries.length || closed) {
+                dropped.increment();
+                DROPPED.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        final Entry entry = entries[(int) (sequence & (entries.length - 1))];
+        entry.time = System.currentTimeMillis();
+        entry.method = method;
+        entry.uri = uri;
+        entry.status = status;
+        entry.nanos = nanos;
+        entry.error = error;
+        entry.sequence = sequence; // publishes the entry to the writer
+    }
+
+    /**
+     * @return the number of entries dropped because the log was full or closed, or could not be
+     *         written
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes every entry logged, stops the writer, and closes the file, if any. Requests logged
+     * afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        final StringBuilder batch = new StringBuilder();
+        long reported = 0; // entries dropped, as last written in the log
+        try {
+            while (true) {
+                // read before the entries, so entries logged before close() are written
+                final boolean stopping = closed;
+                int count = 0;
+                for (Entry entry = next(); entry != null && count < BATCH; entry = next()) {
+                    format(entry, batch);
+                    entry.method = null; // so the slot holds on to nothing until it is reused
+                    entry.uri = null;
+                    entry.error = null;
+                    written += 1;
+                    count += 1;
+                }
+                if (stopping && count < BATCH) {
+                    // entries claimed but not yet published, which close() does not wait for, are
+                    // lost; claiming the whole ring makes any later entry dropped as full
+                    final long lost = claimed.getAndSet(written + entries.length) - written;
+                    dropped.add(lost);
+                    DROPPED.add(lost);
+                }
+                final long drops = dropped.sum();
+                if (drops > reported) {
+                    batch.append(Instant.now()).append(" !! dropped ").append(drops - reported)
+                            .append(" requests from the log\n");
+                }
+                if (batch.length() > 0) {
+                    if (output(batch.toString().getBytes(UTF_8), count)) {
+                        reported = drops;
+                    }
+                    batch.setLength(0);
+                }
+                if (count == BATCH) {
+                    continue;
+                } else if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+            if (out != null) {
+                out.flush();
+                if (file != null) {
+                    out.close();
+                }
+            }
+        } catch (IOException ioe) {
+            System.err.print(" !! ");
+            ioe.printStackTrace();
+        }
+    }
+
+    // the next entry to write, if it has been published
+    private Entry next() {
+        final Entry entry = entries[(int) (written & (entries.length - 1))];
+        return entry.sequence == written ? entry : null;
+    }
+
+    /**
+     * Formats an entry as a line: the time, method and URI, then the status and milliseconds taken
+     * for a request answered, or " !! " and the stack trace for an exception.
+     */
+    private static void format(Entry entry, StringBuilder batch) {
+        batch.append(Instant.ofEpochMilli(entry.time)).append(" ").append(entry.method).append(" ").append(entry.uri);
+        if (entry.error == null) {
+            batch.append(" ").append(entry.status).append(" ")
+                    .append(String.format("%.3f", entry.nanos / 1e6)).append(" ms\n");
+        } else {
+            final StringWriter trace = new StringWriter();
+            entry.error.printStackTrace(new PrintWriter(trace));
+            batch.append(" !! ").append(trace);
+        }
+    }
+
+    /**
+     * Writes a batch, reopening the file first if writing to it failed, and rolls the file over if
+     * it has grown too large. A batch which cannot be written is dropped.
+     * @param bytes the batch
+     * @param count the number of entries in the batch
+     * @return whether the batch was written
+     */
+    private boolean output(byte[] bytes, int count) {
+        try {
+            if (out == null) {
+                out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                size = Files.size(file);
+            }
+            out.write(bytes);
+            out.flush();
+            size += bytes.length;
+        } catch (IOException ioe) {
+            dropped.add(count);
+            DROPPED.add(count);
+            failed(ioe);
+            return false;
+        }
+        if (file != null && size >= rollBytes) {
+            try {
+                roll();
+            } catch (IOException ioe) {
+                failed(ioe);
+                return true;
+            }
+        }
+        failing = false;
+        return true;
+    }
+
+    // reports an error writing or rolling over the file, unless the last batch failed too, and
+    // closes the file so the next batch reopens it
+    private void failed(IOException ioe) {
+        if (!failing) {
+            System.err.print(" !! request log failed, reopening it for the next batch: ");
+            ioe.printStackTrace();
+            failing = true;
+        }
+        if (file != null && out != null) {
+            try {
+                out.close();
+            } catch (IOException closing) {
+                // already reported
+            }
+            out = null;
+        }
+    }
+
+    private void roll() throws IOException {
+        out.close();
+        out = null;
+        for (int i=keep-1; i>=1; i--) {
+            final Path older = rolled(i);
+            if (Files.exists(older)) {
+                Files.move(older, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (keep > 0) {
+            Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        size = 0;
+    }
+
+    private Path rolled(int i) {
+        return file.resolveSibling(file.getFileName() + "." + i);
+    }
+}
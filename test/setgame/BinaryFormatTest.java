@@ -0,0 +1,145 @@
+package setgame;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for BinaryFormat, decoding what it encodes as a client would, by the format in its
+ * documentation.
+ */
+public class BinaryFormatTest {
+
+    /* Testing strategy
+     *    board, declare:
+     *      partition on the number of attributes: at most 4 (one byte per card), more (two bytes)
+     *      partition on the declare: none, another player, the player
+     *      partition on the squares held: none, some
+     *    scores:
+     *      partition on the players: none, one, more than 127 (a varint of two bytes)
+     *      partition on a score: 0, positive, negative, at least 2^6 (a varint of several bytes)
+     *      partition on a player ID: ASCII, other UTF-8
+     *      partition on the vote: none, add
+     */
+
+    // a board with two players, on which there is a Set
+    private static Board boardWithSet(int attributes, SplittableRandom random) {
+        while (true) {
+            final Board board = new Board(Board.generateRandomCards(attributes, random), attributes,
+                    Board.NO_TIMEOUTS, () -> Board.generateRandomCards(attributes, random));
+            board.addPlayer("alice");
+            board.addPlayer("bob");
+            if (board.existsSet()) {
+                return board;
+            }
+        }
+    }
+
+    // the encoded board as seen by player, with the declare byte as sent to them
+    private static ByteBuffer encoded(BoardSnapshot snapshot, String player) {
+        final byte[] board = BinaryFormat.board(snapshot);
+        board[BinaryFormat.DECLARE_INDEX] = BinaryFormat.declare(snapshot, player);
+        return ByteBuffer.wrap(board);
+    }
+
+    // decodes a board, asserting it shows snapshot as seen by player
+    private static void assertBoard(BoardSnapshot snapshot, String player) {
+        final ByteBuffer board = encoded(snapshot, player);
+        final int attributes = snapshot.getCard(0, 0).attributes();
+        assertEquals('B', board.get(), "expected a board");
+        assertEquals(snapshot.getNumRows(), board.getShort(), "expected the rows");
+        assertEquals(snapshot.getNumCols(), board.getShort(), "expected the columns");
+        assertEquals(attributes, board.get(), "expected the attributes");
+        final byte declare = board.get();
+        final long timeout = board.getLong();
+        if (snapshot.getDeclarer().equals("")) {
+            assertEquals(0, declare, "expected no one declaring");
+            assertEquals(0, timeout, "expected no timeout");
+        } else {
+            assertEquals(snapshot.getDeclarer().equals(player) ? 2 : 1, declare, "expected the declare for " + player);
+            assertEquals(snapshot.getTimeout(), timeout, "expected the timeout");
+        }
+        final int top = attributes <= 4 ? 0x80 : 0x8000;
+        for (int row=0; row<snapshot.getNumRows(); row++) {
+            for (int col=0; col<snapshot.getNumCols(); col++) {
+                final int card = attributes <= 4 ? board.get() & 0xFF : board.getShort() & 0xFFFF;
+                assertEquals(snapshot.getCard(row, col).code(), card & ~top, "expected the card at " + row + "," + col);
+                assertEquals(snapshot.getSquaresHeld().contains(new Square(row, col)), (card & top) != 0,
+                        "expected whether " + row + "," + col + " is held");
+            }
+        }
+        assertFalse(board.hasRemaining(), "expected nothing after the cards");
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift=0; ; shift+=7) {
+            final int b = buffer.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    // covers boards of at most 4 attributes and more, with no declare, a declare, and squares held
+    @Test
+    public void testBoardRoundTrip() throws InterruptedException {
+        final SplittableRandom random = new SplittableRandom(6031);
+        for (int attributes: List.of(4, 5, 8)) {
+            final Board board = boardWithSet(attributes, random);
+            assertBoard(board.snapshot(), "alice");
+
+            board.declareSet("alice");
+            board.pickCards(board.findSet().subList(0, 2), "alice");
+            for (String player: List.of("alice", "bob")) {
+                assertBoard(board.snapshot(), player);
+            }
+        }
+    }
+
+    // covers no players, one, and more than 127, with scores of every kind, IDs in UTF-8, and votes
+    @Test
+    public void testScoresRoundTrip() {
+        final List<Map<String, Integer>> tables = new ArrayList<>();
+        tables.add(Map.of());
+        tables.add(Map.of("alice", 0));
+        final Map<String, Integer> many = new LinkedHashMap<>();
+        many.put("zo\u00eb", 1_000_000);
+        many.put("bob", -3);
+        many.put("carol", 64);
+        for (int i=0; i<200; i++) {
+            many.put("player" + i, i);
+        }
+        tables.add(many);
+        final Set<String> votes = Set.of("bob", "player7");
+
+        for (Map<String, Integer> scores: tables) {
+            final ByteBuffer encoded = ByteBuffer.wrap(BinaryFormat.scores(scores.entrySet(), votes));
+            assertEquals('S', encoded.get(), "expected scores");
+            assertEquals(scores.size(), readVarint(encoded), "expected the number of players");
+            final Map<String, Integer> decoded = new LinkedHashMap<>();
+            for (int i=0; i<scores.size(); i++) {
+                final byte[] player = new byte[readVarint(encoded)];
+                encoded.get(player);
+                final String id = new String(player, UTF_8);
+                final int zigzag = readVarint(encoded);
+                decoded.put(id, (zigzag >>> 1) ^ -(zigzag & 1));
+                assertEquals(votes.contains(id) ? 1 : 0, encoded.get(), "expected the vote of " + id);
+            }
+            assertEquals(new ArrayList<>(scores.entrySet()), new ArrayList<>(decoded.entrySet()),
+                    "expected the scores in order");
+            assertFalse(encoded.hasRemaining(), "expected nothing after the players");
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for Board: the Sets it finds, and the snapshots it publishes and the listeners it calls as
+ * it changes.
+ */
+public class BoardTest {
+
+    /* Testing strategy
+     *    findAllSets, countSets, existsSet:
+     *      partition on the Sets on the board: none, one, several
+     *      partition on the width of the board: as dealt, cards added
+     *    getHint, BoardSnapshot.getSet:
+     *      partition on the Sets on the board: none, some
+     *      partition on the snapshot: published by the board, decoded from a checkpoint
+     *    BoardSnapshot.getTopScores:
+     *      partition on n: 0, fewer than the players, more than the players
+     *      partition on the board since the snapshot: unchanged, scores changed
+     *    single changes (addPlayer, declareSet, pickCard, vote, addCards, resetGame):
+     *      partition on the change: made, refused (does nothing)
+     *      partition on what else the change does: nothing, adds a column, finds a Set and replaces its cards
+     *    batch, pickCards:
+     *      partition on the changes in the batch: none, one, several including cards added and a reset
+     *      partition on nesting: one batch, a batch within a batch
+     *      partition on the picks: a whole Set, fewer than 3, a square off the board
+     */
+
+    private static final int ATTRIBUTES = 4;
+
+    // a board whose new decks are dealt by random, with a listener counting its calls in calls
+    private static Board board(SplittableRandom random, AtomicInteger calls) {
+        final Board board = new Board(Board.generateRandomCards(ATTRIBUTES, random), ATTRIBUTES, Board.NO_TIMEOUTS,
+                () -> Board.generateRandomCards(ATTRIBUTES, random));
+        board.addBoardListener(calls::incrementAndGet);
+        return board;
+    }
+
+    // a board with one player, on which there is a Set
+    private static Board boardWithSet(SplittableRandom random, AtomicInteger calls) {
+        while (true) {
+            final Board board = board(random, calls);
+            board.addPlayer("alice");
+            if (board.existsSet()) {
+                calls.set(0);
+                return board;
+            }
+        }
+    }
+
+    // asserts the board published exactly one snapshot, and called its listeners once, since version
+    private static void assertOneChange(Board board, long version, AtomicInteger calls, String change) {
+        assertEquals(version + 1, board.snapshot().version(), "expected one version for " + change);
+        assertEquals(1, calls.getAndSet(0), "expected the listeners called once for " + change);
+    }
+
+    // every Set among cards, found by trying every triple against the rule of Set
+    private static Set<Set<Card>> bruteForceSets(List<Card> cards, int attributes) {
+        final Set<Set<Card>> sets = new HashSet<>();
+        for (int i=0; i<cards.size(); i++) {
+            for (int j=i+1; j<cards.size(); j++) {
+                for (int k=j+1; k<cards.size(); k++) {
+                    boolean isSet = true;
+                    for (int a=0; a<attributes; a++) {
+                        final int sum = cards.get(i).attribute(a) + cards.get(j).attribute(a)
+                                + cards.get(k).attribute(a);
+                        isSet &= sum % 3 == 0;
+                    }
+                    if (isSet) {
+                        sets.add(Set.of(cards.get(i), cards.get(j), cards.get(k)));
+                    }
+                }
+            }
+        }
+        return sets;
+    }
+
+    // covers boards with no Set, one and several, as dealt and with cards added
+    @Test
+    public void testFindAllSetsAgreesWithBruteForce() {
+        final SplittableRandom random = new SplittableRandom(6031);
+        final Set<Integer> counts = new HashSet<>();
+        for (int i=0; i<1000; i++) {
+            final Board board = board(random, new AtomicInteger());
+            for (int added=0; added<3; added++) {
+                final Set<Set<Card>> expected = bruteForceSets(board.snapshot().getCards(), ATTRIBUTES);
+                final Set<Set<Card>> found = new HashSet<>();
+                for (List<Card> set: board.findAllSets()) {
+                    found.add(Set.copyOf(set));
+                }
+                assertEquals(expected, found, "expected every Set on " + board);
+                assertEquals(expected.size(), board.countSets(), "expected the number of Sets on " + board);
+                assertEquals(!expected.isEmpty(), board.existsSet(), "expected whether a Set exists on " + board);
+                counts.add(Math.min(expected.size(), 2));
+                board.addCards();
+            }
+        }
+        assertEquals(Set.of(0, 1, 2), counts, "expected boards with no Set, one and several");
+    }
+
+    // asserts set is the squares of a Set on snapshot, in row-major order, or empty if there is none
+    private static void assertSetOf(BoardSnapshot snapshot, List<Square> set, boolean exists) {
+        if (!exists) {
+            assertEquals(List.of(), set, "expected no Set on " + snapshot);
+            return;
+        }
+        assertEquals(3, set.size(), "expected the squares of a Set on " + snapshot);
+        assertTrue(SetMath.isSet(snapshot.getCard(set.get(0)).code(), snapshot.getCard(set.get(1)).code(),
+                snapshot.getCard(set.get(2)).code()), "expected a Set: " + set);
+        final List<Card> cards = snapshot.getCards();
+        final List<Square> sorted = new ArrayList<>(set);
+        sorted.sort((a, b) -> (a.getRow()*snapshot.getNumCols() + a.getCol())
+                - (b.getRow()*snapshot.getNumCols() + b.getCol()));
+        assertEquals(sorted, set, "expected row-major order of " + set + " on " + cards);
+    }
+
+    // covers hints on boards with no Set and some, from snapshots published and decoded from checkpoints
+    @Test
+    public void testSnapshotCarriesSet() throws InterruptedException {
+        final SplittableRandom random = new SplittableRandom(6031);
+        final Set<Boolean> seen = new HashSet<>();
+        for (int i=0; i<500; i++) {
+            final Board board = board(random, new AtomicInteger());
+            board.addPlayer("alice");
+            for (int round=0; round<3; round++) {
+                final BoardSnapshot snapshot = board.snapshot();
+                final boolean exists = board.existsSet();
+                seen.add(exists);
+                assertSetOf(snapshot, snapshot.getSet(), exists);
+                assertEquals(exists ? snapshot.getSet().subList(0, 1) : List.of(), board.getHint(),
+                        "expected a hint from the Set of the snapshot");
+                final BoardSnapshot decoded = BoardCheckpoint.decode(board.checkpoint().encode()).snapshot();
+                assertSetOf(decoded, decoded.getSet(), exists);
+                if (exists) {
+                    board.declareSet("alice");
+                    board.pickCards(board.findSet(), "alice");
+                } else {
+                    board.addCards();
+                }
+            }
+        }
+        assertEquals(Set.of(false, true), seen, "expected boards with no Set and with some");
+    }
+
+    // covers top scores with n of 0, fewer and more than the players, from a snapshot taken before
+    // the scores changed and one after
+    @Test
+    public void testTopScoresFromSnapshot() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final Board board = boardWithSet(new SplittableRandom(6031), calls);
+        board.addPlayer("bob");
+        board.addPlayer("carol");
+        board.declareSet("bob");
+        board.pickCards(board.findSet(), "bob");
+        final BoardSnapshot before = board.snapshot();
+        board.declareSet("carol");
+        board.timedOut("carol");
+        final BoardSnapshot after = board.snapshot();
+
+        assertEquals(List.of(), before.getTopScores(0), "expected no players");
+        assertEquals(List.of(Map.entry("bob", 10), Map.entry("alice", 0)), before.getTopScores(2),
+                "expected the highest scores, equal scores by player ID");
+        assertEquals(List.of(Map.entry("bob", 10), Map.entry("alice", 0), Map.entry("carol", 0)),
+                before.getTopScores(10), "expected the scores of the snapshot, not the board since");
+        assertEquals(List.of(Map.entry("bob", 10), Map.entry("alice", 0), Map.entry("carol", -5)),
+                after.getTopScores(10), "expected the scores after the timeout");
+        final Map<String, Integer> ranked = new HashMap<>();
+        after.getTopScores(10).forEach(entry -> ranked.put(entry.getKey(), entry.getValue()));
+        assertEquals(after.getScores(), ranked, "expected the same scores ranked and not");
+    }
+
+    // covers single changes which are made, including one adding a column and one replacing a Set
+    @Test
+    public void testOneVersionPerChange() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final Board board = boardWithSet(new SplittableRandom(6031), calls);
+
+        long version = board.snapshot().version();
+        board.vote("alice"); // the only player, so adds a column
+        assertOneChange(board, version, calls, "a vote which adds a column");
+        assertEquals(ATTRIBUTES + 1, board.getNumCols(), "expected a column added");
+
+        version = board.snapshot().version();
+        board.addCards();
+        assertOneChange(board, version, calls, "adding cards");
+
+        version = board.snapshot().version();
+        board.declareSet("alice");
+        assertOneChange(board, version, calls, "a declare");
+
+        for (Square square: board.findSet()) {
+            version = board.snapshot().version();
+            board.pickCard(square, "alice");
+            assertOneChange(board, version, calls, "a pick");
+        }
+
+        version = board.snapshot().version();
+        board.resetGame(Board.generateRandomCards(ATTRIBUTES));
+        assertOneChange(board, version, calls, "a reset");
+    }
+
+    // covers single changes which are refused
+    @Test
+    public void testRefusedChangesPublishNothing() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final Board board = boardWithSet(new SplittableRandom(6031), calls);
+        final long version = board.snapshot().version();
+
+        board.pickCard(new Square(0, 0), "alice"); // not declaring
+        board.declareSet("bob"); // not playing
+        board.vote("bob"); // not playing
+        board.timedOut("alice"); // not declaring
+        board.removePlayer("bob"); // not playing
+
+        assertEquals(version, board.snapshot().version(), "expected no new version");
+        assertEquals(0, calls.get(), "expected no listener called");
+    }
+
+    // covers a batch of several changes, including cards added and a reset, nested in another batch
+    @Test
+    public void testOneVersionPerBatch() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final Board board = boardWithSet(new SplittableRandom(6031), calls);
+        final long version = board.snapshot().version();
+        final List<Long> seen = new ArrayList<>();
+
+        board.batch(() -> {
+            board.addPlayer("bob");
+            board.addCards();
+            seen.add(board.snapshot().version());
+            board.batch(() -> {
+                board.declareSet("alice");
+                board.resetGame(Board.generateRandomCards(ATTRIBUTES));
+                return null;
+            });
+            seen.add(board.snapshot().version());
+            board.addPlayer("carol");
+            return null;
+        });
+
+        assertEquals(List.of(version, version), seen, "expected no version published during the batch");
+        assertOneChange(board, version, calls, "a batch");
+        assertEquals(3 * ATTRIBUTES, board.snapshot().getCards().size(), "expected the snapshot after the reset");
+        assertEquals(1, board.snapshot().getScores().size(), "expected the snapshot of the whole batch");
+    }
+
+    // covers an empty batch
+    @Test
+    public void testEmptyBatchPublishesNothing() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final Board board = boardWithSet(new SplittableRandom(6031), calls);
+        final long version = board.snapshot().version();
+
+        board.batch(() -> null);
+
+        assertEquals(version, board.snapshot().version(), "expected no new version");
+        assertEquals(0, calls.get(), "expected no listener called");
+    }
+
+    // covers pickCards with a whole Set, and with fewer than 3 squares
+    @Test
+    public void testPickCardsIsOneChange() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final Board board = boardWithSet(new SplittableRandom(6031), calls);
+        board.declareSet("alice");
+        final List<Square> set = board.findSet();
+
+        long version = board.snapshot().version();
+        calls.set(0);
+        board.pickCards(set.subList(0, 2), "alice");
+        assertOneChange(board, version, calls, "two picks");
+        assertEquals(set.subList(0, 2), board.snapshot().getSquaresHeld(), "expected both squares held");
+
+        version = board.snapshot().version();
+        board.pickCards(set.subList(2, 3), "alice");
+        assertOneChange(board, version, calls, "the pick completing the Set");
+        assertEquals(Integer.valueOf(10), board.snapshot().getScores().get("alice"), "expected the Set scored");
+        assertEquals("", board.snapshot().getDeclarer(), "expected the declare ended");
+
+        board.declareSet("alice");
+        final List<Square> another = board.findSet();
+        version = board.snapshot().version();
+        calls.set(0);
+        board.pickCards(another, "alice");
+        assertOneChange(board, version, calls, "three picks of a Set");
+        assertEquals(Integer.valueOf(20), board.snapshot().getScores().get("alice"), "expected the Set scored");
+    }
+
+    // covers pickCards with a square off the board, which picks nothing
+    @Test
+    public void testPickCardsOffBoard() {
+        final AtomicInteger calls = new AtomicInteger();
+        final Board board = boardWithSet(new SplittableRandom(6031), calls);
+        board.declareSet("alice");
+        final long version = board.snapshot().version();
+        calls.set(0);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> board.pickCards(List.of(new Square(0, 0), new Square(3, 0)), "alice"),
+                "expected a square off the board refused");
+        assertEquals(version, board.snapshot().version(), "expected no new version");
+        assertEquals(List.of(), board.snapshot().getSquaresHeld(), "expected no card picked");
+        assertEquals(0, calls.get(), "expected no listener called");
+    }
+}
@@ -0,0 +1,65 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for CardSet.
+ */
+public class CardSetTest {
+
+    /* Testing strategy
+     *    add, remove:
+     *      partition on the card: in the set, not in the set
+     *      partition on the code: in the first word, in a later word, the last code
+     *    clear, size:
+     *      partition on the set: empty, some cards, every card
+     */
+
+    // covers codes in every word, cards added and removed whether or not already in the set
+    @Test
+    public void testAgreesWithHashSet() {
+        final SplittableRandom random = new SplittableRandom(6031);
+        final CardSet cards = new CardSet(SetMath.CARDS);
+        final Set<Card> expected = new HashSet<>();
+        for (int i=0; i<10_000; i++) {
+            final Card card = Card.fromCode(random.nextInt(SetMath.CARDS));
+            if (random.nextBoolean()) {
+                cards.add(card);
+                expected.add(card);
+            } else {
+                cards.remove(card);
+                expected.remove(card);
+            }
+            assertEquals(expected.contains(card), cards.contains(card), "expected membership of " + card);
+            assertEquals(expected.size(), cards.size(), "expected the size");
+        }
+        for (int code=0; code<SetMath.CARDS; code++) {
+            assertEquals(expected.contains(Card.fromCode(code)), cards.contains(code),
+                    "expected membership of " + code);
+        }
+    }
+
+    // covers every card, including the last code, and clear
+    @Test
+    public void testFullAndClear() {
+        final CardSet cards = new CardSet(SetMath.CARDS);
+        assertEquals(0, cards.size(), "expected no cards");
+        for (Card card: Card.deck(SetMath.ATTRIBUTES)) {
+            cards.add(card);
+        }
+        assertEquals(SetMath.CARDS, cards.size(), "expected every card");
+        assertTrue(cards.contains(SetMath.CARDS - 1), "expected the last code");
+
+        cards.clear();
+        assertEquals(0, cards.size(), "expected no cards after clear");
+        assertFalse(cards.contains(0), "expected the first code gone");
+    }
+}
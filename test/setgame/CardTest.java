@@ -0,0 +1,109 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for Card.
+ */
+public class CardTest {
+
+    /* Testing strategy
+     *    of, fromCode:
+     *      partition on each attribute's value: every value
+     *      partition on how the card is asked for: by its attributes, by its code
+     *      partition on the number of attributes: 4 (standard cards), 5 to MAX_ATTRIBUTES
+     *    deck:
+     *      partition on the number of attributes: 0, 1 to 3 (standard cards with some fixed), 4,
+     *        5 to MAX_ATTRIBUTES, more than MAX_ATTRIBUTES
+     *    equals, hashCode:
+     *      partition on the two cards: the same card, different cards
+     */
+
+    // covers every standard card, asked for by its attributes and by its code
+    @Test
+    public void testOfIsCanonical() {
+        for (Card.Color color: Card.Color.values()) {
+            for (Card.Number number: Card.Number.values()) {
+                for (Card.Shading shading: Card.Shading.values()) {
+                    for (Card.Shape shape: Card.Shape.values()) {
+                        final Card card = Card.of(color, number, shading, shape);
+                        assertSame(card, Card.of(color, number, shading, shape), "expected the same instance");
+                        assertSame(card, Card.fromCode(card.code()), "expected the same instance by code");
+                        assertEquals(color, card.color(), "expected the color");
+                        assertEquals(number, card.number(), "expected the number");
+                        assertEquals(shading, card.shading(), "expected the shading");
+                        assertEquals(shape, card.shape(), "expected the shape");
+                    }
+                }
+            }
+        }
+    }
+
+    // covers equals and hashCode of the same and different cards
+    @Test
+    public void testHashCodeIsPerfect() {
+        for (int a=0; a<SetMath.CARDS; a++) {
+            for (int b=0; b<SetMath.CARDS; b++) {
+                final Card cardA = Card.fromCode(a);
+                final Card cardB = Card.fromCode(b);
+                if (a == b) {
+                    assertEquals(cardA, cardB, "expected equal cards");
+                    assertEquals(cardA.hashCode(), cardB.hashCode(), "expected equal hash codes");
+                } else {
+                    assertNotEquals(cardA, cardB, "expected different cards");
+                    assertNotEquals(cardA.hashCode(), cardB.hashCode(), "expected different hash codes");
+                }
+            }
+        }
+    }
+
+    // covers cards with 4 to MAX_ATTRIBUTES attributes, asked for by their code
+    @Test
+    public void testFromCodeIsCanonical() {
+        for (int attributes=SetMath.ATTRIBUTES; attributes<=SetMath.MAX_ATTRIBUTES; attributes++) {
+            for (int code=0; code<SetMath.cards(attributes); code++) {
+                final Card card = Card.fromCode(attributes, code);
+                assertSame(card, Card.fromCode(attributes, code), "expected the same instance");
+                assertEquals(attributes, card.attributes(), "expected the number of attributes");
+                assertEquals(code, card.code(), "expected the code");
+                assertEquals(SetMath.vector(code), card.vector(), "expected the vector");
+                for (int i=0; i<attributes; i++) {
+                    assertEquals(SetMath.attribute(code, i), card.attribute(i), "expected attribute " + i);
+                }
+            }
+        }
+        assertSame(Card.fromCode(5), Card.fromCode(2, 5), "expected standard cards for fewer attributes");
+    }
+
+    // covers decks of 0 to more than MAX_ATTRIBUTES attributes
+    @Test
+    public void testDeck() {
+        for (int attributes=1; attributes<=SetMath.MAX_ATTRIBUTES; attributes++) {
+            final List<Card> deck = Card.deck(attributes);
+            assertEquals(SetMath.cards(attributes), deck.size(), "expected every card of " + attributes);
+            assertEquals(deck.size(), new HashSet<>(deck).size(), "expected distinct cards of " + attributes);
+            final Set<Integer> attributesOf = new HashSet<>();
+            for (Card card: deck) {
+                assertSame(card, Card.fromCode(attributes, card.code()), "expected canonical cards");
+                attributesOf.add(card.attributes());
+                for (int i=attributes; i<SetMath.ATTRIBUTES; i++) {
+                    assertEquals(deck.get(0).attribute(i), card.attribute(i), "expected attribute " + i + " fixed");
+                }
+            }
+            assertEquals(Set.of(Math.max(attributes, SetMath.ATTRIBUTES)), attributesOf,
+                    "expected cards of one number of attributes");
+        }
+        assertThrows(IllegalArgumentException.class, () -> Card.deck(0), "expected 0 attributes refused");
+        assertThrows(IllegalArgumentException.class, () -> Card.deck(SetMath.MAX_ATTRIBUTES + 1),
+                "expected too many attributes refused");
+    }
+}
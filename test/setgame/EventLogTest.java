@@ -0,0 +1,280 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for EventLog, and for restoring and replaying the games recorded in it.
+ */
+public class EventLogTest {
+
+    /* Testing strategy
+     *    recover:
+     *      partition on the events after the latest checkpoint: none, some, including DEALs of new games
+     *      partition on the games in the log: open, closed
+     *      partition on the events: all valid, one which cannot be replayed
+     *      partition on the logs in the directory: one, games restored from it into a new log
+     *    BoardCheckpoint encode, decode:
+     *      partition on the board: no one declaring, declaring with players queued, held squares and votes
+     *    segments:
+     *      partition on the games in a segment: some open, all closed
+     *      partition on the events of a game after its CLOSE: none, some
+     *    writer:
+     *      partition on its state: writing, stopped on an error
+     *    Replayer:
+     *      partition on the time replayed: the end of the log, before a later checkpoint
+     *      partition on refresh(): nothing logged since, events logged since
+     */
+
+    private static final int ATTRIBUTES = 3;
+    private static final int SEGMENT_BYTES = 16 << 10;
+
+    // a board of 3 attributes, whose new decks are dealt by random, recording into log as game
+    private static Board board(EventLog log, String game, SplittableRandom random) {
+        return new Board(Board.generateRandomCards(ATTRIBUTES, random), ATTRIBUTES, Board.NO_TIMEOUTS,
+                () -> Board.generateRandomCards(ATTRIBUTES, random), log.journal(game));
+    }
+
+    // plays rounds of the game: declares and picks a Set, or adds cards, or times out
+    private static void play(Board board, String player, int rounds) throws InterruptedException {
+        for (int i=0; i<rounds; i++) {
+            if (!board.isPlayer(player)) {
+                board.addPlayer(player);
+            }
+            board.declareSet(player);
+            final List<Square> set = board.findSet();
+            if (set.isEmpty()) {
+                board.addCards();
+                board.timedOut(player);
+            } else {
+                board.pickCards(set, player);
+            }
+        }
+    }
+
+    private static void assertSameBoard(BoardSnapshot expected, BoardSnapshot actual) {
+        assertEquals(expected.getCards(), actual.getCards(), "expected the same cards");
+        assertEquals(expected.getNumCols(), actual.getNumCols(), "expected the same width");
+        assertEquals(expected.getScores(), actual.getScores(), "expected the same scores");
+        assertEquals(expected.getDeclarer(), actual.getDeclarer(), "expected the same declarer");
+        assertEquals(expected.getSquaresHeld(), actual.getSquaresHeld(), "expected the same squares held");
+        assertEquals(expected.getVotes(), actual.getVotes(), "expected the same votes");
+        assertEquals(expected.numCardsRemaining(), actual.numCardsRemaining(), "expected the same deck size");
+    }
+
+    // covers recover with no events after the checkpoint, and with many, including new games dealt
+    @Test
+    public void testRecoverFromCheckpointAndTail() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("eventlog");
+        final SplittableRandom random = new SplittableRandom(6031);
+        final Board quiet;
+        final Board busy;
+        try (EventLog log = new EventLog(directory, SEGMENT_BYTES, false)) {
+            quiet = board(log, "quiet", random);
+            busy = board(log, "busy", random);
+            play(busy, "alice", 200);
+            busy.checkpointJournal();
+            play(busy, "bob", 100);
+        }
+
+        final Map<String, BoardCheckpoint> games = EventLog.recover(directory);
+        assertEquals(List.of("quiet", "busy"), new ArrayList<>(games.keySet()), "expected both games, in order");
+        assertSameBoard(quiet.snapshot(), games.get("quiet").snapshot());
+        assertSameBoard(busy.snapshot(), games.get("busy").snapshot());
+        assertEquals(busy.checkpoint().deck(), games.get("busy").deck(), "expected the same deck");
+    }
+
+    // covers encoding a checkpoint with no one declaring, and with a declare, a queue, held squares and votes
+    @Test
+    public void testCheckpointRoundTrip() throws InterruptedException {
+        final Board board = new Board(Board.generateRandomCards(ATTRIBUTES, new SplittableRandom(6031)), ATTRIBUTES,
+                Board.NO_TIMEOUTS, () -> Board.generateRandomCards(ATTRIBUTES));
+        for (String player: List.of("alice", "bob", "carol")) {
+            board.addPlayer(player);
+        }
+        final BoardCheckpoint idle = BoardCheckpoint.decode(board.checkpoint().encode());
+        assertSameBoard(board.snapshot(), idle.snapshot());
+        assertEquals(board.checkpoint().deck(), idle.deck(), "expected the same deck");
+
+        board.vote("carol");
+        board.declareSet("alice");
+        board.declareSet("bob");
+        board.pickCard(new Square(0, 0), "alice");
+        final BoardCheckpoint declaring = BoardCheckpoint.decode(board.checkpoint().encode());
+        assertSameBoard(board.snapshot(), declaring.snapshot());
+        assertEquals(board.checkpoint().deck(), declaring.deck(), "expected the same deck");
+        assertEquals(List.of("bob"), declaring.declareQueue(), "expected bob queued to declare");
+    }
+
+    // covers recover of games restored from a log into a new log in the same directory, as after
+    // a restart, and restored again from the new log after another
+    @Test
+    public void testRecoverAfterRestarts() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("eventlog");
+        final SplittableRandom random = new SplittableRandom(6031);
+        try (EventLog log = new EventLog(directory, SEGMENT_BYTES, false)) {
+            play(board(log, "first", random), "alice", 100);
+            play(board(log, "second", random), "bob", 100);
+        }
+
+        Map<String, BoardSnapshot> expected = new HashMap<>();
+        for (int restart=0; restart<2; restart++) {
+            final Map<String, BoardCheckpoint> games = EventLog.recover(directory);
+            assertEquals(List.of("first", "second"), new ArrayList<>(games.keySet()), "expected both games, in order");
+            expected.forEach((game, snapshot) -> assertSameBoard(snapshot, games.get(game).snapshot()));
+            expected = new HashMap<>();
+            try (EventLog log = new EventLog(directory, SEGMENT_BYTES, false)) {
+                final GameRegistry registry = new GameRegistry(ATTRIBUTES, false, log);
+                games.forEach(registry::restore);
+                for (String game: games.keySet()) {
+                    final Board board = registry.get(game).board();
+                    // enough to roll over segments, so those of the earlier logs are deleted
+                    for (int i=0; i<10; i++) {
+                        play(board, "carol", 50);
+                        registry.checkpoint();
+                    }
+                    expected.put(game, board.snapshot());
+                    board.close();
+                }
+            }
+        }
+        final Map<String, BoardCheckpoint> games = EventLog.recover(directory);
+        expected.forEach((game, snapshot) -> assertSameBoard(snapshot, games.get(game).snapshot()));
+    }
+
+    // covers recover with a closed game, and an event which cannot be replayed
+    @Test
+    public void testRecoverSkipsClosedGamesAndBadEvents() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("eventlog");
+        final SplittableRandom random = new SplittableRandom(6031);
+        final Board open;
+        try (EventLog log = new EventLog(directory, SEGMENT_BYTES, false)) {
+            final Board closed = board(log, "closed", random);
+            play(closed, "alice", 10);
+            log.append(new EventLog.Event("closed", EventLog.Type.CLOSE, System.currentTimeMillis(), "", null, List.of()));
+
+            open = board(log, "open", random);
+            play(open, "alice", 10);
+            open.declareSet("alice");
+            // off the board, so pickCard throws while alice is declaring
+            log.append(new EventLog.Event("open", EventLog.Type.PICK, System.currentTimeMillis(), "alice",
+                    new Square(99, 99), List.of()));
+            open.timedOut("alice");
+            play(open, "alice", 10);
+        }
+
+        final Map<String, BoardCheckpoint> games = EventLog.recover(directory);
+        assertEquals(Set.of("open"), games.keySet(), "expected only the open game");
+        assertSameBoard(open.snapshot(), games.get("open").snapshot());
+    }
+
+    // covers a segment of closed games, deleted once the game is closed, with stray events after CLOSE
+    @Test
+    public void testSegmentsDeletedAfterClose() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("eventlog");
+        final SplittableRandom random = new SplittableRandom(6031);
+        try (EventLog log = new EventLog(directory, SEGMENT_BYTES, false)) {
+            final GameRegistry registry = new GameRegistry(ATTRIBUTES, false, log);
+            final Board first = registry.create("first").board();
+            play(first, "alice", 50);
+            final Board second = registry.create("second").board();
+            play(second, "bob", 50);
+            registry.close("first");
+            // events after the close, as from a timeout which was already running
+            first.addPlayer("carol");
+            log.append(new EventLog.Event("first", EventLog.Type.REMOVE_PLAYER, System.currentTimeMillis(),
+                    "alice", null, List.of()));
+            // enough of the second game, checkpointed, to roll over several segments
+            for (int i=0; i<10; i++) {
+                play(second, "bob", 50);
+                registry.checkpoint();
+            }
+        }
+
+        final List<EventLog.Event> events = new ArrayList<>();
+        EventLog.read(directory, events::add);
+        assertTrue(events.stream().noneMatch(event -> event.game().equals("first")),
+                "expected every segment with events of the closed game deleted, and no events after its close");
+        assertTrue(EventLog.segments(directory).size() < 4, "expected old segments deleted");
+    }
+
+    // covers a writer stopped on an error, after which events are dropped
+    @Test
+    public void testWriterFailureDropsEvents() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("eventlog");
+        try (EventLog log = new EventLog(directory, 256, false)) {
+            assertNull(log.failure(), "expected a working log");
+            // so the writer cannot start its next segment
+            for (Path segment: EventLog.segments(directory)) {
+                Files.delete(segment);
+            }
+            Files.delete(directory);
+            for (int i=0; i<500 && log.failure() == null; i++) {
+                log.append(new EventLog.Event("game", EventLog.Type.ADD_PLAYER, System.currentTimeMillis(),
+                        "player" + i, null, List.of()));
+                Thread.sleep(10);
+            }
+            assertTrue(log.failure() instanceof IOException, "expected the writer stopped on an IOException");
+            for (int i=0; i<1000; i++) {
+                log.append(new EventLog.Event("game", EventLog.Type.VOTE, System.currentTimeMillis(),
+                        "player", null, List.of()));
+            }
+        }
+        assertFalse(Files.exists(directory), "expected nothing written after the failure");
+    }
+
+    // covers Replayer at the end of the log and before a later checkpoint, and refresh()
+    @Test
+    public void testReplayReproducesBoard() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("eventlog");
+        final SplittableRandom random = new SplittableRandom(6031);
+        try (EventLog log = new EventLog(directory, SEGMENT_BYTES, true)) {
+            final Board board = board(log, "game", random);
+            play(board, "alice", 100);
+            awaitWritten(directory, "game", board);
+            final BoardSnapshot middle = board.snapshot();
+            final Replayer replayer = new Replayer(directory, "game");
+            final long middleTime = replayer.endTime();
+            assertSameBoard(middle, replayer.at(middleTime));
+            assertTrue(replayer.refresh() == replayer, "expected the same replayer when nothing was logged");
+
+            Thread.sleep(2); // so later events have later times
+            board.checkpointJournal();
+            play(board, "bob", 100);
+            awaitWritten(directory, "game", board);
+            final Replayer refreshed = replayer.refresh();
+            assertFalse(refreshed == replayer, "expected a new replayer with the new events");
+            assertSameBoard(board.snapshot(), refreshed.at(refreshed.endTime()));
+            assertSameBoard(middle, refreshed.at(middleTime));
+        }
+    }
+
+    // waits until the log's writer has written every change to board, which is the last recorded
+    private static void awaitWritten(Path directory, String game, Board board) throws IOException, InterruptedException {
+        final BoardCheckpoint expected = board.checkpoint();
+        for (int i=0; i<500; i++) {
+            final Map<String, BoardCheckpoint> games = EventLog.recover(directory);
+            if (games.containsKey(game)
+                    && games.get(game).snapshot().getCards().equals(expected.snapshot().getCards())
+                    && games.get(game).snapshot().getScores().equals(expected.snapshot().getScores())) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("the log was not written");
+    }
+}
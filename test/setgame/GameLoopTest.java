@@ -0,0 +1,122 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for GameLoop.
+ */
+public class GameLoopTest {
+
+    /* Testing strategy
+     *    submit, call:
+     *      partition on the command: returns, throws a RuntimeException, throws InterruptedException,
+     *        throws an Error
+     *      partition on the commands submitted: one, many from many threads
+     *      partition on the loops with commands waiting: one, many more than GameLoop.THREADS
+     */
+
+    private static final long WAIT_SECONDS = 10;
+
+    // covers a command which returns
+    @Test
+    public void testCallReturnsResult() throws InterruptedException {
+        final GameLoop loop = new GameLoop();
+        assertEquals(42, loop.call(() -> 42), "expected the result of the command");
+    }
+
+    // covers commands which throw a RuntimeException, InterruptedException and an Error
+    @Test
+    public void testCallRethrows() {
+        final GameLoop loop = new GameLoop();
+        final IllegalStateException exception = new IllegalStateException();
+        assertSame(exception, assertThrows(IllegalStateException.class, () -> loop.call(() -> { throw exception; })),
+                "expected the exception thrown by the command");
+        assertThrows(InterruptedException.class, () -> loop.call(() -> { throw new InterruptedException(); }),
+                "expected the interruption of the command");
+        final StackOverflowError error = new StackOverflowError();
+        assertSame(error, assertThrows(StackOverflowError.class, () -> loop.call(() -> { throw error; })),
+                "expected the error thrown by the command");
+    }
+
+    // covers a command which throws an Error, among others submitted after it
+    @Test
+    public void testSubmitCompletesAfterError() throws Exception {
+        final GameLoop loop = new GameLoop();
+        final CompletableFuture<Object> failed = loop.submit(() -> { throw new AssertionError("boom"); });
+        final CompletableFuture<String> after = loop.submit(() -> "after");
+
+        final ExecutionException ee = assertThrows(ExecutionException.class,
+                () -> failed.get(WAIT_SECONDS, TimeUnit.SECONDS), "expected the future to complete");
+        assertTrue(ee.getCause() instanceof AssertionError, "expected the error thrown by the command");
+        assertEquals("after", after.get(WAIT_SECONDS, TimeUnit.SECONDS), "expected later commands to run");
+    }
+
+    // covers many commands from many threads, which run one at a time in the order each thread submitted them
+    @Test
+    public void testCommandsRunInOrder() throws Exception {
+        final GameLoop loop = new GameLoop();
+        final List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        final int threads = 4;
+        final int commands = 1000;
+        final List<Thread> submitters = new ArrayList<>();
+        for (int t=0; t<threads; t++) {
+            final int thread = t;
+            submitters.add(new Thread(() -> {
+                for (int i=0; i<commands; i++) {
+                    final int command = thread*commands + i;
+                    loop.execute(() -> ran.add(command));
+                }
+            }));
+        }
+        submitters.forEach(Thread::start);
+        for (Thread submitter: submitters) {
+            submitter.join();
+        }
+        loop.call(() -> null);
+
+        assertEquals(threads*commands, ran.size(), "expected every command to run once");
+        final int[] last = new int[threads];
+        Arrays.fill(last, -1);
+        for (int command: ran) {
+            assertTrue(command % commands > last[command / commands], "expected each thread's commands in order");
+            last[command / commands] = command % commands;
+        }
+    }
+
+    // covers many more loops than the shared pool has threads, each with a command waiting
+    @Test
+    public void testSharedThreadsStayFlat() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<CompletableFuture<Boolean>> waiting = new ArrayList<>();
+        for (int i=0; i<10*GameLoop.THREADS; i++) {
+            waiting.add(new GameLoop().submit(() -> release.await(WAIT_SECONDS, TimeUnit.SECONDS)));
+        }
+        Thread.sleep(200); // so as many commands start as the pool allows
+        final long threads;
+        try {
+            threads = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getName().equals("game-loop") && thread.isAlive())
+                    .count();
+        } finally {
+            release.countDown();
+        }
+        assertTrue(threads <= GameLoop.THREADS, "expected at most " + GameLoop.THREADS + " threads: " + threads);
+        for (CompletableFuture<Boolean> command: waiting) {
+            assertTrue(command.get(WAIT_SECONDS, TimeUnit.SECONDS), "expected every command to run in turn");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for GameRegistry and its rooms.
+ */
+public class GameRegistryTest {
+
+    /* Testing strategy
+     *    Room.awaitVersion:
+     *      partition on since: before the board's version, the board's version
+     *      partition on the room: open, closed while waiting
+     *      partition on the changes while waiting: one, many in quick succession
+     */
+
+    private static final int ATTRIBUTES = 3;
+    private static final long WAIT_SECONDS = 10;
+
+    // covers since before the board's version, which returns at once
+    @Test
+    public void testAwaitPastVersion() throws InterruptedException {
+        final GameRegistry.Room room = new GameRegistry(ATTRIBUTES, false, null).create("room");
+        final long version = room.board().snapshot().version();
+        room.board().addPlayer("alice");
+
+        final BoardSnapshot snapshot = room.awaitVersion(version);
+        assertSame(room.board().snapshot(), snapshot, "expected the latest snapshot at once");
+        assertTrue(snapshot.version() > version, "expected a later version");
+    }
+
+    // covers since the board's version, with one change while waiting
+    @Test
+    public void testAwaitNextVersion() throws Exception {
+        final GameRegistry.Room room = new GameRegistry(ATTRIBUTES, false, null).create("room");
+        final long version = room.board().snapshot().version();
+        final CompletableFuture<BoardSnapshot> watch = CompletableFuture.supplyAsync(() -> await(room, version));
+        Thread.sleep(50);
+        assertFalse(watch.isDone(), "expected the watch to wait for a change");
+
+        room.board().addPlayer("alice");
+        final BoardSnapshot snapshot = watch.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(snapshot.version() > version, "expected a later version");
+        assertTrue(snapshot.getScores().containsKey("alice"), "expected the change");
+    }
+
+    // covers a room closed while waiting
+    @Test
+    public void testAwaitClosedRoom() throws Exception {
+        final GameRegistry registry = new GameRegistry(ATTRIBUTES, false, null);
+        final GameRegistry.Room room = registry.create("room");
+        final long version = room.board().snapshot().version();
+        final CompletableFuture<BoardSnapshot> watch = CompletableFuture.supplyAsync(() -> await(room, version));
+        Thread.sleep(50);
+
+        registry.close("room");
+        assertEquals(version, watch.get(WAIT_SECONDS, TimeUnit.SECONDS).version(),
+                "expected the watch woken with the last version");
+        assertTrue(room.isClosed(), "expected the room closed");
+    }
+
+    // covers many changes in quick succession, passing back the version of each watch, as a client
+    // of /watch/player?since=version does, so the watcher sees the last change and never waits past it
+    @Test
+    public void testAwaitMissesNoChange() throws Exception {
+        final GameRegistry.Room room = new GameRegistry(ATTRIBUTES, false, null).create("room");
+        final int changes = 2000;
+        final long first = room.board().snapshot().version();
+        final CompletableFuture<Long> watcher = CompletableFuture.supplyAsync(() -> {
+            long seen = first;
+            while (!room.board().snapshot().getScores().containsKey("player" + (changes - 1))
+                    || seen < room.board().snapshot().version()) {
+                final BoardSnapshot snapshot = await(room, seen);
+                assertTrue(snapshot.version() > seen, "expected each watch to see a later version");
+                seen = snapshot.version();
+            }
+            return seen;
+        });
+        for (int i=0; i<changes; i++) {
+            room.board().addPlayer("player" + i);
+        }
+
+        assertEquals(room.board().snapshot().version(), watcher.get(WAIT_SECONDS, TimeUnit.SECONDS),
+                "expected the watcher to see the last version");
+    }
+
+    // awaitVersion, for a CompletableFuture
+    private static BoardSnapshot await(GameRegistry.Room room, long since) {
+        try {
+            return room.awaitVersion(since);
+        } catch (InterruptedException ie) {
+            throw new AssertionError("interrupted", ie);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for Metrics.
+ */
+public class MetricsTest {
+
+    /* Testing strategy
+     *    Histogram.percentile:
+     *      partition on the durations recorded: none, one, many
+     *      partition on a duration: negative, below the sub-buckets (exact), above (within about 3%)
+     *      partition on the quantile: 0, between 0 and 1, 1
+     *    Histogram.bucket, highest:
+     *      partition on the bucket: below SUB_BUCKETS, above
+     *    counter, gauge, histogram, render:
+     *      partition on the labels: none, some
+     *      partition on registering: a new name, the same name and labels, the same name as another kind
+     */
+
+    // the exact percentile of sorted durations: the smallest with at least quantile of them at most it
+    private static long exact(long[] sorted, double quantile) {
+        final int rank = (int) Math.max(1, Math.ceil(quantile * sorted.length));
+        return sorted[rank - 1];
+    }
+
+    // covers no durations, one, and a negative one
+    @Test
+    public void testPercentileFewDurations() {
+        final Metrics.Histogram histogram = new Metrics().histogram("test_seconds", "test");
+        assertEquals(0, histogram.percentile(0.5), "expected 0 with nothing recorded");
+
+        histogram.record(1_000_003);
+        for (double quantile: new double[] { 0, 0.5, 1 }) {
+            assertEquals(1_000_003, histogram.percentile(quantile), "expected the one duration, capped by the max");
+        }
+
+        final Metrics.Histogram negative = new Metrics().histogram("test_seconds", "test");
+        negative.record(-5);
+        assertEquals(0, negative.percentile(1), "expected a negative duration counted as 0");
+        assertEquals(1, negative.count(), "expected one duration");
+    }
+
+    // covers many durations, small and large, against the exact percentiles
+    @Test
+    public void testPercentileWithinPrecision() {
+        final SplittableRandom random = new SplittableRandom(6031);
+        final Metrics.Histogram histogram = new Metrics().histogram("test_seconds", "test");
+        final long[] durations = new long[100_000];
+        for (int i=0; i<durations.length; i++) {
+            // spread over many powers of 2, from 0 to about a minute
+            durations[i] = (long) Math.pow(2, random.nextDouble() * 36) - 1;
+            histogram.record(durations[i]);
+        }
+        Arrays.sort(durations);
+
+        assertEquals(durations.length, histogram.count(), "expected every duration counted");
+        for (double quantile: new double[] { 0, 0.001, 0.25, 0.5, 0.9, 0.99, 0.999, 1 }) {
+            final long expected = exact(durations, quantile);
+            final long actual = histogram.percentile(quantile);
+            assertTrue(actual >= expected, "expected at least " + expected + " at " + quantile + ": " + actual);
+            assertTrue(actual <= expected + expected / 32, "expected within 3% of " + expected + " at " + quantile
+                    + ": " + actual);
+        }
+        assertEquals(durations[durations.length - 1], histogram.percentile(1), "expected the max at 1");
+    }
+
+    // covers buckets below and above SUB_BUCKETS, which are contiguous and increasing
+    @Test
+    public void testBuckets() {
+        for (int bucket=0; Metrics.Histogram.highest(bucket) < Long.MAX_VALUE / 2; bucket++) {
+            final long highest = Metrics.Histogram.highest(bucket);
+            assertEquals(bucket, Metrics.Histogram.bucket(highest), "expected the highest value in its bucket");
+            assertEquals(bucket + 1, Metrics.Histogram.bucket(highest + 1), "expected the next value in the next bucket");
+            if (bucket > 0) {
+                final long width = highest - Metrics.Histogram.highest(bucket - 1);
+                assertTrue(width <= Math.max(1, highest / 32), "expected a bucket within about 3%: " + bucket);
+            }
+        }
+        assertEquals(Metrics.Histogram.bucket(Long.MAX_VALUE), Metrics.Histogram.bucket(Long.MAX_VALUE - 1),
+                "expected the largest values in the last bucket");
+    }
+
+    // covers registering and rendering metrics with and without labels, again, and as another kind
+    @Test
+    public void testRegisterAndRender() {
+        final Metrics metrics = new Metrics();
+        final Metrics.Counter counter = metrics.counter("test_events_total", "Events", "route", "look");
+        counter.increment();
+        counter.add(2);
+        assertSame(counter, metrics.counter("test_events_total", "Events", "route", "look"),
+                "expected the same counter for the same name and labels");
+        final Metrics.Gauge gauge = metrics.gauge("test_active", "Active");
+        gauge.increment();
+        gauge.increment();
+        gauge.decrement();
+        metrics.histogram("test_seconds", "Latency").record(2_000_000_000L);
+        assertThrows(IllegalArgumentException.class, () -> metrics.gauge("test_events_total", "Events"),
+                "expected a name registered as another kind refused");
+
+        final String rendered = metrics.render();
+        assertTrue(rendered.contains("# TYPE test_events_total counter\ntest_events_total{route=\"look\"} 3\n"),
+                "expected the counter: " + rendered);
+        assertTrue(rendered.contains("# TYPE test_active gauge\ntest_active 1\n"), "expected the gauge: " + rendered);
+        assertTrue(rendered.contains("test_seconds{quantile=\"0.5\"} 2.0\n"), "expected the median: " + rendered);
+        assertTrue(rendered.contains("test_seconds_count 1\n"), "expected the count: " + rendered);
+        assertTrue(rendered.indexOf("test_active") < rendered.indexOf("test_events_total"),
+                "expected the metrics in order of name: " + rendered);
+    }
+}
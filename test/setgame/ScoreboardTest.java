@@ -0,0 +1,100 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for Scoreboard.
+ */
+public class ScoreboardTest {
+
+    /* Testing strategy
+     *    put:
+     *      partition on the player: new, already scored
+     *      partition on the score: within the initial range, far outside it (above and below)
+     *    remove, clear:
+     *      partition on the player: scored, not scored
+     *    rank:
+     *      partition on the player: not scored, highest, sharing a score with others, lowest
+     *    top:
+     *      partition on n: 0, fewer than the players, more than the players
+     */
+
+    private static Map.Entry<String, Integer> entry(String player, int score) {
+        return new AbstractMap.SimpleImmutableEntry<>(player, score);
+    }
+
+    // covers new and already scored players, ranks shared by equal scores, and players not scored
+    @Test
+    public void testRanks() {
+        final Scoreboard scores = new Scoreboard();
+        scores.put("a", 10);
+        scores.put("b", 20);
+        scores.put("c", 10);
+        scores.put("d", -5);
+        scores.put("b", 5); // already scored
+
+        assertEquals(Integer.valueOf(5), scores.get("b"), "expected the latest score");
+        assertEquals(1, scores.rank("a"), "expected the highest score to rank first");
+        assertEquals(1, scores.rank("c"), "expected equal scores to share a rank");
+        assertEquals(3, scores.rank("b"), "expected one more than the players ahead");
+        assertEquals(4, scores.rank("d"), "expected the lowest score to rank last");
+        assertEquals(0, scores.rank("e"), "expected no rank for a player not scored");
+        assertEquals(4, scores.size(), "expected each player once");
+    }
+
+    // covers scores far outside the initial range, above and below
+    @Test
+    public void testScoresOutsideRange() {
+        final Scoreboard scores = new Scoreboard();
+        scores.put("high", 1_000_000);
+        scores.put("low", -1_000_000);
+        scores.put("zero", 0);
+
+        assertEquals(1, scores.rank("high"), "expected the highest score first");
+        assertEquals(2, scores.rank("zero"), "expected the middle score second");
+        assertEquals(3, scores.rank("low"), "expected the lowest score last");
+    }
+
+    // covers top with n of 0, fewer and more than the players
+    @Test
+    public void testTop() {
+        final Scoreboard scores = new Scoreboard();
+        scores.put("b", 10);
+        scores.put("a", 10);
+        scores.put("c", 30);
+
+        assertEquals(List.of(), scores.top(0), "expected no players");
+        assertEquals(List.of(entry("c", 30), entry("a", 10)), scores.top(2),
+                "expected the highest scores, equal scores by player ID");
+        assertEquals(List.of(entry("c", 30), entry("a", 10), entry("b", 10)), scores.top(10),
+                "expected every player");
+    }
+
+    // covers remove of scored and unscored players, and clear
+    @Test
+    public void testRemoveAndClear() {
+        final Scoreboard scores = new Scoreboard();
+        scores.put("a", 10);
+        scores.put("b", 20);
+        scores.remove("b");
+        scores.remove("z");
+
+        assertFalse(scores.containsKey("b"), "expected the player removed");
+        assertNull(scores.get("b"), "expected no score for the player removed");
+        assertEquals(1, scores.rank("a"), "expected the players removed not to count");
+        assertEquals(Map.of("a", 10), scores.toMap(), "expected the scores left");
+
+        scores.clear();
+        assertEquals(0, scores.size(), "expected no players");
+        scores.put("a", 500);
+        assertEquals(1, scores.rank("a"), "expected the cleared scoreboard to rank again");
+    }
+}
@@ -0,0 +1,139 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for SetIndex.
+ */
+public class SetIndexTest {
+
+    /* Testing strategy
+     *    add, remove:
+     *      partition on the Sets the card forms: none, one, many
+     *      partition on the table of Sets: grows, stays the same size
+     *      partition on the Sets removed: at their home slot, displaced by colliding keys, followed in
+     *        their probe run by keys which must be shifted back
+     *      partition on the number of attributes: 1 to 3, 4, 5 to MAX_ATTRIBUTES
+     *    clear:
+     *      partition on the index: empty, holding cards and Sets
+     *    anySet, allSets, numSets:
+     *      partition on the Sets indexed: none, some
+     */
+
+    // every Set among cards, found by trying every triple against the rule of Set
+    private static Set<Set<Card>> bruteForceSets(List<Card> cards) {
+        final Set<Set<Card>> sets = new HashSet<>();
+        for (int i=0; i<cards.size(); i++) {
+            for (int j=i+1; j<cards.size(); j++) {
+                for (int k=j+1; k<cards.size(); k++) {
+                    if (SetMath.isSet(cards.get(i).code(), cards.get(j).code(), cards.get(k).code())) {
+                        sets.add(Set.of(cards.get(i), cards.get(j), cards.get(k)));
+                    }
+                }
+            }
+        }
+        return sets;
+    }
+
+    // asserts the index holds exactly cards and the Sets among them
+    private static void assertIndexes(List<Card> cards, SetIndex index) {
+        final Set<Set<Card>> expected = bruteForceSets(cards);
+        final Set<Set<Card>> found = new HashSet<>();
+        for (List<Card> set: index.allSets()) {
+            assertTrue(found.add(Set.copyOf(set)), "expected each Set once: " + set);
+        }
+        assertEquals(expected, found, "expected every Set among " + cards);
+        assertEquals(expected.size(), index.numSets(), "expected the number of Sets among " + cards);
+        assertEquals(cards.size(), index.numCards(), "expected the number of cards");
+        final List<Card> any = index.anySet();
+        assertTrue(expected.isEmpty() ? any.isEmpty() : expected.contains(Set.copyOf(any)),
+                "expected some Set among " + cards + ", found " + any);
+        for (Card card: cards) {
+            assertTrue(index.contains(card), "expected " + card + " in the index");
+        }
+    }
+
+    // adds and removes cards from the deck of attributes at random, checking the index after each
+    private static void addAndRemoveRandomly(int attributes, int changes, SplittableRandom random) {
+        final SetIndex index = new SetIndex(attributes);
+        final List<Card> cards = new ArrayList<>();
+        final List<Card> deck = Card.deck(attributes);
+        assertIndexes(cards, index);
+        for (int i=0; i<changes; i++) {
+            final Card card = deck.get(random.nextInt(deck.size()));
+            // grow towards about 30 cards, then hover there
+            if (cards.contains(card)) {
+                if (cards.size() > 30 || random.nextBoolean()) {
+                    index.remove(card);
+                    cards.remove(card);
+                }
+            } else if (cards.size() < 30 || random.nextBoolean()) {
+                index.add(card);
+                cards.add(card);
+            }
+            assertIndexes(cards, index);
+        }
+    }
+
+    // covers cards forming no Set, one and many, added and removed at random as the table grows
+    @Test
+    public void testRandomAddsAndRemoves() {
+        addAndRemoveRandomly(SetMath.ATTRIBUTES, 2000, new SplittableRandom(6031));
+    }
+
+    // covers every number of attributes other than 4
+    @Test
+    public void testOtherAttributes() {
+        final SplittableRandom random = new SplittableRandom(6031);
+        for (int attributes=1; attributes<=SetMath.MAX_ATTRIBUTES; attributes++) {
+            if (attributes != SetMath.ATTRIBUTES) {
+                addAndRemoveRandomly(attributes, 500, random);
+            }
+        }
+    }
+
+    // covers a table of over a thousand Sets, in which many keys collide and are displaced from their
+    // home slot, emptied one card at a time, so each delete is followed by deletes which must still
+    // find keys shifted back over it
+    @Test
+    public void testEmptyingFullDeck() {
+        final SplittableRandom random = new SplittableRandom(6031);
+        final SetIndex index = new SetIndex(SetMath.ATTRIBUTES);
+        final List<Card> cards = new ArrayList<>(Card.deck(SetMath.ATTRIBUTES));
+        for (Card card: cards) {
+            index.add(card);
+        }
+        assertEquals(1080, index.numSets(), "expected every Set of the deck");
+        assertIndexes(cards, index);
+        while (!cards.isEmpty()) {
+            final Card card = cards.remove(random.nextInt(cards.size()));
+            index.remove(card);
+            assertIndexes(cards, index);
+        }
+    }
+
+    // covers clear of an empty index and of one holding cards and Sets, and reuse after clear
+    @Test
+    public void testClear() {
+        final SetIndex index = new SetIndex(SetMath.ATTRIBUTES);
+        index.clear();
+        assertIndexes(List.of(), index);
+
+        final List<Card> cards = Card.deck(SetMath.ATTRIBUTES).subList(0, 27);
+        cards.forEach(index::add);
+        index.clear();
+        assertIndexes(List.of(), index);
+
+        cards.forEach(index::add);
+        assertIndexes(cards, index);
+    }
+}
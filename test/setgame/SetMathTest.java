@@ -0,0 +1,165 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for SetMath.
+ */
+public class SetMathTest {
+
+    /* Testing strategy
+     *    encode, attribute:
+     *      partition on each attribute's value: 0, 1, 2
+     *    third, isSet:
+     *      partition on the two cards: the same, different
+     *      partition on each attribute of the two cards: the same, different
+     *      partition on the number of attributes: 4 (standard cards), 5 to MAX_ATTRIBUTES
+     *    sameAttributes:
+     *      partition on the attributes shared: none, some, all
+     *    vector, code, thirdVector:
+     *      partition on the number of attributes: 4, 5 to MAX_ATTRIBUTES
+     */
+
+    // the value of attribute i of a code, read off its base-3 digits
+    private static int digit(int code, int i) {
+        for (int j=0; j<i; j++) {
+            code /= 3;
+        }
+        return code % 3;
+    }
+
+    // whether every attribute of three codes is all the same or all different
+    private static boolean naiveIsSet(int a, int b, int c, int attributes) {
+        for (int i=0; i<attributes; i++) {
+            final int x = digit(a, i);
+            final int y = digit(b, i);
+            final int z = digit(c, i);
+            final boolean same = x == y && y == z;
+            final boolean different = x != y && y != z && x != z;
+            if (!same && !different) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testAssertionsEnabled() {
+        assertThrows(AssertionError.class, () -> { assert false; },
+                "make sure assertions are enabled with VM argument '-ea'");
+    }
+
+    // covers every value of every attribute
+    @Test
+    public void testEncodeAttribute() {
+        for (int color=0; color<3; color++) {
+            for (int number=0; number<3; number++) {
+                for (int shading=0; shading<3; shading++) {
+                    for (int shape=0; shape<3; shape++) {
+                        final int code = SetMath.encode(color, number, shading, shape);
+                        assertEquals(color, SetMath.attribute(code, 0), "expected the color of " + code);
+                        assertEquals(number, SetMath.attribute(code, 1), "expected the number of " + code);
+                        assertEquals(shading, SetMath.attribute(code, 2), "expected the shading of " + code);
+                        assertEquals(shape, SetMath.attribute(code, 3), "expected the shape of " + code);
+                    }
+                }
+            }
+        }
+    }
+
+    // covers every pair of standard cards, the same and different, against the rule of Set
+    @Test
+    public void testThirdStandard() {
+        for (int a=0; a<SetMath.CARDS; a++) {
+            for (int b=0; b<SetMath.CARDS; b++) {
+                final int third = SetMath.third(a, b);
+                assertEquals(third, SetMath.third(b, a), "expected the third card in either order");
+                for (int c=0; c<SetMath.CARDS; c++) {
+                    final boolean expected = naiveIsSet(a, b, c, SetMath.ATTRIBUTES);
+                    assertEquals(expected, c == third, "expected " + c + " to complete " + a + "," + b);
+                    assertEquals(expected, SetMath.isSet(a, b, c), "expected isSet of " + a + "," + b + "," + c);
+                }
+            }
+        }
+    }
+
+    // covers sameAttributes on every pair of standard cards
+    @Test
+    public void testSameAttributesStandard() {
+        for (int a=0; a<SetMath.CARDS; a++) {
+            for (int b=0; b<SetMath.CARDS; b++) {
+                int same = 0;
+                for (int i=0; i<SetMath.ATTRIBUTES; i++) {
+                    same += digit(a, i) == digit(b, i) ? 1 : 0;
+                }
+                assertEquals(same, SetMath.sameAttributes(a, b, SetMath.ATTRIBUTES),
+                        "expected the attributes shared by " + a + "," + b);
+            }
+        }
+    }
+
+    // the code of the third card of the Set containing a and b, digit by digit
+    private static int naiveThird(int a, int b, int attributes) {
+        int third = 0;
+        int place = 1;
+        for (int i=0; i<attributes; i++) {
+            third += (6 - digit(a, i) - digit(b, i)) % 3 * place;
+            place *= 3;
+        }
+        return third;
+    }
+
+    // covers third and isSet for 5 to MAX_ATTRIBUTES attributes: every pair of cards with 5
+    // attributes, and random pairs with more
+    @Test
+    public void testThirdMoreAttributes() {
+        final SplittableRandom random = new SplittableRandom(6031);
+        for (int attributes=SetMath.ATTRIBUTES+1; attributes<=SetMath.MAX_ATTRIBUTES; attributes++) {
+            final int cards = SetMath.cards(attributes);
+            final long pairs = Math.min((long) cards*cards, 200_000);
+            for (long pair=0; pair<pairs; pair++) {
+                final int a;
+                final int b;
+                if (pairs == (long) cards*cards) {
+                    a = (int) (pair / cards);
+                    b = (int) (pair % cards);
+                } else {
+                    a = random.nextInt(cards);
+                    b = random.nextInt(cards);
+                }
+                final int third = naiveThird(a, b, attributes);
+                assertEquals(third, SetMath.third(a, b), "expected the third card of " + a + "," + b);
+                assertEquals(SetMath.vector(third), SetMath.thirdVector(SetMath.vector(a), SetMath.vector(b)),
+                        "expected the third vector of " + a + "," + b);
+                final int c = random.nextInt(cards);
+                assertEquals(naiveIsSet(a, b, c, attributes), SetMath.isSet(a, b, c),
+                        "expected isSet of " + a + "," + b + "," + c);
+            }
+        }
+    }
+
+    // covers vector and code of every card with MAX_ATTRIBUTES attributes, and sameAttributes on random pairs
+    @Test
+    public void testVectorsMoreAttributes() {
+        for (int code=0; code<SetMath.MAX_CARDS; code++) {
+            assertEquals(code, SetMath.code(SetMath.vector(code)), "expected the code back from its vector");
+        }
+        final SplittableRandom random = new SplittableRandom(6031);
+        for (int i=0; i<100_000; i++) {
+            final int a = random.nextInt(SetMath.MAX_CARDS);
+            final int b = random.nextInt(SetMath.MAX_CARDS);
+            final int attributes = 1 + random.nextInt(SetMath.MAX_ATTRIBUTES);
+            int same = 0;
+            for (int j=0; j<attributes; j++) {
+                same += digit(a, j) == digit(b, j) ? 1 : 0;
+            }
+            assertEquals(same, SetMath.sameAttributes(a, b, attributes),
+                    "expected the first " + attributes + " attributes shared by " + a + "," + b);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for TimingWheel.
+ */
+public class TimingWheelTest {
+
+    /* Testing strategy
+     *    schedule:
+     *      partition on the delay: less than a turn of the wheel, more than one turn
+     *      partition on the task: returns, throws an Error, runs slowly
+     *      partition on cancel: not cancelled, cancelled before it is due
+     *      partition on the tasks running at once: fewer than TimingWheel.THREADS, many more
+     *    close:
+     *      partition on the wheel: never started, started, with timeouts pending
+     */
+
+    private static final long WAIT_SECONDS = 10;
+
+    // a wheel of 8 slots of 5 ms, so one turn is 40 ms, whose threads are named after name
+    private static TimingWheel wheel(String name) {
+        return new TimingWheel(5, 8, name);
+    }
+
+    // the live threads whose names start with name
+    private static List<Thread> threads(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith(name) && thread.isAlive())
+                .collect(Collectors.toList());
+    }
+
+    // covers delays less than and more than a turn, and tasks which return
+    @Test
+    public void testRunsWhenDue() throws InterruptedException {
+        try (TimingWheel wheel = wheel("test-wheel-due")) {
+            final CountDownLatch ran = new CountDownLatch(2);
+            final long start = System.nanoTime();
+            wheel.schedule(ran::countDown, 10);
+            wheel.schedule(ran::countDown, 100);
+            assertTrue(ran.await(WAIT_SECONDS, TimeUnit.SECONDS), "expected both tasks to run");
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100),
+                    "expected the task after more than a turn to wait its delay");
+        }
+    }
+
+    // covers a cancelled task
+    @Test
+    public void testCancelledNeverRuns() throws InterruptedException {
+        try (TimingWheel wheel = wheel("test-wheel-cancel")) {
+            final AtomicBoolean ran = new AtomicBoolean(false);
+            wheel.schedule(() -> ran.set(true), 20).cancel();
+            final CountDownLatch later = new CountDownLatch(1);
+            wheel.schedule(later::countDown, 60);
+            assertTrue(later.await(WAIT_SECONDS, TimeUnit.SECONDS), "expected the later task to run");
+            assertFalse(ran.get(), "expected the cancelled task not to run");
+        }
+    }
+
+    // covers tasks which throw an Error and which run slowly, before another task
+    @Test
+    public void testFailingAndSlowTasksDoNotStopOthers() throws InterruptedException {
+        try (TimingWheel wheel = wheel("test-wheel-slow")) {
+            final CountDownLatch release = new CountDownLatch(1);
+            wheel.schedule(() -> { throw new AssertionError("expected by the test"); }, 5);
+            wheel.schedule(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 5);
+            final CountDownLatch ran = new CountDownLatch(1);
+            wheel.schedule(ran::countDown, 20);
+            try {
+                assertTrue(ran.await(WAIT_SECONDS, TimeUnit.SECONDS),
+                        "expected a task to run while an earlier one is still running, after another threw");
+            } finally {
+                release.countDown();
+            }
+        }
+    }
+
+    // covers many more tasks running at once than the wheel has threads, all blocked
+    @Test
+    public void testThreadsStayFlat() throws InterruptedException {
+        final int threads = TimingWheel.THREADS;
+        try (TimingWheel wheel = wheel("test-wheel-flat")) {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch ran = new CountDownLatch(10*threads);
+            for (int i=0; i<10*threads; i++) {
+                wheel.schedule(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    ran.countDown();
+                }, 5);
+            }
+            Thread.sleep(200); // so the tasks are all due, and as many run as the pool allows
+            try {
+                assertEquals(threads, threads("test-wheel-flat-task").size(), "expected a fixed number of threads");
+            } finally {
+                release.countDown();
+            }
+            assertTrue(ran.await(WAIT_SECONDS, TimeUnit.SECONDS), "expected every task to run in turn");
+        }
+    }
+
+    // covers close of a wheel never started, and of one started with a timeout pending
+    @Test
+    public void testCloseStopsThreads() throws InterruptedException {
+        wheel("test-wheel-unused").close();
+
+        final TimingWheel wheel = wheel("test-wheel-close");
+        final CountDownLatch ran = new CountDownLatch(1);
+        wheel.schedule(ran::countDown, 5);
+        assertTrue(ran.await(WAIT_SECONDS, TimeUnit.SECONDS), "expected the task to run");
+        final AtomicBoolean pending = new AtomicBoolean(false);
+        wheel.schedule(() -> pending.set(true), 200);
+        wheel.close();
+
+        for (Thread thread: threads("test-wheel-close")) {
+            thread.join(TimeUnit.SECONDS.toMillis(WAIT_SECONDS));
+        }
+        assertEquals(List.of(), threads("test-wheel-close"), "expected the wheel's threads to stop");
+        Thread.sleep(300);
+        assertFalse(pending.get(), "expected the pending timeout not to run");
+    }
+}
@@ -0,0 +1,125 @@
+package setgame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the responses of WebServer.
+ */
+public class WebServerTest {
+
+    /* Testing strategy
+     *    deltaResponse:
+     *      partition on the changes since the base: none, squares held, declare state, cards replaced,
+     *        dimensions
+     *      partition on the player: the declarer, another player
+     */
+
+    private static final int ATTRIBUTES = 4;
+
+    // a board with two players, on which there is a Set
+    private static Board boardWithSet(SplittableRandom random) {
+        while (true) {
+            final Board board = new Board(Board.generateRandomCards(ATTRIBUTES, random), ATTRIBUTES,
+                    Board.NO_TIMEOUTS, () -> Board.generateRandomCards(ATTRIBUTES, random));
+            board.addPlayer("alice");
+            board.addPlayer("bob");
+            if (board.existsSet()) {
+                return board;
+            }
+        }
+    }
+
+    // applies a DELTA to the lines of a BOARD, as a client would, giving the lines of the new BOARD
+    private static List<String> apply(List<String> board, String delta) {
+        final List<String> lines = new ArrayList<>(Arrays.asList(delta.split("\n")));
+        assertTrue(lines.remove(0).startsWith("delta "), "expected a delta: " + delta);
+        final List<String> result = new ArrayList<>(board);
+        for (String line: lines) {
+            if (line.matches("\\d+x\\d+")) {
+                final String[] size = line.split("x");
+                final int squares = Integer.parseInt(size[0]) * Integer.parseInt(size[1]);
+                result.set(0, line);
+                while (result.size() < 2 + squares) {
+                    result.add("none");
+                }
+                while (result.size() > 2 + squares) {
+                    result.remove(result.size() - 1);
+                }
+            } else if (line.matches("\\d+,\\d+ .*")) {
+                final String[] square = line.substring(0, line.indexOf(' ')).split(",");
+                final int columns = Integer.parseInt(result.get(0).split("x")[1]);
+                final int index = Integer.parseInt(square[0]) * columns + Integer.parseInt(square[1]);
+                result.set(2 + index, line.substring(line.indexOf(' ') + 1));
+            } else {
+                result.set(1, line);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> lines(BoardSnapshot snapshot, String player) {
+        return Arrays.asList(WebServer.boardResponse(snapshot, player).split("\n"));
+    }
+
+    // asserts the delta from base to snapshot brings each player's BOARD up to date, listing only
+    // the given number of squares for player
+    private static void assertDelta(BoardSnapshot base, BoardSnapshot snapshot, int squares, String player) {
+        for (String viewer: List.of("alice", "bob")) {
+            final String delta = WebServer.deltaResponse(base, snapshot, viewer);
+            assertTrue(delta.startsWith("delta " + base.version() + "\n"), "expected the base version: " + delta);
+            assertEquals(lines(snapshot, viewer), apply(lines(base, viewer), delta),
+                    "expected the delta to give the new board for " + viewer + ": " + delta);
+            if (viewer.equals(player)) {
+                assertEquals(squares, delta.lines().filter(line -> line.contains(",")).count(),
+                        "expected only the squares changed: " + delta);
+            }
+        }
+    }
+
+    // covers no changes, the declare state, squares held by the declarer, and cards replaced
+    @Test
+    public void testDeltaOfPicks() throws InterruptedException {
+        final Board board = boardWithSet(new SplittableRandom(6031));
+        final BoardSnapshot start = board.snapshot();
+        assertEquals("delta " + start.version() + "\n", WebServer.deltaResponse(start, start, "alice"),
+                "expected an empty delta");
+
+        board.declareSet("alice");
+        final BoardSnapshot declared = board.snapshot();
+        assertDelta(start, declared, 0, "alice");
+
+        final List<Square> set = board.findSet();
+        board.pickCards(set.subList(0, 2), "alice");
+        final BoardSnapshot held = board.snapshot();
+        assertDelta(declared, held, 2, "alice");
+        assertDelta(start, held, 2, "bob");
+
+        board.pickCard(set.get(2), "alice");
+        final BoardSnapshot replaced = board.snapshot();
+        assertTrue(replaced.getScores().get("alice") > 0, "expected the Set found");
+        assertDelta(held, replaced, 3, "alice");
+        assertDelta(start, replaced, 3, "bob");
+    }
+
+    // covers new dimensions, after which every square is listed
+    @Test
+    public void testDeltaOfCardsAdded() {
+        final Board board = boardWithSet(new SplittableRandom(6031));
+        final BoardSnapshot start = board.snapshot();
+        board.addCards();
+        final BoardSnapshot added = board.snapshot();
+        assertTrue(added.getNumCols() > start.getNumCols(), "expected a column added");
+
+        assertDelta(start, added, added.getNumRows() * added.getNumCols(), "alice");
+        assertTrue(WebServer.deltaResponse(start, added, "alice").contains(
+                "\n" + added.getNumRows() + "x" + added.getNumCols() + "\n"), "expected the new dimensions");
+    }
+}
@@ -0,0 +1,169 @@
+package setgame.web;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for RequestLog.
+ */
+public class RequestLogTest {
+
+    /* Testing strategy
+     *    request, exception:
+     *      partition on the status: success, failure
+     *      partition on sample: 1, more than 1
+     *      partition on the buffer: room to spare, full
+     *    close:
+     *      partition on the entries logged: none, some waiting to be written, some logged during close
+     *    rolling over:
+     *      partition on the file: under the size, over it once, over it more often than files are kept
+     *      partition on writing the file: succeeds, fails then succeeds
+     */
+
+    private static final URI URI_LOOK = URI.create("/look/player");
+
+    private static List<String> lines(Path file) throws IOException {
+        return Files.readAllLines(file, UTF_8);
+    }
+
+    // covers successes and failures logged with sample 1, exceptions, and close writing what waits
+    @Test
+    public void testLogsEveryRequest() throws IOException {
+        final Path file = Files.createTempDirectory("requestlog").resolve("requests.log");
+        try (RequestLog log = new RequestLog(file, 1)) {
+            log.request("GET", URI_LOOK, 200, 1_500_000);
+            log.request("GET", URI_LOOK, 404, 2_000_000);
+            log.exception("GET", URI_LOOK, new IllegalStateException("expected by the test"));
+        }
+
+        final String logged = String.join("\n", lines(file));
+        assertTrue(logged.contains("GET /look/player 200 1.500 ms"), "expected the success: " + logged);
+        assertTrue(logged.contains("GET /look/player 404 2.000 ms"), "expected the failure: " + logged);
+        assertTrue(logged.contains(" !! java.lang.IllegalStateException: expected by the test"),
+                "expected the exception: " + logged);
+    }
+
+    // covers sample more than 1, which still logs every failure
+    @Test
+    public void testSamplesSuccessesOnly() throws IOException {
+        final Path file = Files.createTempDirectory("requestlog").resolve("requests.log");
+        final int requests = 1000;
+        try (RequestLog log = new RequestLog(file, 10)) {
+            for (int i=0; i<requests; i++) {
+                log.request("GET", URI_LOOK, 200, 0);
+                log.request("GET", URI_LOOK, 404, 0);
+            }
+        }
+
+        final List<String> logged = lines(file);
+        final long failures = logged.stream().filter(line -> line.contains(" 404 ")).count();
+        final long successes = logged.stream().filter(line -> line.contains(" 200 ")).count();
+        assertEquals(requests, failures, "expected every failure logged");
+        assertTrue(successes > 0 && successes < requests / 2, "expected about 1 in 10 successes: " + successes);
+    }
+
+    // covers a full buffer, whose entries are dropped and counted rather than waited for
+    @Test
+    public void testDropsWhenFull() throws IOException {
+        final Path file = Files.createTempDirectory("requestlog").resolve("requests.log");
+        final int requests = 100_000;
+        final long dropped;
+        try (RequestLog log = new RequestLog(file, 1, 2, RequestLog.ROLL_BYTES, RequestLog.KEEP)) {
+            for (int i=0; i<requests; i++) {
+                log.request("GET", URI_LOOK, 200, 0);
+            }
+            dropped = log.dropped();
+        }
+
+        final long written = lines(file).stream().filter(line -> line.contains(" 200 ")).count();
+        assertTrue(dropped > 0, "expected a buffer of 2 to fill up");
+        assertEquals(requests, written + dropped, "expected every request written or dropped");
+    }
+
+    // covers rolling over more often than files are kept, and close with nothing logged
+    @Test
+    public void testRollsOver() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("requestlog");
+        final Path file = directory.resolve("requests.log");
+        try (RequestLog log = new RequestLog(file, 1, 16, 200, 2)) {
+            for (int i=0; i<4; i++) {
+                for (int j=0; j<10; j++) {
+                    log.request("GET", URI_LOOK, 200, 0);
+                }
+                Thread.sleep(300); // so the writer writes each round as a batch of its own
+            }
+        }
+
+        assertTrue(Files.size(directory.resolve("requests.log.1")) >= 200, "expected a full file rolled over");
+        assertTrue(Files.exists(directory.resolve("requests.log.2")), "expected the older rolled-over file");
+        assertFalse(Files.exists(directory.resolve("requests.log.3")), "expected no more files than kept");
+
+        try (RequestLog log = new RequestLog(file, 1)) {
+            // nothing logged
+        }
+        assertTrue(Files.exists(file), "expected the file left in place");
+    }
+
+    // covers requests logged by many threads during close, each of which is written or dropped
+    @Test
+    public void testCountsRequestsLostAtClose() throws IOException, InterruptedException {
+        final Path file = Files.createTempDirectory("requestlog").resolve("requests.log");
+        final int threads = 4;
+        final int requests = 20_000;
+        final List<Thread> loggers = new ArrayList<>();
+        final RequestLog log = new RequestLog(file, 1, 64, RequestLog.ROLL_BYTES, RequestLog.KEEP);
+        for (int i=0; i<threads; i++) {
+            final Thread logger = new Thread(() -> {
+                for (int j=0; j<requests; j++) {
+                    log.request("GET", URI_LOOK, 200, 0);
+                }
+            });
+            logger.start();
+            loggers.add(logger);
+        }
+        Thread.sleep(5);
+        log.close();
+        for (Thread logger: loggers) {
+            logger.join();
+        }
+
+        final long written = lines(file).stream().filter(line -> line.contains(" 200 ")).count();
+        assertEquals((long) threads * requests, written + log.dropped(), "expected every request written or dropped");
+    }
+
+    // covers a file which cannot be rolled over for a while, and is reopened to log what follows
+    @Test
+    public void testReopensAfterFailure() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("requestlog");
+        final Path file = directory.resolve("requests.log");
+        final Path blocker = Files.createDirectory(directory.resolve("requests.log.1"));
+        Files.createFile(blocker.resolve("blocker")); // so the file cannot be moved over it
+        try (RequestLog log = new RequestLog(file, 1, 16, 1, 1)) {
+            log.request("GET", URI_LOOK, 200, 0);
+            Thread.sleep(300); // so the writer fails to roll over the first batch
+            log.request("GET", URI_LOOK, 201, 0);
+            Thread.sleep(300);
+            Files.delete(blocker.resolve("blocker"));
+            Files.delete(blocker);
+            log.request("GET", URI_LOOK, 202, 0);
+            assertEquals(0, log.dropped(), "expected nothing dropped");
+        }
+
+        final String logged = String.join("\n", lines(directory.resolve("requests.log.1")));
+        for (int status=200; status<=202; status++) {
+            assertTrue(logged.contains(" " + status + " "), "expected request " + status + " in the rolled file: " + logged);
+        }
+        assertEquals(List.of(), lines(file), "expected a new file after rolling over");
+    }
+}